@@ -18,18 +18,29 @@
 
 package org.dulab.javanmf.algorithms;
 
+import org.dulab.javanmf.data.DataMatrix;
 import org.dulab.javanmf.measures.EuclideanDistance;
 import org.dulab.javanmf.measures.Measure;
 import org.ejml.data.DMatrixRMaj;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
 import java.util.logging.Logger;
 
 import static org.ejml.dense.row.CommonOps_DDRM.*;
 
 /**
  * This class performs non-negative matrix factorization using the alternating non-negative least squares method.
+ * <p>
+ * By default, the non-negative least squares problems are warm-started: each iteration starts from the current matrices
+ * W<sup>T</sup> and H and the passive sets found in the previous iteration, so that late iterations need only a few
+ * exchanges of indices.
+ * <p>
+ * The default solvers keep their workspaces per thread, so one instance can perform factorizations in several threads
+ * at the same time. These workspaces live as long as both the instance and the thread, so for a long-lived instance
+ * used from a thread pool, their size is determined by the largest factorization performed by each pool thread.
  *
  * See H. Kim and H. Park "NON-NEGATIVE MATRIX FACTORIZATION BASED ON ALTERNATING NON-NEGATIVITY CONSTRAINED LEAST SQUARES AND ACTIVE SET METHOD"
  *
@@ -53,26 +64,50 @@ public class AlternatingLeastSquaresMatrixFactorization {
     private final Measure measure;
 
     /* Solver of the non-negative least squares problem */
-    private final NonNegativeLeastSquares nonNegativeLeastSquaresForW;
-    private final NonNegativeLeastSquares nonNegativeLeastSquaresForH;
+    private final NonNegativeLeastSquaresSolver nonNegativeLeastSquaresForW;
+    private final NonNegativeLeastSquaresSolver nonNegativeLeastSquaresForH;
+
+    /* Number of iterations of the last factorization of each thread */
+    private final ThreadLocal<int[]> numIterations = ThreadLocal.withInitial(() -> new int[1]);
 
     /**
      * Creates an instance of {@link AlternatingLeastSquaresMatrixFactorization}
      *
-     * @param wtConstraint   instance of {@link Constraint} for matrix W^T
-     * @param hConstraint   instance of {@link Constraint} for matrix H
-     * @param tolerance    the fitting error tolerance
-     * @param maxIteration maximum number of iterations to use
+     * @param wtConstraint                instance of {@link Constraint} for matrix W^T
+     * @param hConstraint                 instance of {@link Constraint} for matrix H
+     * @param nonNegativeLeastSquaresForW instance of {@link NonNegativeLeastSquaresSolver} for matrix W^T. If null,
+     *                                    {@link NonNegativeLeastSquares} with warm starts is used
+     * @param nonNegativeLeastSquaresForH instance of {@link NonNegativeLeastSquaresSolver} for matrix H. If null,
+     *                                    {@link NonNegativeLeastSquares} with warm starts is used
+     * @param tolerance                   the fitting error tolerance
+     * @param maxIteration                maximum number of iterations to use
      */
     public AlternatingLeastSquaresMatrixFactorization(@Nullable Constraint wtConstraint, @Nullable Constraint hConstraint,
+                                                      @Nullable NonNegativeLeastSquaresSolver nonNegativeLeastSquaresForW,
+                                                      @Nullable NonNegativeLeastSquaresSolver nonNegativeLeastSquaresForH,
                                                       double tolerance, int maxIteration) {
         this.wtConstraint = wtConstraint != null ? wtConstraint : new DefaultConstraint();
         this.hConstraint = hConstraint != null ? hConstraint : new DefaultConstraint();
         this.tolerance = tolerance;
         this.maxIteration = maxIteration;
         this.measure = new EuclideanDistance();
-        this.nonNegativeLeastSquaresForW = new NonNegativeLeastSquares();
-        this.nonNegativeLeastSquaresForH = new NonNegativeLeastSquares();
+        this.nonNegativeLeastSquaresForW = nonNegativeLeastSquaresForW != null
+                ? nonNegativeLeastSquaresForW : new NonNegativeLeastSquares(null, true);
+        this.nonNegativeLeastSquaresForH = nonNegativeLeastSquaresForH != null
+                ? nonNegativeLeastSquaresForH : new NonNegativeLeastSquares(null, true);
+    }
+
+    /**
+     * Creates an instance of {@link AlternatingLeastSquaresMatrixFactorization}
+     *
+     * @param wtConstraint   instance of {@link Constraint} for matrix W^T
+     * @param hConstraint   instance of {@link Constraint} for matrix H
+     * @param tolerance    the fitting error tolerance
+     * @param maxIteration maximum number of iterations to use
+     */
+    public AlternatingLeastSquaresMatrixFactorization(@Nullable Constraint wtConstraint, @Nullable Constraint hConstraint,
+                                                      double tolerance, int maxIteration) {
+        this(wtConstraint, hConstraint, null, null, tolerance, maxIteration);
     }
 
     /**
@@ -82,7 +117,20 @@ public class AlternatingLeastSquaresMatrixFactorization {
      * @param maxIteration maximum number of iterations to use
      */
     public AlternatingLeastSquaresMatrixFactorization(double tolerance, int maxIteration) {
-        this(null, null, tolerance, maxIteration);
+        this(null, null, null, null, tolerance, maxIteration);
+    }
+
+    /**
+     * Creates an instance of {@link AlternatingLeastSquaresMatrixFactorization} that solves the W- and H-steps in
+     * parallel
+     *
+     * @param tolerance    the fitting error tolerance
+     * @param maxIteration maximum number of iterations to use
+     * @param pool         instance of {@link ForkJoinPool} for solving blocks of columns of W^T and H in parallel
+     */
+    public AlternatingLeastSquaresMatrixFactorization(double tolerance, int maxIteration, @Nonnull ForkJoinPool pool) {
+        this(null, null, new NonNegativeLeastSquares(pool, true), new NonNegativeLeastSquares(pool, true),
+                tolerance, maxIteration);
     }
 
     /**
@@ -97,24 +145,75 @@ public class AlternatingLeastSquaresMatrixFactorization {
      */
     public void solve(@Nonnull DMatrixRMaj x, @Nonnull DMatrixRMaj w, @Nonnull DMatrixRMaj h, boolean verbose) {
 
+        final double normX2 = EuclideanDistance.squaredNorm(x);
         final double initError = Math.sqrt(2 * measure.get(x, w, h));
-        double prevError = initError;
 
-        DMatrixRMaj xt = transpose(x, null);
+        solve((b, c) -> multTransB(b, x, c), (a, c) -> multTransA(a, x, c), x.numRows, x.numCols,
+                w, h, normX2, initError, verbose);
+    }
+
+    /**
+     * Performs non-negative matrix factorization of data matrix X, e.g. {@link MappedMatrix}. Matrix X is accessed
+     * only through products HX<sup>T</sup> and W<sup>T</sup>X, so it is never copied to the heap
+     *
+     * @param x       data matrix of shape [N<sub>points</sub>, N<sub>vectors</sub>], a collection of vectors in
+     *                N<sub>points</sub>-dimensional space
+     * @param w       matrix of shape [N<sub>points</sub>, N<sub>components</sub>], a collection of components
+     * @param h       matrix of shape [N<sub>components</sub>, N<sub>vectors</sub>], a collection of the decomposition
+     *                coefficients
+     * @param verbose flag to output verbose information
+     */
+    public void solve(@Nonnull DataMatrix x, @Nonnull DMatrixRMaj w, @Nonnull DMatrixRMaj h, boolean verbose) {
+
+        final double normX2 = x.squaredNorm();
+        final double initError = Math.sqrt(2 * measure.get(x, w, h));
+
+        solve(x::multTransB, x::multTransA, x.getNumRows(), x.getNumCols(), w, h, normX2, initError, verbose);
+    }
+
+    /**
+     * Alternates the W<sup>T</sup>- and H-steps until the error is small or the maximum number of iterations is
+     * reached
+     *
+     * @param multHXt   calculates product HX<sup>T</sup>
+     * @param multWtX   calculates product W<sup>T</sup>X
+     * @param numRows   number of rows of matrix X
+     * @param numCols   number of columns of matrix X
+     * @param normX2    squared Frobenius norm of matrix X
+     * @param initError initial error
+     */
+    private void solve(BiConsumer<DMatrixRMaj, DMatrixRMaj> multHXt, BiConsumer<DMatrixRMaj, DMatrixRMaj> multWtX,
+                       int numRows, int numCols, @Nonnull DMatrixRMaj w, @Nonnull DMatrixRMaj h,
+                       double normX2, double initError, boolean verbose) {
+
+        double prevError = initError;
 
         DMatrixRMaj wt = transpose(w, null);
-        DMatrixRMaj ht = new DMatrixRMaj(h.numCols, h.numRows);
+
+        // Products of W^T-step: H x X^T and H x H^T
+        DMatrixRMaj hxt = new DMatrixRMaj(h.numRows, numRows);
+        DMatrixRMaj hht = new DMatrixRMaj(h.numRows, h.numRows);
+
+        // Products of H-step: W^T x X and W^T x W
+        DMatrixRMaj wtx = new DMatrixRMaj(w.numCols, numCols);
+        DMatrixRMaj wtw = new DMatrixRMaj(w.numCols, w.numCols);
 
         int k;
         for (k = 1; k < maxIteration + 1; ++k) {
 
-            nonNegativeLeastSquaresForW.solve(xt, transpose(h, ht), wt);
+            multHXt.accept(h, hxt);
+            multOuter(h, hht);
+            nonNegativeLeastSquaresForW.solveGram(hht, hxt, wt);
             wtConstraint.apply(wt);
 
-            nonNegativeLeastSquaresForH.solve(x, transpose(wt, w), h);
+            transpose(wt, w);
+            multWtX.accept(w, wtx);
+            multInner(w, wtw);
+            nonNegativeLeastSquaresForH.solveGram(wtw, wtx, h);
             hConstraint.apply(h);
 
-            double error = Math.sqrt(2 * measure.get(x, w, h));
+            // Reuse products W^T x X and W^T x W of the H-step to calculate the distance without forming WH
+            double error = Math.sqrt(2 * EuclideanDistance.get(normX2, wtx, wtw, h));
             double v = (prevError - error) / prevError;
             if (v < tolerance) {
                 if (verbose) LOG.info("NMF is completed after " + k + " iterations");
@@ -125,6 +224,16 @@ public class AlternatingLeastSquaresMatrixFactorization {
 
         if (verbose && k >= maxIteration)
             LOG.info("NMF does not converge after " + k + " iterations");
+
+        numIterations.get()[0] = Math.min(k, maxIteration);
+    }
+
+    /**
+     * @return number of iterations of the last factorization performed by the calling thread, or 0 if the thread has
+     * not performed any factorization with this instance
+     */
+    public int getNumIterations() {
+        return numIterations.get()[0];
     }
 
     /**
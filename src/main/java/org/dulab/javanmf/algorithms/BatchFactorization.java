@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2018 Du-Lab Team <dulab.binf@gmail.com>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.dulab.javanmf.algorithms;
+
+import org.ejml.data.DMatrixRMaj;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.logging.Logger;
+
+/**
+ * This class performs non-negative matrix factorization of many independent matrices X<sub>1</sub>, X<sub>2</sub>,
+ * ... in parallel. Each matrix is initialized by the truncated {@link SingularValueDecomposition}, which computes only
+ * N<sub>components</sub> singular triplets, and factorized by {@link MatrixFactorization}.
+ * <p>
+ * The problems are split recursively and scheduled on a {@link ForkJoinPool}, so that idle threads steal problems from
+ * busy ones when the problems have different sizes. Each thread reuses its own {@link FactorizationWorkspace} and the
+ * buffers of the randomized decomposition, so that only the matrices W<sub>i</sub>, H<sub>i</sub>, and the singular
+ * vectors of X<sub>i</sub> are allocated for each problem.
+ * <p>
+ * <strong>Example</strong> for given list of matrices {@code matrices}
+ * <pre> {@code
+ *     MatrixFactorization factorization = new MatrixFactorization(
+ *         new MUpdateRule(0.0, 0.0), new MUpdateRule(0.0, 0.0), 1e-4, 1000);
+ *
+ *     BatchFactorization.Result result = new BatchFactorization(factorization).execute(matrices, 5);
+ *     DMatrixRMaj matrixW = result.getW(0);
+ * } </pre>
+ *
+ * @author Du-Lab Team dulab.binf@gmail.com
+ */
+public class BatchFactorization
+{
+    /* Logger */
+    private static final Logger LOG = Logger.getLogger(BatchFactorization.class.getName());
+
+    /* Factorization applied to each matrix */
+    private final MatrixFactorization factorization;
+
+    /* Pool for factorizing matrices in parallel */
+    private final ForkJoinPool pool;
+
+    /* Buffers of each thread */
+    private final ThreadLocal<ThreadBuffers> buffers = ThreadLocal.withInitial(ThreadBuffers::new);
+
+    /**
+     * Creates an instance of {@link BatchFactorization}
+     *
+     * @param factorization instance of {@link MatrixFactorization} applied to each matrix
+     * @param pool          instance of {@link ForkJoinPool} for factorizing matrices in parallel
+     */
+    public BatchFactorization(@Nonnull MatrixFactorization factorization, @Nonnull ForkJoinPool pool) {
+        this.factorization = factorization;
+        this.pool = pool;
+    }
+
+    /**
+     * Creates an instance of {@link BatchFactorization} that uses the common {@link ForkJoinPool}
+     *
+     * @param factorization instance of {@link MatrixFactorization} applied to each matrix
+     */
+    public BatchFactorization(@Nonnull MatrixFactorization factorization) {
+        this(factorization, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Performs the non-negative matrix factorization of each matrix
+     *
+     * @param matrices      matrices X<sub>i</sub> of shape [N<sub>points, i</sub>, N<sub>vectors, i</sub>]
+     * @param numComponents number of components
+     * @param verbose       flag to output the throughput
+     * @return instance of {@link Result} with matrices W<sub>i</sub> and H<sub>i</sub>
+     */
+    public Result execute(@Nonnull List<DMatrixRMaj> matrices, int numComponents, boolean verbose) {
+
+        final int numProblems = matrices.size();
+        DMatrixRMaj[] matricesW = new DMatrixRMaj[numProblems];
+        DMatrixRMaj[] matricesH = new DMatrixRMaj[numProblems];
+
+        long start = System.nanoTime();
+        pool.invoke(new BatchTask(matrices, numComponents, matricesW, matricesH, 0, numProblems));
+        Result result = new Result(matricesW, matricesH, System.nanoTime() - start);
+
+        if (verbose)
+            LOG.info(numProblems + " matrices are factorized with " + result.getThroughput() + " matrices per second");
+
+        return result;
+    }
+
+    /**
+     * Performs the non-negative matrix factorization of each matrix
+     *
+     * @param matrices      matrices X<sub>i</sub> of shape [N<sub>points, i</sub>, N<sub>vectors, i</sub>]
+     * @param numComponents number of components
+     * @return instance of {@link Result} with matrices W<sub>i</sub> and H<sub>i</sub>
+     */
+    public Result execute(@Nonnull List<DMatrixRMaj> matrices, int numComponents) {
+        return execute(matrices, numComponents, false);
+    }
+
+    private void factorize(@Nonnull DMatrixRMaj x, int numComponents, DMatrixRMaj[] matricesW,
+                           DMatrixRMaj[] matricesH, int index) {
+
+        DMatrixRMaj w = new DMatrixRMaj(x.numRows, numComponents);
+        DMatrixRMaj h = new DMatrixRMaj(numComponents, x.numCols);
+
+        ThreadBuffers threadBuffers = buffers.get();
+
+        // Same seed as in SingularValueDecomposition(x, numComponents), so that the result does not depend on the thread
+        threadBuffers.random.setSeed(0);
+        new SingularValueDecomposition(x, numComponents, SingularValueDecomposition.DEFAULT_OVERSAMPLES,
+                SingularValueDecomposition.DEFAULT_POWER_ITERATIONS, threadBuffers.random, threadBuffers.decomposition)
+                .decompose(w, h);
+
+        factorization.execute(x, w, h, threadBuffers.factorization, false);
+
+        matricesW[index] = w;
+        matricesH[index] = h;
+    }
+
+    /**
+     * Factorizes matrices with indices from {@code start} to {@code end} by splitting the range in halves
+     */
+    private class BatchTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<DMatrixRMaj> matrices;
+        private final int numComponents;
+        private final DMatrixRMaj[] matricesW;
+        private final DMatrixRMaj[] matricesH;
+        private final int start;
+        private final int end;
+
+        BatchTask(List<DMatrixRMaj> matrices, int numComponents, DMatrixRMaj[] matricesW, DMatrixRMaj[] matricesH,
+                  int start, int end) {
+            this.matrices = matrices;
+            this.numComponents = numComponents;
+            this.matricesW = matricesW;
+            this.matricesH = matricesH;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+
+            if (end - start == 1) {
+                factorize(matrices.get(start), numComponents, matricesW, matricesH, start);
+                return;
+            }
+
+            if (end - start < 1)
+                return;
+
+            int middle = (start + end) >>> 1;
+            invokeAll(new BatchTask(matrices, numComponents, matricesW, matricesH, start, middle),
+                    new BatchTask(matrices, numComponents, matricesW, matricesH, middle, end));
+        }
+    }
+
+    /**
+     * Buffers reused by one thread for all its problems
+     */
+    private static class ThreadBuffers {
+
+        private final FactorizationWorkspace factorization = new FactorizationWorkspace();
+        private final SingularValueDecomposition.Workspace decomposition = new SingularValueDecomposition.Workspace();
+        private final Random random = new Random(0);
+    }
+
+    /**
+     * Result of {@link #execute(List, int, boolean)}
+     */
+    public static class Result {
+
+        private final DMatrixRMaj[] matricesW;
+        private final DMatrixRMaj[] matricesH;
+        private final long elapsedNanos;
+
+        Result(DMatrixRMaj[] matricesW, DMatrixRMaj[] matricesH, long elapsedNanos) {
+            this.matricesW = matricesW;
+            this.matricesH = matricesH;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * @return number of factorized matrices
+         */
+        public int size() {
+            return matricesW.length;
+        }
+
+        /**
+         * @param index index of matrix X<sub>i</sub>
+         * @return matrix W<sub>i</sub> of shape [N<sub>points, i</sub>, N<sub>components</sub>]
+         */
+        public DMatrixRMaj getW(int index) {
+            return matricesW[index];
+        }
+
+        /**
+         * @param index index of matrix X<sub>i</sub>
+         * @return matrix H<sub>i</sub> of shape [N<sub>components</sub>, N<sub>vectors, i</sub>]
+         */
+        public DMatrixRMaj getH(int index) {
+            return matricesH[index];
+        }
+
+        /**
+         * @return time of the batch factorization in nanoseconds
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * @return number of factorized matrices per second
+         */
+        public double getThroughput() {
+            return elapsedNanos > 0 ? 1e9 * matricesW.length / elapsedNanos : Double.POSITIVE_INFINITY;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package org.dulab.javanmf.algorithms;
+
+import org.ejml.data.DMatrixRMaj;
+
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+import static org.ejml.dense.row.CommonOps_DDRM.*;
+
+/**
+ * This class solves the non-negative least squares problem using the block principal pivoting method. Unlike the
+ * active set method, which moves one index per iteration, all infeasible indices are exchanged between the passive and
+ * active sets at once. If the number of infeasible indices does not decrease for several iterations, only one index
+ * is exchanged to guarantee termination. Columns with identical passive sets share the same factorization of matrix
+ * (ZtZ)<sub>P</sub>.
+ * <p>
+ * One instance can be shared by several threads, because the least squares solver is confined to each calling thread.
+ * Its buffers match the largest problem of that thread and are released only when the thread terminates or the
+ * instance becomes unreachable.
+ *
+ * See J. Kim and H. Park "FAST NONNEGATIVE MATRIX FACTORIZATION: AN ACTIVE-SET-LIKE METHOD AND COMPARISONS"
+ */
+public class BlockPrincipalPivotingNonNegativeLeastSquares implements NonNegativeLeastSquaresSolver {
+
+    private static final Logger LOG = Logger.getLogger(BlockPrincipalPivotingNonNegativeLeastSquares.class.getName());
+
+    private static final double TOLERANCE = 1e-12;
+    private static final int MAX_ITERATIONS = 1000;
+
+    /* Number of full exchanges allowed without decreasing the number of infeasible indices */
+    private static final int MAX_FULL_EXCHANGES = 3;
+
+    /* Solver of the least squares problems of each thread */
+    private final ThreadLocal<PassiveSetLeastSquares> passiveSetLeastSquares =
+            ThreadLocal.withInitial(PassiveSetLeastSquares::new);
+
+    /**
+     * Finds matrix D such that D = argmin || X - Z x D ||^2
+     * @param matrixX matrix X
+     * @param matrixZ matrix Z
+     * @param matrixD matrix D
+     */
+    @Override
+    public void solve(DMatrixRMaj matrixX, DMatrixRMaj matrixZ, DMatrixRMaj matrixD) {
+
+        if (matrixX.numCols != matrixD.numCols || matrixZ.numCols != matrixD.numRows || matrixX.numRows != matrixZ.numRows)
+            throw new IllegalStateException("Wrong shape of the input matrices");
+
+        DMatrixRMaj matrixZtX = new DMatrixRMaj(matrixD.numRows, matrixD.numCols);
+        multTransA(matrixZ, matrixX, matrixZtX);
+
+        DMatrixRMaj matrixZtZ = new DMatrixRMaj(matrixD.numRows, matrixD.numRows);
+        multInner(matrixZ, matrixZtZ);
+
+        solveGram(matrixZtZ, matrixZtX, matrixD);
+    }
+
+    /**
+     * Finds matrix D such that D = argmin || X - Z x D ||^2 using precomputed matrices ZtZ and ZtX
+     * @param matrixZtZ matrix ZtZ
+     * @param matrixZtX matrix ZtX
+     * @param matrixD   matrix D
+     */
+    @Override
+    public void solveGram(DMatrixRMaj matrixZtZ, DMatrixRMaj matrixZtX, DMatrixRMaj matrixD) {
+
+        if (matrixZtZ.numRows != matrixD.numRows || matrixZtZ.numCols != matrixD.numRows
+                || matrixZtX.numRows != matrixD.numRows || matrixZtX.numCols != matrixD.numCols)
+            throw new IllegalStateException("Wrong shape of the input matrices");
+
+        final int numRows = matrixD.numRows;
+        final int numCols = matrixD.numCols;
+
+        // Start with empty passive sets: D = 0 and Y = ZtZ x D - ZtX = -ZtX
+        boolean[] passiveSets = new boolean[numRows * numCols];
+        fill(matrixD, 0.0);
+        DMatrixRMaj matrixY = new DMatrixRMaj(numRows, numCols);
+        scale(-1.0, matrixZtX, matrixY);
+
+        int[] fullExchanges = new int[numCols];
+        int[] minInfeasible = new int[numCols];
+        Arrays.fill(fullExchanges, MAX_FULL_EXCHANGES);
+        Arrays.fill(minInfeasible, numRows + 1);
+
+        int[] columns = new int[numCols];
+
+        // Main loop
+        int iteration = 0;
+        while (true) {
+
+            int numColumns = 0;
+            for (int j = 0; j < numCols; ++j) {
+
+                int numInfeasible = countInfeasible(matrixD, matrixY, passiveSets, j);
+                if (numInfeasible == 0)
+                    continue;
+
+                if (numInfeasible < minInfeasible[j]) {
+                    minInfeasible[j] = numInfeasible;
+                    fullExchanges[j] = MAX_FULL_EXCHANGES;
+                    exchangeAll(matrixD, matrixY, passiveSets, j);
+                } else if (fullExchanges[j] > 0) {
+                    --fullExchanges[j];
+                    exchangeAll(matrixD, matrixY, passiveSets, j);
+                } else
+                    exchangeLast(matrixD, matrixY, passiveSets, j);
+
+                columns[numColumns++] = j;
+            }
+
+            if (numColumns == 0)
+                break;
+
+            if (++iteration > MAX_ITERATIONS) {
+                LOG.warning(String.format("NNLS is stopped after %d iterations.", MAX_ITERATIONS));
+                break;
+            }
+
+            if (!passiveSetLeastSquares.get().solve(matrixZtZ, matrixZtX, passiveSets, columns, numColumns, matrixD))
+                throw new IllegalStateException("Cannot factorize matrix ZtZP");
+
+            for (int c = 0; c < numColumns; ++c)
+                calculateColumnY(matrixZtZ, matrixZtX, matrixD, passiveSets, columns[c], matrixY);
+        }
+
+        // Remove negative values left after reaching the maximum number of iterations
+        for (int i = 0; i < matrixD.getNumElements(); ++i)
+            if (matrixD.data[i] < 0.0)
+                matrixD.data[i] = 0.0;
+    }
+
+    /**
+     * Counts indices of a column that violate the optimality conditions: D < 0 in the passive set or Y < 0 in the
+     * active set
+     *
+     * @param matrixD     matrix D
+     * @param matrixY     matrix Y = ZtZ x D - ZtX
+     * @param passiveSets passive sets
+     * @param column      index of a column
+     * @return number of infeasible indices
+     */
+    private int countInfeasible(DMatrixRMaj matrixD, DMatrixRMaj matrixY, boolean[] passiveSets, int column) {
+        int count = 0;
+        for (int i = 0; i < matrixD.numRows; ++i)
+            if (isInfeasible(matrixD, matrixY, passiveSets, i, column))
+                ++count;
+        return count;
+    }
+
+    private boolean isInfeasible(DMatrixRMaj matrixD, DMatrixRMaj matrixY, boolean[] passiveSets, int row, int column) {
+        return passiveSets[column * matrixD.numRows + row]
+                ? matrixD.unsafe_get(row, column) < -TOLERANCE
+                : matrixY.unsafe_get(row, column) < -TOLERANCE;
+    }
+
+    /**
+     * Moves all infeasible indices of a column between the passive and active sets
+     *
+     * @param matrixD     matrix D
+     * @param matrixY     matrix Y
+     * @param passiveSets passive sets
+     * @param column      index of a column
+     */
+    private void exchangeAll(DMatrixRMaj matrixD, DMatrixRMaj matrixY, boolean[] passiveSets, int column) {
+        for (int i = 0; i < matrixD.numRows; ++i)
+            if (isInfeasible(matrixD, matrixY, passiveSets, i, column))
+                passiveSets[column * matrixD.numRows + i] ^= true;
+    }
+
+    /**
+     * Moves the infeasible index with the largest position between the passive and active sets
+     *
+     * @param matrixD     matrix D
+     * @param matrixY     matrix Y
+     * @param passiveSets passive sets
+     * @param column      index of a column
+     */
+    private void exchangeLast(DMatrixRMaj matrixD, DMatrixRMaj matrixY, boolean[] passiveSets, int column) {
+        for (int i = matrixD.numRows - 1; i >= 0; --i)
+            if (isInfeasible(matrixD, matrixY, passiveSets, i, column)) {
+                passiveSets[column * matrixD.numRows + i] ^= true;
+                return;
+            }
+    }
+
+    /**
+     * Calculates a column of Y = ZtZ x D - ZtX for indices of the active set. Values in the passive set are zero
+     *
+     * @param matrixZtZ   matrix ZtZ
+     * @param matrixZtX   matrix ZtX
+     * @param matrixD     matrix D
+     * @param passiveSets passive sets
+     * @param column      index of a column
+     * @param matrixY     matrix Y
+     */
+    private void calculateColumnY(DMatrixRMaj matrixZtZ, DMatrixRMaj matrixZtX, DMatrixRMaj matrixD,
+                                  boolean[] passiveSets, int column, DMatrixRMaj matrixY) {
+
+        final int numRows = matrixD.numRows;
+        for (int i = 0; i < numRows; ++i) {
+            if (passiveSets[column * numRows + i]) {
+                matrixY.unsafe_set(i, column, 0.0);
+                continue;
+            }
+
+            double y = -matrixZtX.unsafe_get(i, column);
+            for (int j = 0; j < numRows; ++j)
+                if (passiveSets[column * numRows + j])
+                    y += matrixZtZ.unsafe_get(i, j) * matrixD.unsafe_get(j, column);
+            matrixY.unsafe_set(i, column, y);
+        }
+    }
+}
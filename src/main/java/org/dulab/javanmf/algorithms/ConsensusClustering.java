@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2018 Du-Lab Team <dulab.binf@gmail.com>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.dulab.javanmf.algorithms;
+
+import org.ejml.data.DMatrixRMaj;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.logging.Logger;
+
+/**
+ * This class performs consensus clustering of the columns of matrix X: the non-negative matrix factorization is
+ * repeated from random initial matrices W and H, each column j is assigned to the component with the largest
+ * coefficient H<sub>kj</sub>, and the co-clustering counts are accumulated in a {@link ConsensusMatrix}.
+ * <p>
+ * The repetitions run in parallel, and each of them adds its cluster labels to the consensus matrix as soon as it is
+ * finished, so that only one packed matrix of counts is kept in memory. Each thread reuses one
+ * {@link FactorizationWorkspace} for all repetitions of an {@code execute} call. The workspaces are released when the
+ * call returns, so that the threads of the pool do not keep copies of matrix X.
+ * <p>
+ * Based on <a href="https://doi.org/10.1073/pnas.0308531101">J.-P. Brunet et al., Metagenes and molecular pattern
+ * discovery using matrix factorization</a>
+ * <p>
+ * <strong>Example</strong> for given matrix X
+ * <pre> {@code
+ *     MatrixFactorization factorization = new MatrixFactorization(
+ *         new MUpdateRule(0.0, 0.0), new MUpdateRule(0.0, 0.0), 1e-4, 1000);
+ *
+ *     ConsensusMatrix consensus = new ConsensusClustering(factorization).execute(matrixX, 3, 50, 0L);
+ *     double correlation = consensus.getCopheneticCorrelation();
+ * } </pre>
+ *
+ * @author Du-Lab Team dulab.binf@gmail.com
+ */
+public class ConsensusClustering
+{
+    /* Logger */
+    private static final Logger LOG = Logger.getLogger(ConsensusClustering.class.getName());
+
+    private final MatrixFactorization factorization;
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates an instance of {@link ConsensusClustering}
+     *
+     * @param factorization instance of {@link MatrixFactorization} applied in each repetition
+     * @param pool          instance of {@link ForkJoinPool} for running the repetitions in parallel
+     */
+    public ConsensusClustering(@Nonnull MatrixFactorization factorization, @Nonnull ForkJoinPool pool) {
+        this.factorization = factorization;
+        this.pool = pool;
+    }
+
+    /**
+     * Creates an instance of {@link ConsensusClustering} that uses the common {@link ForkJoinPool}
+     *
+     * @param factorization instance of {@link MatrixFactorization} applied in each repetition
+     */
+    public ConsensusClustering(@Nonnull MatrixFactorization factorization) {
+        this(factorization, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Performs the consensus clustering of the columns of matrix X
+     *
+     * @param x             matrix of shape [N<sub>points</sub>, N<sub>vectors</sub>]
+     * @param numComponents number of components, which is the number of clusters
+     * @param numRuns       number of repetitions of the factorization
+     * @param seed          seed of the random number generator. Repetition i uses seed {@code seed + i}
+     * @param verbose       flag to output the cophenetic correlation coefficient
+     * @return instance of {@link ConsensusMatrix} of shape [N<sub>vectors</sub>, N<sub>vectors</sub>]
+     * @throws IllegalArgumentException if the number of repetitions is not positive
+     */
+    public ConsensusMatrix execute(@Nonnull DMatrixRMaj x, int numComponents, int numRuns, long seed,
+                                   boolean verbose)
+            throws IllegalArgumentException
+    {
+        if (numRuns < 1)
+            throw new IllegalArgumentException("Number of repetitions must be positive");
+
+        final ConsensusMatrix consensus = new ConsensusMatrix(x.numCols);
+
+        // Upper bound of random matrices W and H, so that the elements of WH have the same mean as X
+        final double scale = MatrixUtils.uniformScale(x, numComponents);
+
+        // Workspace of each thread, released when the clustering is finished
+        final ConcurrentMap<Thread, FactorizationWorkspace> workspaces = new ConcurrentHashMap<>();
+
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(numRuns);
+        for (int r = 0; r < numRuns; ++r) {
+            final Random random = new Random(seed + r);
+            tasks.add(pool.submit(() -> {
+                FactorizationWorkspace workspace =
+                        workspaces.computeIfAbsent(Thread.currentThread(), thread -> new FactorizationWorkspace());
+                consensus.add(cluster(x, numComponents, scale, random, workspace), numComponents);
+            }));
+        }
+
+        for (ForkJoinTask<?> task : tasks)
+            task.join();
+
+        if (verbose)
+            LOG.info("Cophenetic correlation of " + numComponents + " clusters is "
+                    + consensus.getCopheneticCorrelation());
+
+        return consensus;
+    }
+
+    /**
+     * Performs the consensus clustering of the columns of matrix X
+     *
+     * @param x             matrix of shape [N<sub>points</sub>, N<sub>vectors</sub>]
+     * @param numComponents number of components, which is the number of clusters
+     * @param numRuns       number of repetitions of the factorization
+     * @param seed          seed of the random number generator
+     * @return instance of {@link ConsensusMatrix} of shape [N<sub>vectors</sub>, N<sub>vectors</sub>]
+     */
+    public ConsensusMatrix execute(@Nonnull DMatrixRMaj x, int numComponents, int numRuns, long seed) {
+        return execute(x, numComponents, numRuns, seed, false);
+    }
+
+    /**
+     * Factorizes matrix X from random matrices W and H and assigns each column of X to the component with the largest
+     * coefficient
+     *
+     * @return array of N<sub>vectors</sub> cluster labels
+     */
+    private int[] cluster(@Nonnull DMatrixRMaj x, int numComponents, double scale, @Nonnull Random random,
+                          @Nonnull FactorizationWorkspace workspace) {
+
+        DMatrixRMaj w = new DMatrixRMaj(x.numRows, numComponents);
+        DMatrixRMaj h = new DMatrixRMaj(numComponents, x.numCols);
+        for (int i = 0; i < w.getNumElements(); ++i)
+            w.data[i] = scale * random.nextDouble();
+        for (int i = 0; i < h.getNumElements(); ++i)
+            h.data[i] = scale * random.nextDouble();
+
+        factorization.execute(x, w, h, workspace, false);
+
+        int[] labels = new int[x.numCols];
+        for (int j = 0; j < x.numCols; ++j) {
+            int label = 0;
+            for (int k = 1; k < numComponents; ++k)
+                if (h.unsafe_get(k, j) > h.unsafe_get(label, j))
+                    label = k;
+            labels[j] = label;
+        }
+        return labels;
+    }
+}
@@ -0,0 +1,333 @@
+/*
+ * Copyright (C) 2018 Du-Lab Team <dulab.binf@gmail.com>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.dulab.javanmf.algorithms;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Consensus matrix of N<sub>samples</sub> samples: the fraction of clusterings in which two samples belong to the same
+ * cluster. The counts of the pairs are accumulated in one packed upper-triangular {@code int} array of
+ * N<sub>samples</sub> (N<sub>samples</sub> &minus; 1) / 2 elements, so that no connectivity matrix is formed for
+ * individual clusterings.
+ * <p>
+ * Based on <a href="https://doi.org/10.1073/pnas.0308531101">J.-P. Brunet et al., Metagenes and molecular pattern
+ * discovery using matrix factorization</a>
+ * <p>
+ * This class is thread-safe. Concurrent calls of {@link #add(int[], int)} lock only the rows they increment, so that
+ * clusterings from parallel runs are accumulated in parallel. Reading the counts waits for the running additions.
+ *
+ * @author Du-Lab Team dulab.binf@gmail.com
+ */
+public class ConsensusMatrix
+{
+    /* Relative variance of the distances, below which the distances are considered equal */
+    private static final double VARIANCE_TOLERANCE = 1e-9;
+
+    /* Number of locks of the rows. Row i is locked by lock i % NUM_STRIPES */
+    private static final int NUM_STRIPES = 64;
+
+    private final int numSamples;
+
+    /* Number of clusterings with both samples i < j in the same cluster, at index(i, j) */
+    private final int[] counts;
+
+    /* Locks of the rows of the counts */
+    private final Object[] stripes = new Object[NUM_STRIPES];
+
+    /* Shared by the additions, and exclusive for reading the counts */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final AtomicInteger numClusterings = new AtomicInteger();
+
+    /**
+     * Creates an empty consensus matrix
+     *
+     * @param numSamples number of samples
+     * @throws IllegalArgumentException if the packed matrix does not fit into an array
+     */
+    public ConsensusMatrix(int numSamples) throws IllegalArgumentException
+    {
+        long size = (long) numSamples * (numSamples - 1) / 2;
+        if (numSamples < 1 || size > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("Cannot create consensus matrix of " + numSamples + " samples");
+
+        this.numSamples = numSamples;
+        this.counts = new int[(int) size];
+
+        for (int i = 0; i < NUM_STRIPES; ++i)
+            stripes[i] = new Object();
+    }
+
+    /**
+     * Adds one clustering of the samples. Only the pairs within the same cluster are visited
+     *
+     * @param labels      array of N<sub>samples</sub> cluster indices from 0 to {@code numClusters - 1}
+     * @param numClusters number of clusters
+     * @throws IllegalArgumentException if the number of labels is not equal to the number of samples, or a label is
+     * outside of the range from 0 to {@code numClusters - 1}
+     */
+    public void add(@Nonnull int[] labels, int numClusters) throws IllegalArgumentException
+    {
+        if (labels.length != numSamples)
+            throw new IllegalArgumentException("Number of labels must be equal to " + numSamples);
+
+        for (int label : labels)
+            if (label < 0 || label >= numClusters)
+                throw new IllegalArgumentException("Label " + label + " is outside of the range from 0 to "
+                        + (numClusters - 1));
+
+        // Members of each cluster in the increasing order
+        int[] clusterSizes = new int[numClusters + 1];
+        for (int label : labels)
+            ++clusterSizes[label + 1];
+        for (int c = 0; c < numClusters; ++c)
+            clusterSizes[c + 1] += clusterSizes[c];
+
+        int[] members = new int[numSamples];
+        int[] positions = clusterSizes.clone();
+        for (int i = 0; i < numSamples; ++i)
+            members[positions[labels[i]]++] = i;
+
+        // Other additions run concurrently and lock only the same rows, while readers wait for the shared lock
+        Lock shared = lock.readLock();
+        shared.lock();
+        try {
+            for (int c = 0; c < numClusters; ++c)
+                for (int p = clusterSizes[c]; p < clusterSizes[c + 1]; ++p) {
+                    int i = members[p];
+                    int rowIndex = index(i, i + 1) - i - 1;
+                    synchronized (stripes[i % NUM_STRIPES]) {
+                        for (int q = p + 1; q < clusterSizes[c + 1]; ++q)
+                            ++counts[rowIndex + members[q]];
+                    }
+                }
+
+            numClusterings.incrementAndGet();
+        }
+        finally {
+            shared.unlock();
+        }
+    }
+
+    /**
+     * @return number of samples
+     */
+    public int getNumSamples() {
+        return numSamples;
+    }
+
+    /**
+     * @return number of added clusterings
+     */
+    public int getNumClusterings() {
+        Lock exclusive = lock.writeLock();
+        exclusive.lock();
+        try {
+            return numClusterings.get();
+        }
+        finally {
+            exclusive.unlock();
+        }
+    }
+
+    /**
+     * @param i index of the first sample
+     * @param j index of the second sample
+     * @return number of clusterings with samples i and j in the same cluster
+     */
+    public int getCount(int i, int j) {
+        Lock exclusive = lock.writeLock();
+        exclusive.lock();
+        try {
+            if (i == j)
+                return numClusterings.get();
+            return counts[i < j ? index(i, j) : index(j, i)];
+        }
+        finally {
+            exclusive.unlock();
+        }
+    }
+
+    /**
+     * @param i index of the first sample
+     * @param j index of the second sample
+     * @return fraction of clusterings with samples i and j in the same cluster
+     */
+    public double get(int i, int j) {
+        Lock exclusive = lock.writeLock();
+        exclusive.lock();
+        try {
+            int numAdded = numClusterings.get();
+            return numAdded > 0 ? (double) getCount(i, j) / numAdded : 0.0;
+        }
+        finally {
+            exclusive.unlock();
+        }
+    }
+
+    /**
+     * Returns the cophenetic correlation coefficient: the Pearson correlation between distances 1 &minus; C and the
+     * cophenetic distances of the average-linkage hierarchical clustering of the samples. Values close to 1 indicate a
+     * stable clustering.
+     * <p>
+     * The clustering is performed by the nearest-neighbor chain algorithm in O(N<sub>samples</sub><sup>2</sup>) time
+     * on a packed {@code float} copy of the distances, which takes N<sub>samples</sub> (N<sub>samples</sub> &minus; 1)
+     * / 2 additional elements. The copy is taken while no addition is running, and the clustering runs after the copy,
+     * so that concurrent calls of {@link #add(int[], int)} are not blocked. The result reflects the
+     * clusterings added before the copy.
+     * <p>
+     * If there are fewer than two samples or all distances are equal, the correlation is undefined and 1 is returned,
+     * because the clustering is then consistent for every pair of samples.
+     *
+     * @return cophenetic correlation coefficient
+     * @throws IllegalStateException if no clustering has been added
+     */
+    public double getCopheneticCorrelation() throws IllegalStateException {
+
+        float[] distances = new float[counts.length];
+        Lock exclusive = lock.writeLock();
+        exclusive.lock();
+        try {
+            int numAdded = numClusterings.get();
+            if (numAdded == 0)
+                throw new IllegalStateException("No clustering has been added");
+
+            for (int p = 0; p < counts.length; ++p)
+                distances[p] = 1f - (float) counts[p] / numAdded;
+        }
+        finally {
+            exclusive.unlock();
+        }
+
+        return copheneticCorrelation(distances, numSamples);
+    }
+
+    /**
+     * Calculates the cophenetic correlation coefficient of the average-linkage hierarchical clustering
+     *
+     * @param distances  packed upper-triangular distances, which are overwritten
+     * @param numSamples number of samples
+     * @return cophenetic correlation coefficient, or 1 if there are fewer than two samples or all distances are equal
+     */
+    static double copheneticCorrelation(@Nonnull float[] distances, int numSamples) {
+
+        final long numPairs = (long) numSamples * (numSamples - 1) / 2;
+        if (numPairs < 2)
+            return 1.0;
+
+        double sumD = 0.0;
+        double sumD2 = 0.0;
+        for (float d : distances) {
+            sumD += d;
+            sumD2 += (double) d * d;
+        }
+
+        // For average linkage, the sum of distances between two merged clusters equals their merge height times the
+        // number of pairs, so sum(d * c) equals sum(c^2)
+        double sumC = 0.0;
+        double sumC2 = 0.0;
+
+        boolean[] active = new boolean[numSamples];
+        int[] sizes = new int[numSamples];
+        for (int i = 0; i < numSamples; ++i) {
+            active[i] = true;
+            sizes[i] = 1;
+        }
+
+        int[] chain = new int[numSamples];
+        int chainLength = 0;
+        int firstActive = 0;
+
+        for (int numActive = numSamples; numActive > 1; ) {
+
+            if (chainLength == 0) {
+                while (!active[firstActive]) ++firstActive;
+                chain[chainLength++] = firstActive;
+            }
+
+            int a = chain[chainLength - 1];
+            int previous = chainLength > 1 ? chain[chainLength - 2] : -1;
+
+            // Nearest neighbor of cluster a, preferring the previous cluster in the chain in case of ties
+            int b = previous;
+            float minDistance = previous >= 0 ? distances[packedIndex(a, previous, numSamples)] : Float.MAX_VALUE;
+            for (int c = 0; c < numSamples; ++c)
+                if (active[c] && c != a) {
+                    float d = distances[packedIndex(a, c, numSamples)];
+                    if (d < minDistance) {
+                        minDistance = d;
+                        b = c;
+                    }
+                }
+
+            if (b != previous) {
+                chain[chainLength++] = b;
+                continue;
+            }
+
+            // Merge clusters a and b into b
+            double numMergedPairs = (double) sizes[a] * sizes[b];
+            sumC += minDistance * numMergedPairs;
+            sumC2 += (double) minDistance * minDistance * numMergedPairs;
+
+            for (int c = 0; c < numSamples; ++c)
+                if (active[c] && c != a && c != b) {
+                    int indexA = packedIndex(a, c, numSamples);
+                    int indexB = packedIndex(b, c, numSamples);
+                    distances[indexB] = (sizes[a] * distances[indexA] + sizes[b] * distances[indexB])
+                            / (sizes[a] + sizes[b]);
+                }
+
+            sizes[b] += sizes[a];
+            active[a] = false;
+            --numActive;
+            chainLength -= 2;
+        }
+
+        double covariance = sumC2 - sumD * sumC / numPairs;
+        double varianceD = sumD2 - sumD * sumD / numPairs;
+        double varianceC = sumC2 - sumC * sumC / numPairs;
+
+        // Equal distances give equal cophenetic distances, and the variances vanish up to the rounding errors
+        if (varianceD <= VARIANCE_TOLERANCE * sumD2 || varianceC <= VARIANCE_TOLERANCE * sumC2)
+            return 1.0;
+
+        return covariance / Math.sqrt(varianceD * varianceC);
+    }
+
+    private int index(int i, int j) {
+        return packedIndex(i, j, numSamples);
+    }
+
+    /**
+     * @return index of element (min(i, j), max(i, j)) in the packed upper-triangular array without the diagonal
+     */
+    private static int packedIndex(int i, int j, int numSamples) {
+        if (i > j) {
+            int t = i;
+            i = j;
+            j = t;
+        }
+        return (int) ((long) i * (2L * numSamples - i - 1) / 2 + (j - i - 1));
+    }
+}
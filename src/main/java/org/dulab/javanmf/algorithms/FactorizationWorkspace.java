@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2018 Du-Lab Team <dulab.binf@gmail.com>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.dulab.javanmf.algorithms;
+
+import org.ejml.data.DMatrixRMaj;
+
+/**
+ * Buffers used by {@link MatrixFactorization} and {@link MatrixRegression}. A workspace can be passed to
+ * {@link MatrixFactorization#execute(DMatrixRMaj, DMatrixRMaj, DMatrixRMaj, FactorizationWorkspace, boolean)} or
+ * {@link MatrixRegression#solve(DMatrixRMaj, DMatrixRMaj, DMatrixRMaj, DMatrixRMaj, FactorizationWorkspace, boolean)}
+ * and reused for many problems of similar shapes, so that no buffers are allocated once the workspace is large
+ * enough. A workspace must not be used by several threads at the same time.
+ *
+ * @author Du-Lab Team dulab.binf@gmail.com
+ */
+public class FactorizationWorkspace {
+
+    /* Copy of matrix X */
+    final DMatrixRMaj x;
+
+    /* Matrix X^T */
+    final DMatrixRMaj xt;
+
+    /* Matrix W^T */
+    final DMatrixRMaj wt;
+
+    /* Buffer for matrix H^T */
+    final DMatrixRMaj htBuffer;
+
+    /* Buffer for matrix W */
+    final DMatrixRMaj wttBuffer;
+
+    /* Buffer for one row of residuals X - WH */
+    private double[] residuals;
+
+    /**
+     * Creates an empty workspace. The buffers grow on demand
+     */
+    public FactorizationWorkspace() {
+        this(1, 1, 1);
+    }
+
+    /**
+     * Creates a workspace with buffers for matrices of the given maximum shape
+     *
+     * @param maxPoints     maximum number of rows of matrix X
+     * @param maxVectors    maximum number of columns of matrix X
+     * @param maxComponents maximum number of components
+     */
+    public FactorizationWorkspace(int maxPoints, int maxVectors, int maxComponents) {
+        x = new DMatrixRMaj(maxPoints, maxVectors);
+        xt = new DMatrixRMaj(maxVectors, maxPoints);
+        wt = new DMatrixRMaj(maxComponents, maxPoints);
+        htBuffer = new DMatrixRMaj(maxVectors, maxComponents);
+        wttBuffer = new DMatrixRMaj(maxPoints, maxComponents);
+        residuals = new double[maxVectors];
+    }
+
+    /**
+     * Makes sure the buffers are large enough for the given problem size. Buffers are reallocated only if they are
+     * too small
+     *
+     * @param numPoints     number of rows of matrix X
+     * @param numVectors    number of columns of matrix X
+     * @param numComponents number of components
+     * @param copyData      flag to reshape the buffers for the copy of X and X<sup>T</sup>
+     */
+    void reshape(int numPoints, int numVectors, int numComponents, boolean copyData) {
+        if (copyData) {
+            x.reshape(numPoints, numVectors);
+            xt.reshape(numVectors, numPoints);
+        }
+        wt.reshape(numComponents, numPoints);
+        htBuffer.reshape(numVectors, numComponents);
+        wttBuffer.reshape(numPoints, numComponents);
+        getResiduals(numVectors);
+    }
+
+    /**
+     * Returns the buffer for one row of residuals, which is reallocated only if it is too small
+     *
+     * @param numVectors number of columns of matrix X
+     * @return array of at least {@code numVectors} elements
+     */
+    double[] getResiduals(int numVectors) {
+        if (residuals.length < numVectors)
+            residuals = new double[numVectors];
+        return residuals;
+    }
+}
@@ -0,0 +1,240 @@
+package org.dulab.javanmf.algorithms;
+
+import org.ejml.data.DMatrixRMaj;
+
+import java.util.logging.Logger;
+
+import static org.ejml.dense.row.CommonOps_DDRM.*;
+
+/**
+ * This class solves the non-negative least squares problem using the fast combinatorial active set method. All columns
+ * are processed simultaneously, and columns with identical passive sets share the same factorization of matrix
+ * (ZtZ)<sub>P</sub>.
+ * <p>
+ * Scratch matrices are kept per thread, so one instance can be shared by several threads. Each thread keeps its
+ * matrices, sized for the largest problem it has solved, until it terminates or the instance is discarded.
+ *
+ * See M.H. Van Benthem and M.R. Keenan "FAST ALGORITHM FOR THE SOLUTION OF LARGE-SCALE NON-NEGATIVITY-CONSTRAINED
+ * LEAST SQUARES PROBLEMS"
+ */
+public class FastCombinatorialNonNegativeLeastSquares implements NonNegativeLeastSquaresSolver {
+
+    private static final Logger LOG = Logger.getLogger(FastCombinatorialNonNegativeLeastSquares.class.getName());
+
+    private static final double TOLERANCE = 1e-6;
+    private static final int MAX_ITERATIONS = 1000;
+
+    /* Solver of the least squares problems of each thread */
+    private final ThreadLocal<PassiveSetLeastSquares> passiveSetLeastSquares =
+            ThreadLocal.withInitial(PassiveSetLeastSquares::new);
+
+    /**
+     * Finds matrix D such that D = argmin || X - Z x D ||^2
+     * @param matrixX matrix X
+     * @param matrixZ matrix Z
+     * @param matrixD matrix D
+     */
+    @Override
+    public void solve(DMatrixRMaj matrixX, DMatrixRMaj matrixZ, DMatrixRMaj matrixD) {
+
+        if (matrixX.numCols != matrixD.numCols || matrixZ.numCols != matrixD.numRows || matrixX.numRows != matrixZ.numRows)
+            throw new IllegalStateException("Wrong shape of the input matrices");
+
+        DMatrixRMaj matrixZtX = new DMatrixRMaj(matrixD.numRows, matrixD.numCols);
+        multTransA(matrixZ, matrixX, matrixZtX);
+
+        DMatrixRMaj matrixZtZ = new DMatrixRMaj(matrixD.numRows, matrixD.numRows);
+        multInner(matrixZ, matrixZtZ);
+
+        solveGram(matrixZtZ, matrixZtX, matrixD);
+    }
+
+    /**
+     * Finds matrix D such that D = argmin || X - Z x D ||^2 using precomputed matrices ZtZ and ZtX
+     * @param matrixZtZ matrix ZtZ
+     * @param matrixZtX matrix ZtX
+     * @param matrixD   matrix D
+     */
+    @Override
+    public void solveGram(DMatrixRMaj matrixZtZ, DMatrixRMaj matrixZtX, DMatrixRMaj matrixD) {
+
+        if (matrixZtZ.numRows != matrixD.numRows || matrixZtZ.numCols != matrixD.numRows
+                || matrixZtX.numRows != matrixD.numRows || matrixZtX.numCols != matrixD.numCols)
+            throw new IllegalStateException("Wrong shape of the input matrices");
+
+        final int numRows = matrixD.numRows;
+        final int numCols = matrixD.numCols;
+
+        boolean[] passiveSets = new boolean[numRows * numCols];
+        int[] columns = new int[numCols];
+        int[] infeasibleColumns = new int[numCols];
+
+        // Start with the unconstrained solution and keep only its positive part
+        DMatrixRMaj matrixS = new DMatrixRMaj(numRows, numCols);
+        int numColumns = 0;
+        for (int j = 0; j < numCols; ++j) {
+            columns[numColumns++] = j;
+            for (int i = 0; i < numRows; ++i)
+                passiveSets[j * numRows + i] = true;
+        }
+        boolean success = passiveSetLeastSquares.get().solve(matrixZtZ, matrixZtX, passiveSets, columns, numColumns, matrixS);
+
+        // If ZtZ is singular, start with empty passive sets instead
+        for (int j = 0; j < numCols; ++j)
+            for (int i = 0; i < numRows; ++i) {
+                double s = matrixS.unsafe_get(i, j);
+                boolean passive = success && s > TOLERANCE;
+                passiveSets[j * numRows + i] = passive;
+                matrixD.unsafe_set(i, j, passive ? s : 0.0);
+            }
+
+        // Columns that are not completely passive have to be optimized
+        numColumns = 0;
+        for (int j = 0; j < numCols; ++j)
+            if (!allPassive(passiveSets, j, numRows))
+                columns[numColumns++] = j;
+
+        // Main loop
+        int iteration = 0;
+        while (numColumns > 0) {
+
+            if (++iteration > MAX_ITERATIONS) {
+                LOG.warning(String.format("NNLS is stopped after %d iterations.", MAX_ITERATIONS));
+                break;
+            }
+
+            solvePassiveSets(matrixZtZ, matrixZtX, passiveSets, columns, numColumns, matrixS);
+
+            // Inner loop: make infeasible solutions feasible
+            int numInfeasible = findInfeasibleColumns(matrixS, passiveSets, columns, numColumns, infeasibleColumns);
+            while (numInfeasible > 0) {
+                for (int c = 0; c < numInfeasible; ++c)
+                    updateColumn(matrixD, matrixS, passiveSets, infeasibleColumns[c]);
+
+                solvePassiveSets(matrixZtZ, matrixZtX, passiveSets, infeasibleColumns, numInfeasible, matrixS);
+                numInfeasible = findInfeasibleColumns(matrixS, passiveSets, infeasibleColumns, numInfeasible,
+                        infeasibleColumns);
+            }
+
+            // Check optimality and move the index of the largest gradient to the passive set
+            int numRemaining = 0;
+            for (int c = 0; c < numColumns; ++c) {
+                int column = columns[c];
+                for (int i = 0; i < numRows; ++i)
+                    matrixD.unsafe_set(i, column, matrixS.unsafe_get(i, column));
+
+                int maximumIndex = findActiveMaximumIndex(matrixZtZ, matrixZtX, matrixD, passiveSets, column);
+                if (maximumIndex >= 0) {
+                    passiveSets[column * numRows + maximumIndex] = true;
+                    columns[numRemaining++] = column;
+                }
+            }
+            numColumns = numRemaining;
+        }
+    }
+
+    private void solvePassiveSets(DMatrixRMaj matrixZtZ, DMatrixRMaj matrixZtX, boolean[] passiveSets,
+                                  int[] columns, int numColumns, DMatrixRMaj matrixS) {
+        if (!passiveSetLeastSquares.get().solve(matrixZtZ, matrixZtX, passiveSets, columns, numColumns, matrixS))
+            throw new IllegalStateException("Cannot factorize matrix ZtZP");
+    }
+
+    /**
+     * Finds the index of the maximum of W = ZtX - ZtZ x D among active rows of a column
+     *
+     * @param matrixZtZ   matrix ZtZ
+     * @param matrixZtX   matrix ZtX
+     * @param matrixD     matrix D
+     * @param passiveSets passive sets
+     * @param column      index of a column
+     * @return index of the maximum, or -1 if all values of W in the active set do not exceed the tolerance
+     */
+    private int findActiveMaximumIndex(DMatrixRMaj matrixZtZ, DMatrixRMaj matrixZtX, DMatrixRMaj matrixD,
+                                       boolean[] passiveSets, int column) {
+
+        final int numRows = matrixD.numRows;
+        double maximum = TOLERANCE;
+        int maximumIndex = -1;
+        for (int i = 0; i < numRows; ++i) {
+            if (passiveSets[column * numRows + i])
+                continue;
+
+            double w = matrixZtX.unsafe_get(i, column);
+            for (int j = 0; j < numRows; ++j)
+                w -= matrixZtZ.unsafe_get(i, j) * matrixD.unsafe_get(j, column);
+
+            if (w > maximum) {
+                maximum = w;
+                maximumIndex = i;
+            }
+        }
+        return maximumIndex;
+    }
+
+    /**
+     * Finds columns whose passive values of S are not positive
+     *
+     * @param matrixS     matrix S
+     * @param passiveSets passive sets
+     * @param columns     indices of columns to check
+     * @param numColumns  number of indices in {@code columns}
+     * @param buffer      buffer for infeasible columns. It can be the same array as {@code columns}
+     * @return number of infeasible columns
+     */
+    private int findInfeasibleColumns(DMatrixRMaj matrixS, boolean[] passiveSets, int[] columns, int numColumns,
+                                      int[] buffer) {
+
+        final int numRows = matrixS.numRows;
+        int count = 0;
+        for (int c = 0; c < numColumns; ++c) {
+            int column = columns[c];
+            for (int i = 0; i < numRows; ++i)
+                if (passiveSets[column * numRows + i] && matrixS.unsafe_get(i, column) <= 0.0) {
+                    buffer[count++] = column;
+                    break;
+                }
+        }
+        return count;
+    }
+
+    /**
+     * Updates a column of matrix D s.t. D <- D + alpha (S - D), where alpha = -min(d / (d - s)) over the passive set.
+     * Then, indices of values close to zero are moved from the passive set to the active set
+     *
+     * @param matrixD     matrix D
+     * @param matrixS     matrix S
+     * @param passiveSets passive sets
+     * @param column      index of a column
+     */
+    private void updateColumn(DMatrixRMaj matrixD, DMatrixRMaj matrixS, boolean[] passiveSets, int column) {
+
+        final int numRows = matrixD.numRows;
+
+        double alpha = Double.MAX_VALUE;
+        for (int i = 0; i < numRows; ++i) {
+            double s = matrixS.unsafe_get(i, column);
+            if (!passiveSets[column * numRows + i] || s > 0.0)
+                continue;
+
+            double d = matrixD.unsafe_get(i, column);
+            d /= d - s;
+            if (d < alpha)
+                alpha = d;
+        }
+
+        for (int i = 0; i < numRows; ++i) {
+            double d = matrixD.unsafe_get(i, column);
+            d += alpha * (matrixS.unsafe_get(i, column) - d);
+            matrixD.unsafe_set(i, column, d);
+
+            if (-TOLERANCE < d && d < TOLERANCE)
+                passiveSets[column * numRows + i] = false;
+        }
+    }
+
+    private boolean allPassive(boolean[] passiveSets, int column, int numRows) {
+        for (int i = 0; i < numRows; ++i)
+            if (!passiveSets[column * numRows + i]) return false;
+        return true;
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2018 Du-Lab Team <dulab.binf@gmail.com>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.dulab.javanmf.algorithms;
+
+import org.ejml.data.DMatrixRMaj;
+
+import javax.annotation.Nonnull;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * This class stores truncated singular value decompositions of matrices X, so that the NNDSVD initialization of
+ * matrices W and H can be formed for any number of components without decomposing X again. The decompositions are
+ * looked up by the identity of X together with its content hash, so that a matrix changed after its decomposition was
+ * stored is decomposed again. The cache holds only weak references to matrices X: neither X nor its copy is kept in
+ * memory, and the decomposition is removed once X is garbage collected.
+ * <p>
+ * The least recently used decompositions are evicted when their total size exceeds the given limit. A decomposition
+ * larger than the limit is returned without being stored, and a warning is logged.
+ * <p>
+ * <strong>Example</strong> for given matrix X and the range of components
+ * <pre> {@code
+ *     InitializationCache cache = new InitializationCache(256L << 20);
+ *     for (int k = 2; k <= 40; ++k) {
+ *         DMatrixRMaj matrixW = new DMatrixRMaj(matrixX.numRows, k);
+ *         DMatrixRMaj matrixH = new DMatrixRMaj(k, matrixX.numCols);
+ *         cache.decompose(matrixX, 40, matrixW, matrixH);
+ *     }
+ * } </pre>
+ *
+ * This class is thread-safe.
+ *
+ * @author Du-Lab Team dulab.binf@gmail.com
+ */
+public class InitializationCache
+{
+    /* Logger */
+    private static final Logger LOG = Logger.getLogger(InitializationCache.class.getName());
+
+    private final long maxBytes;
+
+    /* Decompositions in the access order, from the least to the most recently used */
+    private final Map<Key, SingularValueDecomposition> decompositions = new LinkedHashMap<>(16, 0.75f, true);
+
+    /* Keys whose matrices X have been garbage collected */
+    private final ReferenceQueue<DMatrixRMaj> collected = new ReferenceQueue<>();
+
+    private long numBytes = 0;
+
+    /**
+     * Creates an instance of {@link InitializationCache}
+     *
+     * @param maxBytes maximum total size of the stored decompositions in bytes
+     * @throws IllegalArgumentException if the maximum size is not positive
+     */
+    public InitializationCache(long maxBytes) throws IllegalArgumentException
+    {
+        if (maxBytes <= 0)
+            throw new IllegalArgumentException("Maximum size of the cache must be positive");
+
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the decomposition of matrix X with at least {@code maxComponents} singular triplets. The decomposition is
+     * computed by the randomized SVD only if the cache does not contain a decomposition of X with enough triplets.
+     *
+     * @param x             matrix of shape [N<sub>points</sub>, N<sub>vectors</sub>]
+     * @param maxComponents maximum number of components that will be requested for matrix X
+     * @return instance of {@link SingularValueDecomposition}
+     */
+    public SingularValueDecomposition get(@Nonnull DMatrixRMaj x, int maxComponents)
+    {
+        Key key = new Key(x, null);
+
+        synchronized (this) {
+            removeCollected();
+            SingularValueDecomposition decomposition = decompositions.get(key);
+            if (decomposition != null && decomposition.getNumComponents() >= maxComponents)
+                return decomposition;
+        }
+
+        SingularValueDecomposition decomposition = new SingularValueDecomposition(x, maxComponents);
+
+        synchronized (this) {
+            SingularValueDecomposition previous = decompositions.get(key);
+
+            // Keep the decomposition with more triplets if another thread has computed it in the meantime
+            if (previous != null && previous.getNumComponents() > decomposition.getNumComponents())
+                decomposition = previous;
+
+            // Remove the previous decomposition of X, including decompositions of X before its values were changed
+            Iterator<Map.Entry<Key, SingularValueDecomposition>> iterator = decompositions.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Key, SingularValueDecomposition> entry = iterator.next();
+                if (entry.getKey().get() == x) {
+                    numBytes -= bytes(entry.getValue());
+                    iterator.remove();
+                }
+            }
+
+            long size = bytes(decomposition);
+            if (size <= maxBytes) {
+                decompositions.put(new Key(x, key.hash, collected), decomposition);
+                numBytes += size;
+                evict();
+            }
+            else
+                LOG.warning("Decomposition of " + size + " bytes is not cached because it exceeds the limit of "
+                        + maxBytes + " bytes");
+        }
+
+        return decomposition;
+    }
+
+    /**
+     * Performs non-negative singular value decomposition (NNDSVD) of matrix X using the cached decomposition, see
+     * {@link SingularValueDecomposition#decompose(DMatrixRMaj, DMatrixRMaj)}
+     *
+     * @param x             matrix of shape [N<sub>points</sub>, N<sub>vectors</sub>]
+     * @param maxComponents maximum number of components that will be requested for matrix X
+     * @param w             matrix of shape [N<sub>points</sub>, N<sub>components</sub>]
+     * @param h             matrix of shape [N<sub>components</sub>, N<sub>vectors</sub>]
+     * @throws IllegalArgumentException if N<sub>components</sub> is larger than {@code maxComponents}
+     */
+    public void decompose(@Nonnull DMatrixRMaj x, int maxComponents, @Nonnull DMatrixRMaj w, @Nonnull DMatrixRMaj h)
+            throws IllegalArgumentException
+    {
+        if (w.numCols > maxComponents)
+            throw new IllegalArgumentException("Number of components is larger than " + maxComponents);
+
+        get(x, maxComponents).decompose(w, h);
+    }
+
+    /**
+     * @return number of stored decompositions
+     */
+    public synchronized int size() {
+        removeCollected();
+        return decompositions.size();
+    }
+
+    /**
+     * @return total size of the stored decompositions in bytes
+     */
+    public synchronized long getNumBytes() {
+        removeCollected();
+        return numBytes;
+    }
+
+    /**
+     * Removes all stored decompositions
+     */
+    public synchronized void clear() {
+        decompositions.clear();
+        numBytes = 0;
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<Key, SingularValueDecomposition>> iterator = decompositions.entrySet().iterator();
+        while (numBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<Key, SingularValueDecomposition> entry = iterator.next();
+            numBytes -= bytes(entry.getValue());
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Removes the decompositions of matrices X that have been garbage collected
+     */
+    private void removeCollected() {
+        Reference<? extends DMatrixRMaj> reference;
+        while ((reference = collected.poll()) != null) {
+            SingularValueDecomposition decomposition = decompositions.remove(reference);
+            if (decomposition != null)
+                numBytes -= bytes(decomposition);
+        }
+    }
+
+    private static long bytes(@Nonnull SingularValueDecomposition decomposition) {
+        return Double.BYTES * decomposition.getNumElements();
+    }
+
+    /**
+     * Weak reference to matrix X with its content hash. Two keys are equal if they refer to the same matrix X with the
+     * same content hash, so that a key never keeps matrix X in memory
+     */
+    private static class Key extends WeakReference<DMatrixRMaj> {
+
+        private final int identity;
+        private final long hash;
+
+        /**
+         * Creates a key with a given content hash of matrix X
+         */
+        Key(@Nonnull DMatrixRMaj x, long hash, ReferenceQueue<DMatrixRMaj> queue) {
+            super(x, queue);
+            this.identity = System.identityHashCode(x);
+            this.hash = hash;
+        }
+
+        /**
+         * Creates a key and computes the content hash of matrix X
+         */
+        Key(@Nonnull DMatrixRMaj x, ReferenceQueue<DMatrixRMaj> queue) {
+            this(x, hash(x), queue);
+        }
+
+        private static long hash(@Nonnull DMatrixRMaj x) {
+            long hash = 1125899906842597L;
+            hash = 31 * hash + x.numRows;
+            hash = 31 * hash + x.numCols;
+            for (int i = 0; i < x.getNumElements(); ++i)
+                hash = 31 * hash + Double.doubleToLongBits(x.data[i]);
+
+            // Mix the bits, so that similar matrices are spread over the hash table
+            hash ^= hash >>> 33;
+            hash *= 0xff51afd7ed558ccdL;
+            hash ^= hash >>> 33;
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            DMatrixRMaj x = get();
+            return x != null && x == key.get() && hash == key.hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return identity ^ Long.hashCode(hash);
+        }
+    }
+}
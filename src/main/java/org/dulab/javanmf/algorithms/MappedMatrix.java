@@ -0,0 +1,313 @@
+/*
+ * Copyright (C) 2018 Du-Lab Team <dulab.binf@gmail.com>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.dulab.javanmf.algorithms;
+
+import org.dulab.javanmf.data.DataMatrix;
+import org.ejml.data.DMatrixRMaj;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Data matrix X stored in a file in the row-major order and memory-mapped with {@link FileChannel#map}. Only a tile
+ * of rows of X is copied to the heap at a time, so that matrices larger than the heap can be factorized with
+ * {@link MatrixFactorization} and {@link AlternatingLeastSquaresMatrixFactorization}.
+ * <p>
+ * The file channel is closed by the constructor, but the mapped regions stay valid until the instance is garbage
+ * collected, because Java 8 provides no way to unmap them explicitly. Therefore, the instance holds the address space
+ * of the whole file while it is reachable, and on some platforms (e.g. Windows) the file cannot be deleted or truncated
+ * until then. The file must not be modified while the instance is in use.
+ * <p>
+ * <strong>Example</strong> for a file of doubles written by {@link #write(Path, DMatrixRMaj, Precision)}
+ * <pre> {@code
+ *     MappedMatrix matrixX = new MappedMatrix(path, numPoints, numVectors, MappedMatrix.Precision.DOUBLE);
+ *     factorization.execute(matrixX, matrixW, matrixH);
+ * } </pre>
+ *
+ * @author Du-Lab Team dulab.binf@gmail.com
+ */
+public class MappedMatrix implements DataMatrix
+{
+    /**
+     * Type of the elements stored in the file
+     */
+    public enum Precision {
+        DOUBLE(Double.BYTES), FLOAT(Float.BYTES);
+
+        private final int bytes;
+
+        Precision(int bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    /* Maximum size of one mapped region of the file */
+    private static final long MAX_CHUNK_BYTES = 1L << 30;
+
+    /* Number of elements copied to the heap at a time */
+    private static final int TILE_ELEMENTS = 1 << 16;
+
+    private final int numRows;
+    private final int numCols;
+    private final Precision precision;
+
+    /* Number of rows in each mapped region */
+    private final int rowsPerChunk;
+
+    /* Number of rows in each tile */
+    private final int rowsPerTile;
+
+    /* Mapped regions of the file as DoubleBuffer or FloatBuffer */
+    private final Buffer[] chunks;
+
+    /**
+     * Creates an instance of {@link MappedMatrix} for a file in the native byte order
+     * @param path      path to the file
+     * @param numRows   number of rows of matrix X
+     * @param numCols   number of columns of matrix X
+     * @param precision type of the elements stored in the file
+     * @throws IOException If the file cannot be mapped
+     */
+    public MappedMatrix(@Nonnull Path path, int numRows, int numCols, @Nonnull Precision precision)
+            throws IOException
+    {
+        this(path, numRows, numCols, precision, ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Creates an instance of {@link MappedMatrix}
+     * @param path      path to the file
+     * @param numRows   number of rows of matrix X
+     * @param numCols   number of columns of matrix X
+     * @param precision type of the elements stored in the file
+     * @param order     byte order of the file
+     * @throws IOException If the file cannot be mapped
+     * @throws IllegalArgumentException If the file is too small or one row does not fit into a mapped region
+     */
+    public MappedMatrix(@Nonnull Path path, int numRows, int numCols, @Nonnull Precision precision,
+                        @Nonnull ByteOrder order)
+            throws IOException, IllegalArgumentException
+    {
+        this(path, numRows, numCols, precision, order, MAX_CHUNK_BYTES);
+    }
+
+    /**
+     * Creates an instance of {@link MappedMatrix} with the given maximum size of one mapped region, so that the
+     * boundaries between the regions can be tested on small files
+     * @param path          path to the file
+     * @param numRows       number of rows of matrix X
+     * @param numCols       number of columns of matrix X
+     * @param precision     type of the elements stored in the file
+     * @param order         byte order of the file
+     * @param maxChunkBytes maximum size of one mapped region in bytes
+     * @throws IOException If the file cannot be mapped
+     * @throws IllegalArgumentException If the file is too small or one row does not fit into a mapped region
+     */
+    MappedMatrix(@Nonnull Path path, int numRows, int numCols, @Nonnull Precision precision,
+                 @Nonnull ByteOrder order, long maxChunkBytes)
+            throws IOException, IllegalArgumentException
+    {
+        this.numRows = numRows;
+        this.numCols = numCols;
+        this.precision = precision;
+
+        final long rowBytes = (long) numCols * precision.bytes;
+        if (rowBytes > maxChunkBytes)
+            throw new IllegalArgumentException("Row of " + rowBytes + " bytes is too long");
+
+        this.rowsPerChunk = (int) Math.max(1, Math.min(numRows, maxChunkBytes / Math.max(rowBytes, 1)));
+        this.rowsPerTile = Math.max(1, Math.min(rowsPerChunk, TILE_ELEMENTS / Math.max(numCols, 1)));
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+
+            if (channel.size() < numRows * rowBytes)
+                throw new IllegalArgumentException("File " + path + " has " + channel.size()
+                        + " bytes, but " + numRows * rowBytes + " bytes are required");
+
+            int numChunks = (numRows + rowsPerChunk - 1) / rowsPerChunk;
+            chunks = new Buffer[numChunks];
+            for (int i = 0; i < numChunks; ++i) {
+                long start = (long) i * rowsPerChunk * rowBytes;
+                long size = Math.min(rowsPerChunk, numRows - i * rowsPerChunk) * rowBytes;
+
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, size).order(order);
+                chunks[i] = precision == Precision.DOUBLE ? buffer.asDoubleBuffer() : buffer.asFloatBuffer();
+            }
+        }
+    }
+
+    @Override
+    public int getNumRows() {
+        return numRows;
+    }
+
+    @Override
+    public int getNumCols() {
+        return numCols;
+    }
+
+    /**
+     * Calculates product C = A<sup>T</sup>X by streaming tiles of rows of X
+     */
+    @Override
+    public void multTransA(@Nonnull DMatrixRMaj a, @Nonnull DMatrixRMaj c) {
+
+        if (a.numRows != numRows)
+            throw new IllegalStateException("Wrong shape of the input matrices");
+
+        final int numComponents = a.numCols;
+        c.reshape(numComponents, numCols);
+        Arrays.fill(c.data, 0, c.getNumElements(), 0.0);
+
+        double[] tile = new double[rowsPerTile * numCols];
+        for (int start = 0, end; start < numRows; start = end) {
+            end = readTile(start, tile);
+
+            for (int i = start; i < end; ++i) {
+                int tileIndex = (i - start) * numCols;
+                for (int k = 0; k < numComponents; ++k) {
+                    double aik = a.data[i * numComponents + k];
+                    if (aik == 0.0)
+                        continue;
+
+                    int index = k * numCols;
+                    for (int j = 0; j < numCols; ++j)
+                        c.data[index + j] += aik * tile[tileIndex + j];
+                }
+            }
+        }
+    }
+
+    /**
+     * Calculates product C = BX<sup>T</sup> by streaming tiles of rows of X
+     */
+    @Override
+    public void multTransB(@Nonnull DMatrixRMaj b, @Nonnull DMatrixRMaj c) {
+
+        if (b.numCols != numCols)
+            throw new IllegalStateException("Wrong shape of the input matrices");
+
+        final int numComponents = b.numRows;
+        c.reshape(numComponents, numRows);
+
+        double[] tile = new double[rowsPerTile * numCols];
+        for (int start = 0, end; start < numRows; start = end) {
+            end = readTile(start, tile);
+
+            for (int i = start; i < end; ++i) {
+                int tileIndex = (i - start) * numCols;
+                for (int k = 0; k < numComponents; ++k) {
+                    int index = k * numCols;
+                    double sum = 0.0;
+                    for (int j = 0; j < numCols; ++j)
+                        sum += b.data[index + j] * tile[tileIndex + j];
+                    c.data[k * numRows + i] = sum;
+                }
+            }
+        }
+    }
+
+    @Override
+    public double squaredNorm() {
+
+        double norm2 = 0.0;
+        double[] tile = new double[rowsPerTile * numCols];
+        for (int start = 0, end; start < numRows; start = end) {
+            end = readTile(start, tile);
+            int length = (end - start) * numCols;
+            for (int i = 0; i < length; ++i)
+                norm2 += tile[i] * tile[i];
+        }
+        return norm2;
+    }
+
+    @Override
+    public DataMatrix transpose() {
+        return new TransposedDataMatrix(this);
+    }
+
+    /**
+     * Copies rows of X starting from {@code start} into {@code tile}. A tile never crosses the boundary of a mapped
+     * region
+     * @param start index of the first row
+     * @param tile  array of size N<sub>rows per tile</sub> &times; N<sub>cols</sub>
+     * @return index of the row after the last copied row
+     */
+    private int readTile(int start, @Nonnull double[] tile) {
+
+        int chunkIndex = start / rowsPerChunk;
+        int chunkStart = chunkIndex * rowsPerChunk;
+        int end = Math.min(Math.min(start + rowsPerTile, chunkStart + rowsPerChunk), numRows);
+        int offset = (start - chunkStart) * numCols;
+        int length = (end - start) * numCols;
+
+        Buffer chunk = chunks[chunkIndex];
+        if (precision == Precision.DOUBLE) {
+            DoubleBuffer buffer = ((DoubleBuffer) chunk).duplicate();
+            ((Buffer) buffer).position(offset);
+            buffer.get(tile, 0, length);
+        }
+        else {
+            FloatBuffer buffer = (FloatBuffer) chunk;
+            for (int i = 0; i < length; ++i)
+                tile[i] = buffer.get(offset + i);
+        }
+
+        return end;
+    }
+
+    /**
+     * Writes matrix X into a file in the row-major order and the native byte order, so that it can be mapped by
+     * {@link MappedMatrix}
+     * @param path      path to the file
+     * @param x         matrix X
+     * @param precision type of the elements stored in the file
+     * @throws IOException If the file cannot be written
+     */
+    public static void write(@Nonnull Path path, @Nonnull DMatrixRMaj x, @Nonnull Precision precision)
+            throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            ByteBuffer buffer = ByteBuffer.allocate(x.numCols * precision.bytes).order(ByteOrder.nativeOrder());
+            for (int i = 0; i < x.numRows; ++i) {
+                ((Buffer) buffer).clear();
+                for (int j = 0; j < x.numCols; ++j) {
+                    if (precision == Precision.DOUBLE)
+                        buffer.putDouble(x.unsafe_get(i, j));
+                    else
+                        buffer.putFloat((float) x.unsafe_get(i, j));
+                }
+                ((Buffer) buffer).flip();
+                while (buffer.hasRemaining())
+                    channel.write(buffer);
+            }
+        }
+    }
+}
@@ -18,11 +18,19 @@
 
 package org.dulab.javanmf.algorithms;
 
+import org.dulab.javanmf.data.DataMatrix;
+import org.dulab.javanmf.measures.EuclideanDistance;
 import org.dulab.javanmf.measures.Measure;
 import org.ejml.data.DMatrixRMaj;
+import org.ejml.data.DMatrixSparseCSC;
+import org.ejml.data.FMatrixRMaj;
+import org.ejml.dense.row.CommonOps_FDRM;
+import org.ejml.sparse.csc.CommonOps_DSCC;
 import org.dulab.javanmf.updaterules.UpdateRule;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.function.DoubleSupplier;
 import java.util.logging.Logger;
 
 import static org.ejml.dense.row.CommonOps_DDRM.*;
@@ -48,6 +56,10 @@ import static org.ejml.dense.row.CommonOps_DDRM.*;
  *
  *     factorization.execute(matrixX, matrixW, matrixH);
  * } </pre>
+ * <p>
+ * An instance of {@link MatrixFactorization} holds only its configuration. The scratch matrices of the provided update
+ * rules are confined to the calling thread, so one instance can perform factorizations in several threads at the same
+ * time, as long as each thread uses its own matrices and {@link FactorizationWorkspace}.
  *
  * @author Du-Lab Team dulab.binf@gmail.com
  */
@@ -74,6 +86,12 @@ public class MatrixFactorization {
     /* Distance measure associated with the update rules */
     private final Measure measure;
 
+    /* Flag to use matrix X without copying or transposing it */
+    private final boolean zeroCopy;
+
+    /* Number of iterations of the last factorization of each thread */
+    private final ThreadLocal<int[]> numIterations = ThreadLocal.withInitial(() -> new int[1]);
+
     /**
      * Creates an instance of {@link MatrixFactorization}
      *
@@ -84,11 +102,37 @@ public class MatrixFactorization {
      */
     public MatrixFactorization(@Nonnull UpdateRule updateRuleW, @Nonnull UpdateRule updateRuleH,
                                double tolerance, int maxIteration) {
+        this(updateRuleW, updateRuleH, tolerance, maxIteration, false);
+    }
+
+    /**
+     * Creates an instance of {@link MatrixFactorization}
+     *
+     * @param updateRuleW  instance of {@link org.dulab.javanmf.updaterules.UpdateRule} for matrix W
+     * @param updateRuleH  instance of {@link org.dulab.javanmf.updaterules.UpdateRule} for matrix H
+     * @param tolerance    the fitting error tolerance
+     * @param maxIteration maximum number of iterations to use
+     * @param zeroCopy     if true, dense matrix X is used directly without creating its copy and transpose. Products
+     *                     with X are calculated by the transposed-operand kernels
+     *                     {@link UpdateRule#updateTransA(DMatrixRMaj, DMatrixRMaj, DMatrixRMaj)} and
+     *                     {@link UpdateRule#updateTransB(DMatrixRMaj, DMatrixRMaj, DMatrixRMaj)}, which are
+     *                     implemented by all subclasses of {@link org.dulab.javanmf.updaterules.EuclideanUpdateRule}
+     * @throws IllegalArgumentException if {@code zeroCopy} is true and an update rule does not support transposed
+     *                                  operands, see {@link UpdateRule#supportsTransposedOperands()}
+     */
+    public MatrixFactorization(@Nonnull UpdateRule updateRuleW, @Nonnull UpdateRule updateRuleH,
+                               double tolerance, int maxIteration, boolean zeroCopy)
+            throws IllegalArgumentException
+    {
+        if (zeroCopy && !(updateRuleW.supportsTransposedOperands() && updateRuleH.supportsTransposedOperands()))
+            throw new IllegalArgumentException("Zero-copy mode requires update rules that support transposed operands");
+
         this.updateRuleW = updateRuleW;
         this.updateRuleH = updateRuleH;
         this.measure = updateRuleW.measure;
         this.tolerance = tolerance;
         this.maxIteration = maxIteration;
+        this.zeroCopy = zeroCopy;
     }
 
     /**
@@ -102,61 +146,327 @@ public class MatrixFactorization {
      * @param verbose flag to output verbose information
      */
     public void execute(@Nonnull DMatrixRMaj data, @Nonnull DMatrixRMaj w, @Nonnull DMatrixRMaj h, boolean verbose) {
+        execute(data, w, h, new FactorizationWorkspace(), verbose);
+    }
 
-        DMatrixRMaj x = new DMatrixRMaj(data);
+    /**
+     * Performs the non-negative matrix factorization with given initial matrices W and H using buffers of the given
+     * workspace. Repeated calls with the same workspace and similar shapes of the matrices do not allocate buffers.
+     * <p>
+     * Parameters {@code w} and {@code h} contain the result of the factorization.
+     *
+     * @param data      matrix of shape [N<sub>points</sub>, N<sub>vectors</sub>], a collection of vectors in
+     *                  N<sub>points</sub>-dimensional space
+     * @param w         matrix of shape [N<sub>points</sub>, N<sub>components</sub>], a collection of initial
+     *                  components
+     * @param h         matrix of shape [N<sub>components</sub>, N<sub>vectors</sub>], a collection of initial
+     *                  coefficients
+     * @param workspace instance of {@link FactorizationWorkspace}
+     * @param verbose   flag to output verbose information
+     */
+    public void execute(@Nonnull DMatrixRMaj data, @Nonnull DMatrixRMaj w, @Nonnull DMatrixRMaj h,
+                        @Nonnull FactorizationWorkspace workspace, boolean verbose) {
+        execute(data, w, h, workspace, null, verbose);
+    }
 
-        DMatrixRMaj xt = new DMatrixRMaj(x.numCols, x.numRows);
+    /**
+     * Performs the non-negative matrix factorization with given initial matrices W and H, reporting the error to
+     * {@code checkpoint} every 10 iterations. The factorization stops when {@code checkpoint} returns false.
+     */
+    int execute(@Nonnull DMatrixRMaj data, @Nonnull DMatrixRMaj w, @Nonnull DMatrixRMaj h,
+                @Nonnull FactorizationWorkspace workspace, @Nullable Checkpoint checkpoint, boolean verbose) {
+
+        workspace.reshape(data.numRows, data.numCols, w.numCols, !zeroCopy);
+
+        if (zeroCopy)
+            return executeWithoutCopy(data, w, h, workspace, checkpoint, verbose);
+
+        DMatrixRMaj x = workspace.x;
+        x.set(data);
+
+        DMatrixRMaj xt = workspace.xt;
         transpose(x, xt);
 
-        DMatrixRMaj wt = new DMatrixRMaj(w.numCols, w.numRows);
+        DMatrixRMaj wt = workspace.wt;
         transpose(w, wt);
 
 //        DoubleMatrix xt = x.transpose();
 //        DoubleMatrix wt = w.transpose();
 
+        // Squared norm of X, used by update rules that evaluate the distance without forming WH
+        final double normX2 = EuclideanDistance.squaredNorm(x);
+
+        final double initError = measure.get(x, w, h, workspace.getResiduals(x.numCols));
+
+        DMatrixRMaj htBuffer = workspace.htBuffer;
+        DMatrixRMaj wttBuffer = workspace.wttBuffer;
+//        DoubleMatrix htBuffer = new DoubleMatrix();
+//        DoubleMatrix wttBuffer = new DoubleMatrix();
+
+        int numIterations = iterate(() -> {
+                    updateRuleH.update(x, transpose(wt, wttBuffer), h);
+                    updateRuleW.update(xt, transpose(h, htBuffer), wt);
+                },
+                () -> updateRuleW.getDistance(xt, htBuffer, wt, normX2),
+                initError, checkpoint, verbose);
+
+        transpose(wt, w);
+//        w.copy(wt.transpose());
+
+        return numIterations;
+    }
+
+    /**
+     * Performs the non-negative matrix factorization with given initial matrices W and H.
+     * <p>
+     * Parameters {@code w} and {@code h} contain the result of the factorization.
+     *
+     * @param data matrix of shape [N<sub>points</sub>, N<sub>vectors</sub>], a collection of vectors in
+     *             N<sub>points</sub>-dimensional space
+     * @param w    matrix of shape [N<sub>points</sub>, N<sub>components</sub>], a collection of initial components
+     * @param h    matrix of shape [N<sub>components</sub>, N<sub>vectors</sub>], a collection of initial coefficients
+     */
+    public void execute(@Nonnull DMatrixRMaj data, @Nonnull DMatrixRMaj w, @Nonnull DMatrixRMaj h) {
+        execute(data, w, h, false);
+    }
+
+    /**
+     * Performs the non-negative matrix factorization of sparse matrix X with given initial matrices W and H. Products
+     * with matrix X are calculated over its non-zero elements only, so that the cost scales with the number of
+     * non-zero elements rather than the size of X.
+     * <p>
+     * Parameters {@code w} and {@code h} contain the result of the factorization.
+     *
+     * @param x       sparse matrix of shape [N<sub>points</sub>, N<sub>vectors</sub>], a collection of vectors in
+     *                N<sub>points</sub>-dimensional space
+     * @param w       matrix of shape [N<sub>points</sub>, N<sub>components</sub>], a collection of initial components
+     * @param h       matrix of shape [N<sub>components</sub>, N<sub>vectors</sub>], a collection of initial coefficients
+     * @param verbose flag to output verbose information
+     */
+    public void execute(@Nonnull DMatrixSparseCSC x, @Nonnull DMatrixRMaj w, @Nonnull DMatrixRMaj h,
+                        boolean verbose) {
+
+        DMatrixSparseCSC xt = CommonOps_DSCC.transpose(x, null, null);
+
+        DMatrixRMaj wt = new DMatrixRMaj(w.numCols, w.numRows);
+        transpose(w, wt);
+
+        final double normX2 = EuclideanDistance.squaredNorm(x);
         final double initError = measure.get(x, w, h);
-        double prevError = initError;
 
         DMatrixRMaj htBuffer = new DMatrixRMaj(h.numCols, h.numRows);
         DMatrixRMaj wttBuffer = new DMatrixRMaj(w.numRows, w.numCols);
-//        DoubleMatrix htBuffer = new DoubleMatrix();
-//        DoubleMatrix wttBuffer = new DoubleMatrix();
 
-        // Update matrices WT and H until the error is small or the maximum number of iterations is reached
+        iterate(() -> {
+                    updateRuleH.update(x, transpose(wt, wttBuffer), h);
+                    updateRuleW.update(xt, transpose(h, htBuffer), wt);
+                },
+                () -> updateRuleW.getDistance(xt, htBuffer, wt, normX2),
+                initError, null, verbose);
+
+        transpose(wt, w);
+    }
+
+    /**
+     * Performs the non-negative matrix factorization of sparse matrix X with given initial matrices W and H.
+     * <p>
+     * Parameters {@code w} and {@code h} contain the result of the factorization.
+     *
+     * @param x sparse matrix of shape [N<sub>points</sub>, N<sub>vectors</sub>], a collection of vectors in
+     *          N<sub>points</sub>-dimensional space
+     * @param w matrix of shape [N<sub>points</sub>, N<sub>components</sub>], a collection of initial components
+     * @param h matrix of shape [N<sub>components</sub>, N<sub>vectors</sub>], a collection of initial coefficients
+     */
+    public void execute(@Nonnull DMatrixSparseCSC x, @Nonnull DMatrixRMaj w, @Nonnull DMatrixRMaj h) {
+        execute(x, w, h, false);
+    }
+
+    /**
+     * Performs the non-negative matrix factorization in single precision with given initial matrices W and H. All
+     * matrices and buffers use half of the memory of the double-precision factorization.
+     * <p>
+     * Parameters {@code w} and {@code h} contain the result of the factorization.
+     *
+     * @param x       matrix of shape [N<sub>points</sub>, N<sub>vectors</sub>], a collection of vectors in
+     *                N<sub>points</sub>-dimensional space
+     * @param w       matrix of shape [N<sub>points</sub>, N<sub>components</sub>], a collection of initial components
+     * @param h       matrix of shape [N<sub>components</sub>, N<sub>vectors</sub>], a collection of initial coefficients
+     * @param verbose flag to output verbose information
+     */
+    public void execute(@Nonnull FMatrixRMaj x, @Nonnull FMatrixRMaj w, @Nonnull FMatrixRMaj h, boolean verbose) {
+
+        FMatrixRMaj xt = CommonOps_FDRM.transpose(x, null);
+        FMatrixRMaj wt = CommonOps_FDRM.transpose(w, null);
+
+        final double normX2 = EuclideanDistance.squaredNorm(x);
+        final double initError = measure.get(x, w, h);
+
+        FMatrixRMaj htBuffer = new FMatrixRMaj(h.numCols, h.numRows);
+        FMatrixRMaj wttBuffer = new FMatrixRMaj(w.numRows, w.numCols);
+
+        iterate(() -> {
+                    updateRuleH.update(x, CommonOps_FDRM.transpose(wt, wttBuffer), h);
+                    updateRuleW.update(xt, CommonOps_FDRM.transpose(h, htBuffer), wt);
+                },
+                () -> updateRuleW.getDistance(xt, htBuffer, wt, normX2),
+                initError, null, verbose);
+
+        CommonOps_FDRM.transpose(wt, w);
+    }
+
+    /**
+     * Performs the non-negative matrix factorization in single precision with given initial matrices W and H.
+     * <p>
+     * Parameters {@code w} and {@code h} contain the result of the factorization.
+     *
+     * @param x matrix of shape [N<sub>points</sub>, N<sub>vectors</sub>], a collection of vectors in
+     *          N<sub>points</sub>-dimensional space
+     * @param w matrix of shape [N<sub>points</sub>, N<sub>components</sub>], a collection of initial components
+     * @param h matrix of shape [N<sub>components</sub>, N<sub>vectors</sub>], a collection of initial coefficients
+     */
+    public void execute(@Nonnull FMatrixRMaj x, @Nonnull FMatrixRMaj w, @Nonnull FMatrixRMaj h) {
+        execute(x, w, h, false);
+    }
+
+    /**
+     * Performs the non-negative matrix factorization of data matrix X, e.g. {@link MappedMatrix}, with given initial
+     * matrices W and H. Matrix X is accessed only through products W<sup>T</sup>X and HX<sup>T</sup>, so neither X
+     * nor X<sup>T</sup> is copied to the heap. The update rules must support data matrices, e.g.
+     * {@link org.dulab.javanmf.updaterules.MUpdateRule}.
+     * <p>
+     * Parameters {@code w} and {@code h} contain the result of the factorization.
+     *
+     * @param x       data matrix of shape [N<sub>points</sub>, N<sub>vectors</sub>], a collection of vectors in
+     *                N<sub>points</sub>-dimensional space
+     * @param w       matrix of shape [N<sub>points</sub>, N<sub>components</sub>], a collection of initial components
+     * @param h       matrix of shape [N<sub>components</sub>, N<sub>vectors</sub>], a collection of initial coefficients
+     * @param verbose flag to output verbose information
+     */
+    public void execute(@Nonnull DataMatrix x, @Nonnull DMatrixRMaj w, @Nonnull DMatrixRMaj h, boolean verbose) {
+
+        DataMatrix xt = x.transpose();
+
+        DMatrixRMaj wt = new DMatrixRMaj(w.numCols, w.numRows);
+        transpose(w, wt);
+
+        final double normX2 = x.squaredNorm();
+        final double initError = measure.get(x, w, h);
+
+        DMatrixRMaj htBuffer = new DMatrixRMaj(h.numCols, h.numRows);
+        DMatrixRMaj wttBuffer = new DMatrixRMaj(w.numRows, w.numCols);
+
+        iterate(() -> {
+                    updateRuleH.update(x, transpose(wt, wttBuffer), h);
+                    updateRuleW.update(xt, transpose(h, htBuffer), wt);
+                },
+                () -> updateRuleW.getDistance(xt, htBuffer, wt, normX2),
+                initError, null, verbose);
+
+        transpose(wt, w);
+    }
+
+    /**
+     * Performs the non-negative matrix factorization of data matrix X with given initial matrices W and H.
+     * <p>
+     * Parameters {@code w} and {@code h} contain the result of the factorization.
+     *
+     * @param x data matrix of shape [N<sub>points</sub>, N<sub>vectors</sub>], a collection of vectors in
+     *          N<sub>points</sub>-dimensional space
+     * @param w matrix of shape [N<sub>points</sub>, N<sub>components</sub>], a collection of initial components
+     * @param h matrix of shape [N<sub>components</sub>, N<sub>vectors</sub>], a collection of initial coefficients
+     */
+    public void execute(@Nonnull DataMatrix x, @Nonnull DMatrixRMaj w, @Nonnull DMatrixRMaj h) {
+        execute(x, w, h, false);
+    }
+
+    /**
+     * Performs the non-negative matrix factorization directly on matrix X. Only the small matrix W<sup>T</sup> is kept
+     * in addition to the input matrices, and W-updates use products HX<sup>T</sup> and HH<sup>T</sup> instead of
+     * transposing X and H
+     */
+    private int executeWithoutCopy(@Nonnull DMatrixRMaj x, @Nonnull DMatrixRMaj w, @Nonnull DMatrixRMaj h,
+                                   @Nonnull FactorizationWorkspace workspace, @Nullable Checkpoint checkpoint,
+                                   boolean verbose) {
+
+        DMatrixRMaj wt = workspace.wt;
+        transpose(w, wt);
+
+        final double normX2 = EuclideanDistance.squaredNorm(x);
+        final double initError = measure.get(x, w, h, workspace.getResiduals(x.numCols));
+
+        int numIterations = iterate(() -> {
+                    updateRuleH.updateTransA(x, wt, h);
+                    updateRuleW.updateTransB(x, h, wt);
+                },
+                () -> updateRuleW.getDistanceTransB(x, h, wt, normX2),
+                initError, checkpoint, verbose);
+
+        transpose(wt, w);
+
+        return numIterations;
+    }
+
+    /**
+     * Performs updates until the error is small or the maximum number of iterations is reached
+     *
+     * @param update     update of matrices W and H
+     * @param error      distance between X and WH after the last update, calculated every 10 iterations
+     * @param initError  initial distance between X and WH
+     * @param checkpoint receives the error every 10 iterations and stops the updates by returning false
+     * @param verbose    flag to output verbose information
+     * @return number of performed iterations
+     */
+    private int iterate(Runnable update, DoubleSupplier error, double initError, @Nullable Checkpoint checkpoint,
+                        boolean verbose) {
+
+        double prevError = initError;
+
         int k;
         for (k = 1; k < maxIteration + 1; ++k) {
 
-            updateRuleH.update(x, transpose(wt, wttBuffer), h);
-            updateRuleW.update(xt, transpose(h, htBuffer), wt);
+            update.run();
 
             if (k % 10 == 0) {
-                double error = measure.get(x, transpose(wt, wttBuffer), h);
-                if (Math.abs(prevError - error) / initError < tolerance) {
+                double currentError = error.getAsDouble();
+                if (checkpoint != null && !checkpoint.test(k, currentError)) {
+                    if (verbose) LOG.info("NMF is stopped after " + k + " iterations");
+                    break;
+                }
+                if (Math.abs(prevError - currentError) / initError < tolerance) {
                     if (verbose) LOG.info("NMF is completed after " + k + " iterations");
                     break;
                 }
-                prevError = error;
+                prevError = currentError;
             }
         }
 
         if (verbose && k >= maxIteration)
             LOG.info("NMF does not converge after " + k + " iterations");
 
-        transpose(wt, w);
-//        w.copy(wt.transpose());
+        int numIterations = Math.min(k, maxIteration);
+        this.numIterations.get()[0] = numIterations;
+        return numIterations;
     }
 
     /**
-     * Performs the non-negative matrix factorization with given initial matrices W and H.
-     * <p>
-     * Parameters {@code w} and {@code h} contain the result of the factorization.
-     *
-     * @param data matrix of shape [N<sub>points</sub>, N<sub>vectors</sub>], a collection of vectors in
-     *             N<sub>points</sub>-dimensional space
-     * @param w    matrix of shape [N<sub>points</sub>, N<sub>components</sub>], a collection of initial components
-     * @param h    matrix of shape [N<sub>components</sub>, N<sub>vectors</sub>], a collection of initial coefficients
+     * @return number of iterations of the last factorization performed by the calling thread, or 0 if the thread has
+     * not performed any factorization with this instance
      */
-    public void execute(@Nonnull DMatrixRMaj data, @Nonnull DMatrixRMaj w, @Nonnull DMatrixRMaj h) {
-        execute(data, w, h, false);
+    public int getNumIterations() {
+        return numIterations.get()[0];
+    }
+
+    /**
+     * Receives the error of the factorization every 10 iterations
+     */
+    @FunctionalInterface
+    interface Checkpoint {
+
+        /**
+         * @param iteration index of the iteration
+         * @param error     distance between X and WH
+         * @return false to stop the factorization
+         */
+        boolean test(int iteration, double error);
     }
 }
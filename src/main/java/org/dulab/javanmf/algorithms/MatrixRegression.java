@@ -18,12 +18,16 @@
 
 package org.dulab.javanmf.algorithms;
 
+import org.dulab.javanmf.measures.EuclideanDistance;
 import org.dulab.javanmf.measures.Measure;
 import org.ejml.data.DMatrixRMaj;
+import org.ejml.data.DMatrixSparseCSC;
 
 import org.dulab.javanmf.updaterules.UpdateRule;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.function.DoubleSupplier;
 import java.util.logging.Logger;
 
 import static org.ejml.dense.row.CommonOps_DDRM.*;
@@ -86,40 +90,57 @@ public class MatrixRegression
      * @param w matrix of shape [N<sub>points</sub>, N<sub>components</sub>], a collection of components
      * @param h matrix of shape [N<sub>components</sub>, N<sub>vectors</sub>], a collection of the decomposition
      *          coefficients
-     * @param limit matrix of shape [N<sub>components</sub>, N<sub>vectors</sub>], the upper limit for matrix H
+     * @param limit matrix of shape [N<sub>components</sub>, N<sub>vectors</sub>], the upper limit for matrix H, or null
+     *              if matrix H is not limited
      * @param verbose flag to output verbose information
      * @return matrix H of shape [N<sub>components</sub>, N<sub>vectors</sub>]
      */
-    public DMatrixRMaj solve(@Nonnull DMatrixRMaj x, @Nonnull DMatrixRMaj w, @Nonnull DMatrixRMaj h, @Nonnull DMatrixRMaj limit,
+    public DMatrixRMaj solve(@Nonnull DMatrixRMaj x, @Nonnull DMatrixRMaj w, @Nonnull DMatrixRMaj h, @Nullable DMatrixRMaj limit,
                               boolean verbose)
     {
+        return solve(x, w, h, limit, new double[x.numCols], verbose);
+    }
+
+    /**
+     * Performs non-negative matrix regression with the upper limit constraint, using the buffers of the given
+     * workspace. Only the buffer for one row of residuals is used by the regression, so that repeated calls with the
+     * same workspace do not allocate memory once that buffer is large enough
+     * @param x matrix of shape [N<sub>points</sub>, N<sub>vectors</sub>], a collection of vectors in
+     *          N<sub>points</sub>-dimensional space
+     * @param w matrix of shape [N<sub>points</sub>, N<sub>components</sub>], a collection of components
+     * @param h matrix of shape [N<sub>components</sub>, N<sub>vectors</sub>], a collection of the decomposition
+     *          coefficients
+     * @param limit matrix of shape [N<sub>components</sub>, N<sub>vectors</sub>], the upper limit for matrix H, or null
+     *              if matrix H is not limited
+     * @param workspace instance of {@link FactorizationWorkspace}, which must not be used by other threads at the same
+     *                  time
+     * @param verbose flag to output verbose information
+     * @return matrix H of shape [N<sub>components</sub>, N<sub>vectors</sub>]
+     */
+    public DMatrixRMaj solve(@Nonnull DMatrixRMaj x, @Nonnull DMatrixRMaj w, @Nonnull DMatrixRMaj h,
+                             @Nullable DMatrixRMaj limit, @Nonnull FactorizationWorkspace workspace, boolean verbose)
+    {
+        return solve(x, w, h, limit, workspace.getResiduals(x.numCols), verbose);
+    }
+
+    /**
+     * Performs non-negative matrix regression with the upper limit constraint, storing the residuals of one row of X
+     * in {@code residuals}
+     */
+    private DMatrixRMaj solve(@Nonnull DMatrixRMaj x, @Nonnull DMatrixRMaj w, @Nonnull DMatrixRMaj h,
+                              @Nullable DMatrixRMaj limit, @Nonnull double[] residuals, boolean verbose)
+    {
 //        DoubleMatrix h = Solve.solveLeastSquares(w, x)
 //                .max(1e-12)
 //                .min(limit);
 
-        final double initError = Math.sqrt(2 * measure.get(x, w, h));
-        double prevError = initError;
+        // Squared norm of X, used by update rules that evaluate the distance without forming WH
+        final double normX2 = EuclideanDistance.squaredNorm(x);
 
-        int k;
-        for (k = 1; k < maxIteration + 1; ++k)
-        {
-            updateRule.update(x, w, h);
+        final double initError = Math.sqrt(2 * measure.get(x, w, h, residuals));
 
-            MatrixUtils.minimumEquals(h, limit);
-//            h.mini(limit);
-
-            if (k % 10 == 0) {
-                double error = Math.sqrt(2 * measure.get(x, w, h));
-                if ((prevError - error) / initError < tolerance) {
-                    if (verbose) LOG.info("NLS is completed after " + k + " iterations");
-                    break;
-                }
-                prevError = error;
-            }
-        }
-
-        if (verbose && k >= maxIteration)
-            LOG.info("NLS does not converge after " + k + " iterations");
+        iterate(() -> updateRule.update(x, w, h), () -> Math.sqrt(2 * updateRule.getDistance(x, w, h, normX2)),
+                h, limit, initError, verbose);
 
         return h;
     }
@@ -149,10 +170,8 @@ public class MatrixRegression
      */
     public DMatrixRMaj solve(@Nonnull DMatrixRMaj x, @Nonnull DMatrixRMaj w, @Nonnull DMatrixRMaj h,  boolean verbose)
     {
-        DMatrixRMaj limit = new DMatrixRMaj(w.numCols, x.numCols);
-        fill(limit, Double.MAX_VALUE);
 //        DMatrixRMaj limit = DoubleMatrix.ones(w.numCols, x.numCols).mul(Double.MAX_VALUE);
-        return solve(x, w, h, limit, verbose);
+        return solve(x, w, h, null, verbose);
     }
 
     /**
@@ -166,4 +185,96 @@ public class MatrixRegression
     public DMatrixRMaj solve(@Nonnull DMatrixRMaj x, @Nonnull DMatrixRMaj w, @Nonnull DMatrixRMaj h) {
         return solve(x, w, h, false);
     }
+
+    /**
+     * Performs non-negative matrix regression of sparse matrix X with the upper limit constraint. Products with matrix
+     * X are calculated over its non-zero elements only
+     * @param x sparse matrix of shape [N<sub>points</sub>, N<sub>vectors</sub>], a collection of vectors in
+     *          N<sub>points</sub>-dimensional space
+     * @param w matrix of shape [N<sub>points</sub>, N<sub>components</sub>], a collection of components
+     * @param h matrix of shape [N<sub>components</sub>, N<sub>vectors</sub>], a collection of the decomposition
+     *          coefficients
+     * @param limit matrix of shape [N<sub>components</sub>, N<sub>vectors</sub>], the upper limit for matrix H, or null
+     *              if matrix H is not limited
+     * @param verbose flag to output verbose information
+     * @return matrix H of shape [N<sub>components</sub>, N<sub>vectors</sub>]
+     */
+    public DMatrixRMaj solve(@Nonnull DMatrixSparseCSC x, @Nonnull DMatrixRMaj w, @Nonnull DMatrixRMaj h,
+                             @Nullable DMatrixRMaj limit, boolean verbose)
+    {
+        final double normX2 = EuclideanDistance.squaredNorm(x);
+
+        final double initError = Math.sqrt(2 * measure.get(x, w, h));
+
+        iterate(() -> updateRule.update(x, w, h), () -> Math.sqrt(2 * updateRule.getDistance(x, w, h, normX2)),
+                h, limit, initError, verbose);
+
+        return h;
+    }
+
+    /**
+     * Performs non-negative matrix regression of sparse matrix X
+     * @param x sparse matrix of shape [N<sub>points</sub>, N<sub>vectors</sub>], a collection of vectors in
+     *          N<sub>points</sub>-dimensional space
+     * @param w matrix of shape [N<sub>points</sub>, N<sub>components</sub>], a collection of components
+     * @param h matrix of shape [N<sub>components</sub>, N<sub>vectors</sub>], a collection of the decomposition
+     *          coefficients
+     * @param verbose flag to output verbose information
+     * @return matrix H of shape [N<sub>components</sub>, N<sub>vectors</sub>]
+     */
+    public DMatrixRMaj solve(@Nonnull DMatrixSparseCSC x, @Nonnull DMatrixRMaj w, @Nonnull DMatrixRMaj h,
+                             boolean verbose)
+    {
+        return solve(x, w, h, null, verbose);
+    }
+
+    /**
+     * Performs non-negative matrix regression of sparse matrix X
+     * @param x sparse matrix of shape [N<sub>points</sub>, N<sub>vectors</sub>], a collection of vectors in
+     *          N<sub>points</sub>-dimensional space
+     * @param w matrix of shape [N<sub>points</sub>, N<sub>components</sub>], a collection of components
+     * @param h matrix of shape [N<sub>components</sub>, N<sub>vectors</sub>], a collection of the decomposition
+     *          coefficients
+     * @return matrix H of shape [N<sub>components</sub>, N<sub>vectors</sub>]
+     */
+    public DMatrixRMaj solve(@Nonnull DMatrixSparseCSC x, @Nonnull DMatrixRMaj w, @Nonnull DMatrixRMaj h) {
+        return solve(x, w, h, false);
+    }
+
+    /**
+     * Performs updates of matrix H until the error is small or the maximum number of iterations is reached
+     * @param update update of matrix H
+     * @param error distance between X and WH after the last update, calculated every 10 iterations
+     * @param h matrix H
+     * @param limit the upper limit for matrix H, or null
+     * @param initError initial distance between X and WH
+     * @param verbose flag to output verbose information
+     */
+    private void iterate(Runnable update, DoubleSupplier error, DMatrixRMaj h, @Nullable DMatrixRMaj limit, double initError,
+                         boolean verbose)
+    {
+        double prevError = initError;
+
+        int k;
+        for (k = 1; k < maxIteration + 1; ++k)
+        {
+            update.run();
+
+            if (limit != null)
+                MatrixUtils.minimumEquals(h, limit);
+//            h.mini(limit);
+
+            if (k % 10 == 0) {
+                double currentError = error.getAsDouble();
+                if ((prevError - currentError) / initError < tolerance) {
+                    if (verbose) LOG.info("NLS is completed after " + k + " iterations");
+                    break;
+                }
+                prevError = currentError;
+            }
+        }
+
+        if (verbose && k >= maxIteration)
+            LOG.info("NLS does not converge after " + k + " iterations");
+    }
 }
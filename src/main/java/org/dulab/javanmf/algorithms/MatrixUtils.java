@@ -19,6 +19,7 @@
 package org.dulab.javanmf.algorithms;
 
 import org.ejml.data.DMatrixRMaj;
+import org.ejml.dense.row.CommonOps_DDRM;
 
 import java.util.function.Function;
 
@@ -50,9 +51,66 @@ public class MatrixUtils {
 //        return buffer;
 //    }
 
+    /**
+     * Calculates columns {@code colStart}, ..., {@code colEnd - 1} of matrix C = A<sup>T</sup> x B. Other columns of C
+     * are not modified, so that different blocks of columns can be calculated in parallel.
+     *
+     * @param a        matrix A
+     * @param b        matrix B
+     * @param c        matrix C
+     * @param colStart index of the first column
+     * @param colEnd   index after the last column
+     */
+    public static void multTransA(DMatrixRMaj a, DMatrixRMaj b, DMatrixRMaj c, int colStart, int colEnd) {
+
+        for (int i = 0; i < c.numRows; ++i)
+            for (int j = colStart; j < colEnd; ++j)
+                c.data[i * c.numCols + j] = 0.0;
+
+        for (int k = 0; k < a.numRows; ++k) {
+            int aOffset = k * a.numCols;
+            int bOffset = k * b.numCols;
+            for (int i = 0; i < a.numCols; ++i) {
+                double aki = a.data[aOffset + i];
+                if (aki == 0.0)
+                    continue;
+                int cOffset = i * c.numCols;
+                for (int j = colStart; j < colEnd; ++j)
+                    c.data[cOffset + j] += aki * b.data[bOffset + j];
+            }
+        }
+    }
+
+    /**
+     * Returns the upper bound a of uniformly distributed random matrices W and H, for which the elements of WH have
+     * the same expected value as the mean of the elements of X. Since each element of W and H has the mean a / 2, the
+     * expected value of (WH)<sub>ij</sub> equals N<sub>components</sub> a<sup>2</sup> / 4, and therefore
+     * a = 2 (mean(X) / N<sub>components</sub>)<sup>1/2</sup>
+     *
+     * @param x             matrix of shape [N<sub>points</sub>, N<sub>vectors</sub>]
+     * @param numComponents number of components
+     * @return upper bound of the uniform distribution of the elements of W and H
+     */
+    static double uniformScale(DMatrixRMaj x, int numComponents) {
+        return 2.0 * Math.sqrt(CommonOps_DDRM.elementSum(x) / x.getNumElements() / numComponents);
+    }
+
+    /**
+     * Replaces each element of matrix A by the minimum of the elements of matrices A and B
+     *
+     * @param a matrix A, which is updated in place
+     * @param b matrix B of the same shape as A
+     */
     public static void minimumEquals(DMatrixRMaj a, DMatrixRMaj b) {
-        for (int i = 0; i < a.numRows; ++i)
-            for (int j = 0; j < a.numCols; ++j)
-                a.unsafe_set(i, j, Math.min(a.unsafe_get(i, j), b.get(i, j)));
+
+        if (a.numRows != b.numRows || a.numCols != b.numCols)
+            throw new IllegalStateException("Wrong shape of the input matrices");
+
+        final double[] aData = a.data;
+        final double[] bData = b.data;
+
+        final int length = a.getNumElements();
+        for (int i = 0; i < length; ++i)
+            aData[i] = Math.min(aData[i], bData[i]);
     }
 }
@@ -0,0 +1,324 @@
+/*
+ * Copyright (C) 2018 Du-Lab Team <dulab.binf@gmail.com>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.dulab.javanmf.algorithms;
+
+import org.dulab.javanmf.measures.EuclideanDistance;
+import org.ejml.data.DMatrixRMaj;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.logging.Logger;
+
+/**
+ * This class performs non-negative matrix factorization from several initial matrices W and H in parallel and returns
+ * the factorization with the smallest error.
+ * <p>
+ * Every 10 iterations, each start compares its error with the smallest error of all starts at the same iteration. A
+ * start is abandoned if its error is larger than the smallest error times {@code abandonRatio}, so that most of the
+ * computational time is spent on the promising starts. Because the starts run concurrently, the set of abandoned
+ * starts may depend on the scheduling of the threads.
+ * <p>
+ * Each thread reuses one {@link FactorizationWorkspace} for all starts of an {@code execute} call. The workspaces are
+ * released when the call returns, so that the threads of the pool do not keep copies of matrix X.
+ * <p>
+ * <strong>Example</strong> for given matrix X
+ * <pre> {@code
+ *     MatrixFactorization factorization = new MatrixFactorization(
+ *         new MUpdateRule(0.0, 0.0), new MUpdateRule(0.0, 0.0), 1e-4, 1000);
+ *
+ *     MultiStartFactorization.Result result = new MultiStartFactorization(factorization)
+ *         .execute(matrixX, 5, 16, MultiStartFactorization.Initialization.RANDOM, 0L);
+ * } </pre>
+ *
+ * @author Du-Lab Team dulab.binf@gmail.com
+ */
+public class MultiStartFactorization
+{
+    /* Logger */
+    private static final Logger LOG = Logger.getLogger(MultiStartFactorization.class.getName());
+
+    /* Starts are never abandoned before this iteration, while the errors change quickly */
+    private static final int MIN_ITERATIONS = 30;
+
+    /* Relative magnitude of the noise added to the NNDSVD initialization */
+    private static final double PERTURBATION = 0.1;
+
+    /**
+     * Initialization of each start
+     */
+    public enum Initialization {
+
+        /** Uniformly distributed random matrices W and H */
+        RANDOM,
+
+        /** NNDSVD initialization with added uniformly distributed noise */
+        PERTURBED_NNDSVD
+    }
+
+    private final MatrixFactorization factorization;
+    private final ForkJoinPool pool;
+    private final double abandonRatio;
+
+    /**
+     * Creates an instance of {@link MultiStartFactorization}
+     *
+     * @param factorization instance of {@link MatrixFactorization} applied to each start
+     * @param pool          instance of {@link ForkJoinPool} for running the starts in parallel
+     * @param abandonRatio  a start is abandoned when its error exceeds the smallest error at the same iteration times
+     *                      this ratio. Use {@link Double#POSITIVE_INFINITY} to run all starts to the end
+     * @throws IllegalArgumentException if the ratio is less than 1
+     */
+    public MultiStartFactorization(@Nonnull MatrixFactorization factorization, @Nonnull ForkJoinPool pool,
+                                   double abandonRatio)
+            throws IllegalArgumentException
+    {
+        if (!(abandonRatio >= 1.0))
+            throw new IllegalArgumentException("Abandon ratio must be at least 1");
+
+        this.factorization = factorization;
+        this.pool = pool;
+        this.abandonRatio = abandonRatio;
+    }
+
+    /**
+     * Creates an instance of {@link MultiStartFactorization} that uses the common {@link ForkJoinPool} and abandons
+     * starts with 1.5 times larger error than the leader
+     *
+     * @param factorization instance of {@link MatrixFactorization} applied to each start
+     */
+    public MultiStartFactorization(@Nonnull MatrixFactorization factorization) {
+        this(factorization, ForkJoinPool.commonPool(), 1.5);
+    }
+
+    /**
+     * Performs the non-negative matrix factorization from {@code numStarts} initial matrices
+     *
+     * @param x              matrix of shape [N<sub>points</sub>, N<sub>vectors</sub>]
+     * @param numComponents  number of components
+     * @param numStarts      number of starts
+     * @param initialization initialization of each start
+     * @param seed           seed of the random number generator. Start i uses seed {@code seed + i}
+     * @param verbose        flag to output the number of abandoned starts
+     * @return instance of {@link Result} with the best matrices W and H
+     * @throws IllegalArgumentException if the number of starts is not positive
+     */
+    public Result execute(@Nonnull DMatrixRMaj x, int numComponents, int numStarts,
+                          @Nonnull Initialization initialization, long seed, boolean verbose)
+            throws IllegalArgumentException
+    {
+        if (numStarts < 1)
+            throw new IllegalArgumentException("Number of starts must be positive");
+
+        final SingularValueDecomposition svd = initialization == Initialization.PERTURBED_NNDSVD
+                ? new SingularValueDecomposition(x, numComponents) : null;
+
+        // Upper bound of random matrices W and H, so that the elements of WH have the same mean as X
+        final double scale = MatrixUtils.uniformScale(x, numComponents);
+
+        // Smallest error of all starts at each checked iteration
+        final ConcurrentMap<Integer, Double> leaderErrors = new ConcurrentHashMap<>();
+
+        // Workspace of each thread, released when the factorization is finished
+        final ConcurrentMap<Thread, FactorizationWorkspace> workspaces = new ConcurrentHashMap<>();
+
+        final Start[] starts = new Start[numStarts];
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(numStarts);
+        for (int s = 0; s < numStarts; ++s) {
+            final int index = s;
+            tasks.add(pool.submit(() -> {
+                FactorizationWorkspace workspace =
+                        workspaces.computeIfAbsent(Thread.currentThread(), thread -> new FactorizationWorkspace());
+                starts[index] = run(x, numComponents, svd, scale, new Random(seed + index), leaderErrors, workspace);
+            }));
+        }
+
+        for (ForkJoinTask<?> task : tasks)
+            task.join();
+
+        int best = -1;
+        int numAbandoned = 0;
+        int[] numIterations = new int[numStarts];
+        boolean[] abandoned = new boolean[numStarts];
+        for (int s = 0; s < numStarts; ++s) {
+            numIterations[s] = starts[s].numIterations;
+            abandoned[s] = starts[s].abandoned;
+            if (starts[s].abandoned)
+                ++numAbandoned;
+            else if (best < 0 || starts[s].error < starts[best].error)
+                best = s;
+        }
+
+        if (verbose)
+            LOG.info(numAbandoned + " of " + numStarts + " starts are abandoned");
+
+        Start start = starts[best];
+        return new Result(start.w, start.h, start.error, best, numIterations, abandoned, numAbandoned);
+    }
+
+    /**
+     * Performs the non-negative matrix factorization from {@code numStarts} initial matrices
+     *
+     * @param x              matrix of shape [N<sub>points</sub>, N<sub>vectors</sub>]
+     * @param numComponents  number of components
+     * @param numStarts      number of starts
+     * @param initialization initialization of each start
+     * @param seed           seed of the random number generator
+     * @return instance of {@link Result} with the best matrices W and H
+     */
+    public Result execute(@Nonnull DMatrixRMaj x, int numComponents, int numStarts,
+                          @Nonnull Initialization initialization, long seed) {
+        return execute(x, numComponents, numStarts, initialization, seed, false);
+    }
+
+    private Start run(@Nonnull DMatrixRMaj x, int numComponents, SingularValueDecomposition svd, double scale,
+                      @Nonnull Random random, @Nonnull ConcurrentMap<Integer, Double> leaderErrors,
+                      @Nonnull FactorizationWorkspace workspace)
+    {
+        DMatrixRMaj w = new DMatrixRMaj(x.numRows, numComponents);
+        DMatrixRMaj h = new DMatrixRMaj(numComponents, x.numCols);
+
+        double noise = scale;
+        if (svd != null) {
+            svd.decompose(w, h);
+            noise *= PERTURBATION;
+        }
+
+        for (int i = 0; i < w.getNumElements(); ++i)
+            w.data[i] += noise * random.nextDouble();
+        for (int i = 0; i < h.getNumElements(); ++i)
+            h.data[i] += noise * random.nextDouble();
+
+        final Start start = new Start(w, h);
+        start.numIterations = factorization.execute(x, w, h, workspace, (iteration, error) -> {
+            double leaderError = leaderErrors.merge(iteration, error, Math::min);
+            start.abandoned = iteration >= MIN_ITERATIONS && error > abandonRatio * leaderError;
+            return !start.abandoned;
+        }, false);
+
+        start.error = new EuclideanDistance().get(x, w, h);
+        return start;
+    }
+
+    /**
+     * State of one start
+     */
+    private static class Start {
+
+        final DMatrixRMaj w;
+        final DMatrixRMaj h;
+
+        int numIterations;
+        double error;
+        boolean abandoned = false;
+
+        Start(DMatrixRMaj w, DMatrixRMaj h) {
+            this.w = w;
+            this.h = h;
+        }
+    }
+
+    /**
+     * Best factorization of all starts
+     */
+    public static class Result {
+
+        private final DMatrixRMaj w;
+        private final DMatrixRMaj h;
+        private final double error;
+        private final int bestStart;
+        private final int[] numIterations;
+        private final boolean[] abandoned;
+        private final int numAbandoned;
+
+        Result(DMatrixRMaj w, DMatrixRMaj h, double error, int bestStart, int[] numIterations, boolean[] abandoned,
+               int numAbandoned) {
+            this.w = w;
+            this.h = h;
+            this.error = error;
+            this.bestStart = bestStart;
+            this.numIterations = numIterations;
+            this.abandoned = abandoned;
+            this.numAbandoned = numAbandoned;
+        }
+
+        /**
+         * @return matrix W of shape [N<sub>points</sub>, N<sub>components</sub>]
+         */
+        public DMatrixRMaj getW() {
+            return w;
+        }
+
+        /**
+         * @return matrix H of shape [N<sub>components</sub>, N<sub>vectors</sub>]
+         */
+        public DMatrixRMaj getH() {
+            return h;
+        }
+
+        /**
+         * @return reconstruction error || X &minus; WH ||<sup>2</sup>
+         */
+        public double getError() {
+            return error;
+        }
+
+        /**
+         * @return index of the best start
+         */
+        public int getBestStart() {
+            return bestStart;
+        }
+
+        /**
+         * @return number of iterations of the best start
+         */
+        public int getNumIterations() {
+            return numIterations[bestStart];
+        }
+
+        /**
+         * @param start index of the start
+         * @return number of iterations of the start, which is the iteration of abandonment for an abandoned start
+         */
+        public int getNumIterations(int start) {
+            return numIterations[start];
+        }
+
+        /**
+         * @param start index of the start
+         * @return true if the start was abandoned
+         */
+        public boolean isAbandoned(int start) {
+            return abandoned[start];
+        }
+
+        /**
+         * @return number of abandoned starts
+         */
+        public int getNumAbandoned() {
+            return numAbandoned;
+        }
+    }
+}
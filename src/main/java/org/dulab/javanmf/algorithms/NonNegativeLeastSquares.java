@@ -1,157 +1,418 @@
 package org.dulab.javanmf.algorithms;
 
+import org.dulab.javanmf.data.SparseMatrixUtils;
 import org.ejml.data.DMatrixRMaj;
+import org.ejml.data.DMatrixSparseCSC;
 
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.logging.Logger;
 
 import static org.ejml.dense.row.CommonOps_DDRM.*;
 
 /**
  * This class solves the non-negative least squares problem using the active set method.
+ * <p>
+ * Columns of matrix D are independent problems that share only matrix ZtZ. If a {@link ForkJoinPool} is provided, the
+ * columns are split into blocks, and the blocks are solved in parallel.
+ * <p>
+ * If warm starts are enabled, each call starts from the passive sets found by the previous call with the same
+ * workspace (or from the positive values of the initial matrix D, if there was no such call) instead of empty passive
+ * sets. When no workspace is provided, each thread uses its own default workspace, so one instance can be shared by
+ * several threads. This is useful when similar problems are solved repeatedly, e.g. in
+ * {@link AlternatingLeastSquaresMatrixFactorization}.
+ * <p>
+ * A default workspace grows to the largest problem solved by its thread and is kept until the thread terminates or
+ * the instance becomes unreachable. Threads of a long-lived pool therefore retain their workspaces between calls; pass
+ * an explicit {@link NonNegativeLeastSquaresWorkspace} to control this memory.
  *
  * See R. Bro and S.D. Jong "A FAST NON-NEGATIVITY-CONSTRAINED LEAST SQUARES ALGORITHM"
  */
-public class NonNegativeLeastSquares {
+public class NonNegativeLeastSquares implements NonNegativeLeastSquaresSolver {
 
     private static final Logger LOG = Logger.getLogger(NonNegativeLeastSquares.class.getName());
 
     private static final double TOLERANCE = 1e-6;
     private static final int MAX_ITERATIONS = 1000;
 
+    /* Pool for solving blocks of columns in parallel, or null to solve all columns in the calling thread */
+    private final ForkJoinPool pool;
+
+    /* If true, start from the passive sets of the previous call */
+    private final boolean warmStart;
+
+    /* Workspace of each thread used when no workspace is provided by the caller */
+    private final ThreadLocal<NonNegativeLeastSquaresWorkspace> defaultWorkspace =
+            ThreadLocal.withInitial(NonNegativeLeastSquaresWorkspace::new);
+
+    /**
+     * Creates an instance of {@link NonNegativeLeastSquares} that solves all columns in the calling thread
+     */
+    public NonNegativeLeastSquares() {
+        this(null);
+    }
+
+    /**
+     * Creates an instance of {@link NonNegativeLeastSquares}
+     * @param pool instance of {@link ForkJoinPool} for solving blocks of columns in parallel. If null, all columns are
+     *             solved in the calling thread
+     */
+    public NonNegativeLeastSquares(@Nullable ForkJoinPool pool) {
+        this(pool, false);
+    }
+
+    /**
+     * Creates an instance of {@link NonNegativeLeastSquares}
+     * @param pool      instance of {@link ForkJoinPool} for solving blocks of columns in parallel. If null, all columns
+     *                  are solved in the calling thread
+     * @param warmStart if true, each call starts from the passive sets of the previous call and the initial value of
+     *                  matrix D
+     */
+    public NonNegativeLeastSquares(@Nullable ForkJoinPool pool, boolean warmStart) {
+        this.pool = pool;
+        this.warmStart = warmStart;
+    }
+
     /**
      * Finds matrix D such that D = argmin || X - Z x D ||^2
      * @param matrixX matrix X
      * @param matrixZ matrix Z
-     * @param matrixD initial value of matrix D
+     * @param matrixD output matrix D; used as the initial value only if warm starts are enabled
      */
+    @Override
     public void solve(DMatrixRMaj matrixX, DMatrixRMaj matrixZ, DMatrixRMaj matrixD) {
+        solve(matrixX, matrixZ, matrixD, defaultWorkspace.get());
+    }
+
+    /**
+     * Finds matrix D such that D = argmin || X - Z x D ||^2 using buffers of the given workspace
+     * @param matrixX   matrix X
+     * @param matrixZ   matrix Z
+     * @param matrixD   output matrix D; used as the initial value only if warm starts are enabled
+     * @param workspace instance of {@link NonNegativeLeastSquaresWorkspace}
+     */
+    public void solve(DMatrixRMaj matrixX, DMatrixRMaj matrixZ, DMatrixRMaj matrixD,
+                      @Nonnull NonNegativeLeastSquaresWorkspace workspace) {
 
         if (matrixX.numCols != matrixD.numCols || matrixZ.numCols != matrixD.numRows || matrixX.numRows != matrixZ.numRows)
             throw new IllegalStateException("Wrong shape of the input matrices");
 
-        // Initialize variables
-        List<Set<Integer>> passiveSets = new ArrayList<>(matrixD.numCols);
-        List<Set<Integer>> activeSets = new ArrayList<>(matrixD.numCols);
-        for (int i = 0; i < matrixD.numCols; ++i) {
-            passiveSets.add(new HashSet<>());
-            Set<Integer> activeSet = new HashSet<>();
-            for (int j = 0; j < matrixZ.numCols; ++j)
-                activeSet.add(j);
-            activeSets.add(activeSet);
-        }
+        final int numBlocks = getNumBlocks(matrixD.numCols);
 
-        DMatrixRMaj matrixZtX = new DMatrixRMaj(matrixZ.numCols, matrixX.numCols);
-        multTransA(matrixZ, matrixX, matrixZtX);
+        workspace.reshape(matrixD.numRows, matrixD.numCols, numBlocks);
 
-        DMatrixRMaj matrixZtZ = new DMatrixRMaj(matrixZ.numCols, matrixZ.numCols);
-        multInner(matrixZ, matrixZtZ);
+        multInner(matrixZ, workspace.matrixZtZ);
 
-        DMatrixRMaj matrixW = calculateMatrixW(matrixZtX, matrixZtZ, matrixD);
-        // Main loop
-        int iteration = 0;
-        int[] maximumIndices = findActiveMaximumIndices(matrixW, activeSets, null);
-        while(!checkAllEmpty(activeSets) && findMaximum(matrixW, maximumIndices) > TOLERANCE) {
+        if (numBlocks == 1)
+            multTransA(matrixZ, matrixX, workspace.matrixZtX);
+        else
+            runBlocks(matrixD.numCols, numBlocks, (b, start, end) -> {
+                MatrixUtils.multTransA(matrixZ, matrixX, workspace.matrixZtX, start, end);
+                return true;
+            });
 
-            if (++iteration > MAX_ITERATIONS) {
-                LOG.warning(String.format("NNLS is stopped after %d iterations.", MAX_ITERATIONS));
-                break;
-            }
+        solveGram(workspace.matrixZtZ, workspace.matrixZtX, matrixD, workspace, numBlocks);
+    }
 
-            for (int column = 0; column < matrixD.numCols; ++column) {
+    /**
+     * Finds matrix D such that D = argmin || X - Z x D ||^2 for sparse matrix X using buffers of the default workspace
+     * @param matrixX sparse matrix X
+     * @param matrixZ matrix Z
+     * @param matrixD output matrix D; used as the initial value only if warm starts are enabled
+     */
+    @Override
+    public void solve(DMatrixSparseCSC matrixX, DMatrixRMaj matrixZ, DMatrixRMaj matrixD) {
 
-                Set<Integer> activeSet = activeSets.get(column);
-                Set<Integer> passiveSet = passiveSets.get(column);
-                int m = maximumIndices[column];
+        if (matrixX.numCols != matrixD.numCols || matrixZ.numCols != matrixD.numRows || matrixX.numRows != matrixZ.numRows)
+            throw new IllegalStateException("Wrong shape of the input matrices");
 
-                if (activeSet.isEmpty() || matrixW.unsafe_get(m, column) <= TOLERANCE)
-                    continue;
+        final int numBlocks = getNumBlocks(matrixD.numCols);
 
-                passiveSet.add(m);
-                activeSet.remove(m);
-                DMatrixRMaj vectorS = calculateVectorS(matrixZtZ, matrixZtX, column, passiveSet);
+        NonNegativeLeastSquaresWorkspace workspace = defaultWorkspace.get();
+        workspace.reshape(matrixD.numRows, matrixD.numCols, numBlocks);
 
-                // Inner loop
-                while (findMinimum(vectorS, passiveSet) <= 0) {
-                    updateMatrixD(matrixD, column, vectorS, passiveSet);
-                    updateSets(matrixD, column, passiveSet, activeSet);
-                    vectorS = calculateVectorS(matrixZtZ, matrixZtX, column, passiveSet);
-                }
+        multInner(matrixZ, workspace.matrixZtZ);
+        SparseMatrixUtils.multTransA(matrixZ, matrixX, workspace.matrixZtX);
 
-                for (int i = 0; i < matrixD.numRows; ++i)
-                    matrixD.unsafe_set(i, column, vectorS.unsafe_get(i, 0));
-            }
+        solveGram(workspace.matrixZtZ, workspace.matrixZtX, matrixD, workspace, numBlocks);
+    }
 
-            matrixW = calculateMatrixW(matrixZtX, matrixZtZ, matrixD);
-            maximumIndices = findActiveMaximumIndices(matrixW, activeSets, maximumIndices);
+    /**
+     * Finds matrix D such that D = argmin || X - Z x D ||^2 using precomputed matrices ZtZ and ZtX
+     * @param matrixZtZ matrix ZtZ
+     * @param matrixZtX matrix ZtX
+     * @param matrixD   output matrix D; used as the initial value only if warm starts are enabled
+     */
+    @Override
+    public void solveGram(DMatrixRMaj matrixZtZ, DMatrixRMaj matrixZtX, DMatrixRMaj matrixD) {
+        solveGram(matrixZtZ, matrixZtX, matrixD, defaultWorkspace.get());
+    }
+
+    /**
+     * Finds matrix D such that D = argmin || X - Z x D ||^2 using precomputed matrices ZtZ and ZtX and buffers of the
+     * given workspace
+     * @param matrixZtZ matrix ZtZ
+     * @param matrixZtX matrix ZtX
+     * @param matrixD   output matrix D; used as the initial value only if warm starts are enabled
+     * @param workspace instance of {@link NonNegativeLeastSquaresWorkspace}
+     */
+    public void solveGram(DMatrixRMaj matrixZtZ, DMatrixRMaj matrixZtX, DMatrixRMaj matrixD,
+                          @Nonnull NonNegativeLeastSquaresWorkspace workspace) {
+
+        if (matrixZtZ.numRows != matrixD.numRows || matrixZtZ.numCols != matrixD.numRows
+                || matrixZtX.numRows != matrixD.numRows || matrixZtX.numCols != matrixD.numCols)
+            throw new IllegalStateException("Wrong shape of the input matrices");
+
+        final int numBlocks = getNumBlocks(matrixD.numCols);
+
+        workspace.reshape(matrixD.numRows, matrixD.numCols, numBlocks);
+
+        solveGram(matrixZtZ, matrixZtX, matrixD, workspace, numBlocks);
+    }
+
+    private void solveGram(DMatrixRMaj matrixZtZ, DMatrixRMaj matrixZtX, DMatrixRMaj matrixD,
+                           NonNegativeLeastSquaresWorkspace workspace, int numBlocks) {
+
+        boolean converged = runBlocks(matrixD.numCols, numBlocks, (b, start, end) ->
+                solveColumns(matrixZtZ, matrixZtX, workspace, workspace.columnBuffers[b], matrixD, start, end));
+
+        workspace.hasPassiveSets = true;
+
+        if (!converged)
+            LOG.warning(String.format("NNLS is stopped after %d iterations.", MAX_ITERATIONS));
+    }
+
+    /**
+     * Calculates the number of blocks of columns solved in parallel
+     * @param numCols number of columns of matrix D
+     * @return number of blocks
+     */
+    private int getNumBlocks(int numCols) {
+        return pool != null ? Math.max(1, Math.min(pool.getParallelism(), numCols)) : 1;
+    }
+
+    /**
+     * Runs a task for each block of columns. If there are several blocks, the tasks are executed in the pool
+     * @param numCols   number of columns
+     * @param numBlocks number of blocks
+     * @param task      task to run
+     * @return true if all tasks return true
+     */
+    private boolean runBlocks(int numCols, int numBlocks, BlockTask task) {
+
+        if (numBlocks == 1)
+            return task.run(0, 0, numCols);
+
+        List<ForkJoinTask<Boolean>> tasks = new ArrayList<>(numBlocks);
+        for (int b = 0; b < numBlocks; ++b) {
+            final int block = b;
+            final int start = b * numCols / numBlocks;
+            final int end = (b + 1) * numCols / numBlocks;
+            tasks.add(pool.submit(() -> task.run(block, start, end)));
         }
 
+        boolean result = true;
+        for (ForkJoinTask<Boolean> t : tasks)
+            result &= t.join();
+        return result;
+    }
+
+    @FunctionalInterface
+    private interface BlockTask {
+        boolean run(int block, int start, int end);
     }
 
     /**
-     * Calculates W = ZtX - ZtZ x D
+     * Runs the active set method for a block of columns of matrix D
      *
+     * @param matrixZtZ matrix ZtZ
      * @param matrixZtX matrix ZtX
+     * @param workspace workspace containing passive sets of all columns
+     * @param buffers   buffers used by the block of columns
+     * @param matrixD   matrix D
+     * @param start     index of the first column of the block
+     * @param end       index after the last column of the block
+     * @return false if the maximum number of iterations is reached for at least one column
+     */
+    private boolean solveColumns(DMatrixRMaj matrixZtZ, DMatrixRMaj matrixZtX,
+                                 NonNegativeLeastSquaresWorkspace workspace,
+                                 NonNegativeLeastSquaresWorkspace.ColumnBuffers buffers, DMatrixRMaj matrixD,
+                                 int start, int end) {
+
+        final int numRows = matrixD.numRows;
+        final boolean[] passiveSet = buffers.passiveSet;
+
+        boolean converged = true;
+        for (int column = start; column < end; ++column) {
+
+            if (warmStart)
+                initializeColumn(matrixZtZ, workspace, buffers, matrixD, column);
+            else
+                resetColumn(buffers, matrixD, column);
+
+            converged &= solveColumn(matrixZtZ, matrixZtX, buffers, matrixD, column);
+
+            System.arraycopy(passiveSet, 0, workspace.passiveSets, column * numRows, numRows);
+        }
+        return converged;
+    }
+
+    /**
+     * Starts the active set method from empty passive set and zero column of matrix D
+     *
+     * @param buffers buffers for the passive set and the Cholesky decomposition
+     * @param matrixD matrix D
+     * @param column  index of a column of matrix D
+     */
+    private void resetColumn(NonNegativeLeastSquaresWorkspace.ColumnBuffers buffers, DMatrixRMaj matrixD, int column) {
+        Arrays.fill(buffers.passiveSet, 0, matrixD.numRows, false);
+        buffers.cholesky.reset(matrixD.numRows);
+        for (int i = 0; i < matrixD.numRows; ++i)
+            matrixD.unsafe_set(i, column, 0.0);
+    }
+
+    /**
+     * Starts the active set method from the passive set of the previous call (or from the positive values of matrix D
+     * if there was no previous call). Indices with non-positive values of D are removed from the passive set, so that
+     * the initial column of D is feasible.
+     *
      * @param matrixZtZ matrix ZtZ
+     * @param workspace workspace containing passive sets of the previous call
+     * @param buffers   buffers for the passive set and the Cholesky decomposition
      * @param matrixD   matrix D
-     * @return matrix W
+     * @param column    index of a column of matrix D
      */
-    private DMatrixRMaj calculateMatrixW(DMatrixRMaj matrixZtX, DMatrixRMaj matrixZtZ, DMatrixRMaj matrixD) {
-        DMatrixRMaj matrixW = matrixZtX.copy();
-        multAdd(-1.0, matrixZtZ, matrixD, matrixW);
-        return matrixW;
+    private void initializeColumn(DMatrixRMaj matrixZtZ, NonNegativeLeastSquaresWorkspace workspace,
+                                  NonNegativeLeastSquaresWorkspace.ColumnBuffers buffers, DMatrixRMaj matrixD,
+                                  int column) {
+
+        final int numRows = matrixD.numRows;
+        final boolean[] passiveSet = buffers.passiveSet;
+        final UpdatableCholeskyDecomposition cholesky = buffers.cholesky;
+
+        cholesky.reset(numRows);
+        for (int i = 0; i < numRows; ++i) {
+            double d = matrixD.unsafe_get(i, column);
+            boolean passive = d > TOLERANCE && (!workspace.hasPassiveSets || workspace.passiveSets[column * numRows + i]);
+
+            passiveSet[i] = passive && cholesky.add(matrixZtZ, i);
+            if (!passiveSet[i])
+                matrixD.unsafe_set(i, column, 0.0);
+        }
     }
 
     /**
-     * Finds indices of the maximums in each column of matrix W among active rows
+     * Runs the active set method for one column of matrix D
      *
-     * @param matrixW    matrix W
-     * @param activeSets list of active sets
-     * @param buffer     buffer for calculated indices
-     * @return indices
+     * @param matrixZtZ matrix ZtZ
+     * @param matrixZtX matrix ZtX
+     * @param buffers   buffers for the initial passive set, vector S, and the Cholesky decomposition of (ZtZ)P
+     * @param matrixD   matrix D with the initial column, which is zero outside of the passive set
+     * @param column    index of a column of matrix D
+     * @return false if the maximum number of iterations is reached
      */
-    private int[] findActiveMaximumIndices(DMatrixRMaj matrixW, List<Set<Integer>> activeSets, int[] buffer) {
-
-        if (buffer == null)
-            buffer = new int[matrixW.numCols];
-
-        for (int j = 0; j < matrixW.numCols; ++j) {
-            Set<Integer> activeSet = activeSets.get(j);
-            double maximum = -Double.MAX_VALUE;
-            int maximumIndex = -1;
-            for (int rowIndex : activeSet) {
-                double w = matrixW.unsafe_get(rowIndex, j);
-                if (w > maximum) {
-                    maximum = w;
-                    maximumIndex = rowIndex;
-                }
+    private boolean solveColumn(DMatrixRMaj matrixZtZ, DMatrixRMaj matrixZtX,
+                                NonNegativeLeastSquaresWorkspace.ColumnBuffers buffers, DMatrixRMaj matrixD,
+                                int column) {
+
+        boolean[] passiveSet = buffers.passiveSet;
+        double[] vectorS = buffers.vectorS;
+        UpdatableCholeskyDecomposition cholesky = buffers.cholesky;
+
+        // Make the initial solution optimal for its passive set
+        for (int i = 0; i < matrixD.numRows; ++i)
+            if (passiveSet[i]) {
+                solvePassiveSet(matrixZtX, cholesky, matrixD, column, passiveSet, vectorS);
+                break;
             }
-            buffer[j] = maximumIndex;
+
+        // Main loop
+        int iteration = 0;
+        int m;
+        while ((m = findActiveMaximumIndex(matrixZtZ, matrixZtX, matrixD, column, passiveSet)) != -1) {
+
+            if (++iteration > MAX_ITERATIONS)
+                return false;
+
+            if (!cholesky.add(matrixZtZ, m))
+                throw new IllegalStateException("Cannot factorize matrix ZtZP");
+
+            passiveSet[m] = true;
+            solvePassiveSet(matrixZtX, cholesky, matrixD, column, passiveSet, vectorS);
         }
 
-        return buffer;
+        return true;
     }
 
-    private double findMaximum(DMatrixRMaj matrixW, int[] rows) {
-        double maximum = -Double.MAX_VALUE;
-        for (int i = 0; i < matrixW.numCols; ++i) {
-            int row = rows[i];
-            if (row == -1)
+    /**
+     * Calculates the least squares solution S for the passive set and, while it has non-positive values, moves D
+     * towards S and removes indices from the passive set. Then, the column of D is replaced by S
+     *
+     * @param matrixZtX  matrix ZtX
+     * @param cholesky   Cholesky decomposition of (ZtZ)P
+     * @param matrixD    matrix D
+     * @param column     index of a column of matrix D
+     * @param passiveSet passive set of indices
+     * @param vectorS    buffer for vector S
+     */
+    private void solvePassiveSet(DMatrixRMaj matrixZtX, UpdatableCholeskyDecomposition cholesky, DMatrixRMaj matrixD,
+                                 int column, boolean[] passiveSet, double[] vectorS) {
+
+        calculateVectorS(matrixZtX, column, cholesky, vectorS);
+
+        // Inner loop
+        while (findMinimum(vectorS, passiveSet, matrixD.numRows) <= 0) {
+            updateMatrixD(matrixD, column, vectorS, passiveSet);
+            updateSets(matrixD, column, passiveSet, cholesky);
+            calculateVectorS(matrixZtX, column, cholesky, vectorS);
+        }
+
+        for (int i = 0; i < matrixD.numRows; ++i)
+            matrixD.unsafe_set(i, column, vectorS[i]);
+    }
+
+    /**
+     * Finds the index of the maximum of W = ZtX - ZtZ x D among active rows of a column
+     *
+     * @param matrixZtZ  matrix ZtZ
+     * @param matrixZtX  matrix ZtX
+     * @param matrixD    matrix D
+     * @param column     index of a column
+     * @param passiveSet passive set of indices
+     * @return index of the maximum, or -1 if the active set is empty or its values of W do not exceed the tolerance
+     */
+    private int findActiveMaximumIndex(DMatrixRMaj matrixZtZ, DMatrixRMaj matrixZtX, DMatrixRMaj matrixD, int column,
+                                       boolean[] passiveSet) {
+
+        double maximum = TOLERANCE;
+        int maximumIndex = -1;
+        for (int i = 0; i < matrixD.numRows; ++i) {
+            if (passiveSet[i])
                 continue;
-            double x = matrixW.get(row, i);
-            if (x > maximum)
-                maximum = x;
+
+            double w = matrixZtX.unsafe_get(i, column);
+            for (int j = 0; j < matrixD.numRows; ++j)
+                w -= matrixZtZ.unsafe_get(i, j) * matrixD.unsafe_get(j, column);
+
+            if (w > maximum) {
+                maximum = w;
+                maximumIndex = i;
+            }
         }
-        return maximum;
+        return maximumIndex;
     }
 
-    private double findMinimum(DMatrixRMaj vectorS, Set<Integer> passiveSet) {
+    private double findMinimum(double[] vectorS, boolean[] passiveSet, int size) {
         double minimum = Double.MAX_VALUE;
-        for (int i : passiveSet) {
-            double x = vectorS.get(i);
+        for (int i = 0; i < size; ++i) {
+            if (!passiveSet[i])
+                continue;
+            double x = vectorS[i];
             if (x < minimum)
                 minimum = x;
         }
@@ -166,12 +427,12 @@ public class NonNegativeLeastSquares {
      * @param passiveSet passive set of indices
      * @return alpha
      */
-    private double calculateAlpha(DMatrixRMaj matrixD, int column, DMatrixRMaj vectorS, Set<Integer> passiveSet) {
+    private double calculateAlpha(DMatrixRMaj matrixD, int column, double[] vectorS, boolean[] passiveSet) {
         double minimum = Double.MAX_VALUE;
-        for (int i : passiveSet) {
+        for (int i = 0; i < matrixD.numRows; ++i) {
 
-            double s = vectorS.get(i);
-            if (s > 0.0)
+            double s = vectorS[i];
+            if (!passiveSet[i] || s > 0.0)
                 continue;
 
             double x = matrixD.unsafe_get(i, column);
@@ -183,58 +444,17 @@ public class NonNegativeLeastSquares {
     }
 
     /**
-     * Returns true if all sets are empty. Otherwise, returns false.
-     * @param sets list of sets
-     * @return true if all sets are empty
-     */
-    private boolean checkAllEmpty(List<Set<Integer>> sets) {
-        for (Set<Integer> set : sets)
-            if (!set.isEmpty()) return false;
-        return true;
-    }
-
-    /**
-     * Calculates S, where SP = [(ZtZ)P]^(-1) x (ZtX)P and SR = 0
+     * Calculates S, where SP = [(ZtZ)P]^(-1) x (ZtX)P and SR = 0, using the Cholesky decomposition of (ZtZ)P
      *
-     * @param matrixZtZ   matrix ZtZ
      * @param matrixZtX   matrix ZtX
      * @param columnIndex column of ZtX
-     * @param passiveSet  passive set
-     * @return vector SP
+     * @param cholesky    Cholesky decomposition of (ZtZ)P
+     * @param vectorS     buffer for vector S
      */
-    private DMatrixRMaj calculateVectorS(DMatrixRMaj matrixZtZ, DMatrixRMaj matrixZtX, int columnIndex, Set<Integer> passiveSet) {
-
-        DMatrixRMaj vectorS = new DMatrixRMaj(matrixZtX.numRows, 1);
-
-        if (passiveSet.isEmpty())
-            return vectorS;
-
-        DMatrixRMaj matrixZtZP = new DMatrixRMaj(passiveSet.size(), passiveSet.size());
-        int ii = 0;
-        for (int i : passiveSet) {
-            int jj = 0;
-            for (int j : passiveSet) {
-                matrixZtZP.unsafe_set(ii, jj++, matrixZtZ.unsafe_get(i, j));
-            }
-            ++ii;
-        }
-
-        DMatrixRMaj vectorZtXP = new DMatrixRMaj(passiveSet.size(), 1);
-        ii = 0;
-        for (int i : passiveSet)
-            vectorZtXP.unsafe_set(ii++, 0, matrixZtX.unsafe_get(i, columnIndex));
-
-        if (!invert(matrixZtZP))
-            throw new IllegalStateException("Cannot invert matrix ZtZP");
-
-        DMatrixRMaj vectorSP = new DMatrixRMaj(passiveSet.size(), 1);
-        mult(matrixZtZP, vectorZtXP, vectorSP);
-
-        ii = 0;
-        for (int i : passiveSet)
-            vectorS.unsafe_set(i, 0, vectorSP.unsafe_get(ii++, 0));
-
-        return vectorS;
+    private void calculateVectorS(DMatrixRMaj matrixZtX, int columnIndex, UpdatableCholeskyDecomposition cholesky,
+                                  double[] vectorS) {
+        Arrays.fill(vectorS, 0, matrixZtX.numRows, 0.0);
+        cholesky.solve(matrixZtX, columnIndex, vectorS);
     }
 
     /**
@@ -244,13 +464,13 @@ public class NonNegativeLeastSquares {
      * @param vectorS vector S
      * @param passiveSet passive set of indices
      */
-    private void updateMatrixD(DMatrixRMaj matrixD, int column, DMatrixRMaj vectorS, Set<Integer> passiveSet) {
+    private void updateMatrixD(DMatrixRMaj matrixD, int column, double[] vectorS, boolean[] passiveSet) {
 
         double alpha = calculateAlpha(matrixD, column, vectorS, passiveSet);
 
         for (int i = 0; i < matrixD.numRows; ++i) {
             double x = matrixD.unsafe_get(i, column);
-            x += alpha * (vectorS.get(i) - x);
+            x += alpha * (vectorS[i] - x);
             matrixD.unsafe_set(i, column, x);
         }
     }
@@ -260,14 +480,15 @@ public class NonNegativeLeastSquares {
      * @param matrixD matrix D
      * @param column index of a column of matrix D
      * @param passiveSet set of passive indices
-     * @param activeSet set of active indices
+     * @param cholesky Cholesky decomposition of (ZtZ)P
      */
-    private void updateSets(DMatrixRMaj matrixD, int column, Set<Integer> passiveSet, Set<Integer> activeSet) {
+    private void updateSets(DMatrixRMaj matrixD, int column, boolean[] passiveSet,
+                            UpdatableCholeskyDecomposition cholesky) {
         for (int i = 0; i < matrixD.numRows; ++i) {
             double d = matrixD.unsafe_get(i, column);
-            if (-TOLERANCE < d && d < TOLERANCE) {
-                passiveSet.remove(i);
-                activeSet.add(i);
+            if (passiveSet[i] && -TOLERANCE < d && d < TOLERANCE) {
+                passiveSet[i] = false;
+                cholesky.remove(i);
             }
         }
     }
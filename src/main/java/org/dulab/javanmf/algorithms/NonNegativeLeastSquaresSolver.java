@@ -0,0 +1,91 @@
+package org.dulab.javanmf.algorithms;
+
+import org.dulab.javanmf.data.SparseMatrixUtils;
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.data.DMatrixSparseCSC;
+import org.ejml.data.FMatrixRMaj;
+import org.ejml.dense.row.CommonOps_FDRM;
+import org.ejml.ops.ConvertMatrixData;
+
+import static org.ejml.dense.row.CommonOps_DDRM.multInner;
+
+/**
+ * Provides a template for solving the non-negative least squares problem D = argmin || X - Z x D ||^2 subject to
+ * D &ge; 0.
+ *
+ * @see NonNegativeLeastSquares
+ * @see FastCombinatorialNonNegativeLeastSquares
+ * @see BlockPrincipalPivotingNonNegativeLeastSquares
+ */
+public interface NonNegativeLeastSquaresSolver {
+
+    /**
+     * Finds matrix D such that D = argmin || X - Z x D ||^2
+     * @param matrixX matrix X
+     * @param matrixZ matrix Z
+     * @param matrixD matrix D
+     */
+    void solve(DMatrixRMaj matrixX, DMatrixRMaj matrixZ, DMatrixRMaj matrixD);
+
+    /**
+     * Finds matrix D such that D = argmin || X - Z x D ||^2 using precomputed matrices ZtZ and ZtX. This avoids
+     * recomputing the products when matrix X is large or when the same matrix Z is used with many matrices X
+     * @param matrixZtZ matrix ZtZ
+     * @param matrixZtX matrix ZtX
+     * @param matrixD   matrix D
+     */
+    void solveGram(DMatrixRMaj matrixZtZ, DMatrixRMaj matrixZtX, DMatrixRMaj matrixD);
+
+    /**
+     * Finds matrix D such that D = argmin || X - Z x D ||^2 for sparse matrix X. Matrix ZtX is calculated over
+     * non-zero elements of X only
+     * @param matrixX sparse matrix X
+     * @param matrixZ matrix Z
+     * @param matrixD matrix D
+     */
+    default void solve(DMatrixSparseCSC matrixX, DMatrixRMaj matrixZ, DMatrixRMaj matrixD) {
+
+        if (matrixX.numCols != matrixD.numCols || matrixZ.numCols != matrixD.numRows || matrixX.numRows != matrixZ.numRows)
+            throw new IllegalStateException("Wrong shape of the input matrices");
+
+        DMatrixRMaj matrixZtX = new DMatrixRMaj(matrixD.numRows, matrixD.numCols);
+        SparseMatrixUtils.multTransA(matrixZ, matrixX, matrixZtX);
+
+        DMatrixRMaj matrixZtZ = new DMatrixRMaj(matrixD.numRows, matrixD.numRows);
+        multInner(matrixZ, matrixZtZ);
+
+        solveGram(matrixZtZ, matrixZtX, matrixD);
+    }
+
+    /**
+     * Finds matrix D such that D = argmin || X - Z x D ||^2 for single-precision matrices. Matrices ZtZ and ZtX are
+     * calculated in single precision, and the small problem with them is solved in double precision
+     * @param matrixX matrix X
+     * @param matrixZ matrix Z
+     * @param matrixD matrix D
+     */
+    default void solve(FMatrixRMaj matrixX, FMatrixRMaj matrixZ, FMatrixRMaj matrixD) {
+
+        if (matrixX.numCols != matrixD.numCols || matrixZ.numCols != matrixD.numRows || matrixX.numRows != matrixZ.numRows)
+            throw new IllegalStateException("Wrong shape of the input matrices");
+
+        FMatrixRMaj matrixZtX = new FMatrixRMaj(matrixD.numRows, matrixD.numCols);
+        CommonOps_FDRM.multTransA(matrixZ, matrixX, matrixZtX);
+
+        FMatrixRMaj matrixZtZ = new FMatrixRMaj(matrixD.numRows, matrixD.numRows);
+        CommonOps_FDRM.multInner(matrixZ, matrixZtZ);
+
+        DMatrixRMaj matrixZtXDouble = new DMatrixRMaj(matrixD.numRows, matrixD.numCols);
+        ConvertMatrixData.convert(matrixZtX, matrixZtXDouble);
+
+        DMatrixRMaj matrixZtZDouble = new DMatrixRMaj(matrixD.numRows, matrixD.numRows);
+        ConvertMatrixData.convert(matrixZtZ, matrixZtZDouble);
+
+        DMatrixRMaj matrixDDouble = new DMatrixRMaj(matrixD.numRows, matrixD.numCols);
+        ConvertMatrixData.convert(matrixD, matrixDDouble);
+
+        solveGram(matrixZtZDouble, matrixZtXDouble, matrixDDouble);
+
+        ConvertMatrixData.convert(matrixDDouble, matrixD);
+    }
+}
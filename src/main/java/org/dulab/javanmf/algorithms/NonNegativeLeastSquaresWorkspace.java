@@ -0,0 +1,83 @@
+package org.dulab.javanmf.algorithms;
+
+import org.ejml.data.DMatrixRMaj;
+
+import java.util.Arrays;
+
+/**
+ * This class holds buffers used by {@link NonNegativeLeastSquares}. The buffers grow to the largest problem solved
+ * with the workspace and are reused afterwards, so that repeated calls of
+ * {@link NonNegativeLeastSquares#solve(DMatrixRMaj, DMatrixRMaj, DMatrixRMaj, NonNegativeLeastSquaresWorkspace)}
+ * do not allocate memory.
+ * <p>
+ * The workspace also keeps the passive sets found by the last call. They are used to warm-start the next call with
+ * the same shape of matrix D, if warm starts are enabled in {@link NonNegativeLeastSquares}.
+ * <p>
+ * A workspace must not be used by several calls at the same time. When columns are processed in parallel, each block
+ * of columns uses its own part of the workspace.
+ */
+public class NonNegativeLeastSquaresWorkspace {
+
+    final DMatrixRMaj matrixZtZ = new DMatrixRMaj(1, 1);
+    final DMatrixRMaj matrixZtX = new DMatrixRMaj(1, 1);
+
+    ColumnBuffers[] columnBuffers = new ColumnBuffers[0];
+
+    /* Passive sets of all columns found by the last call, stored column by column */
+    boolean[] passiveSets = new boolean[0];
+
+    /* True if passiveSets correspond to the current shape of matrix D */
+    boolean hasPassiveSets = false;
+
+    private int numComponents = 0;
+    private int numColumns = 0;
+
+    /**
+     * Makes sure the buffers are large enough for the given problem size
+     *
+     * @param numComponents number of rows of matrix D
+     * @param numColumns    number of columns of matrix D
+     * @param numBlocks     number of blocks of columns processed in parallel
+     */
+    void reshape(int numComponents, int numColumns, int numBlocks) {
+
+        matrixZtZ.reshape(numComponents, numComponents);
+        matrixZtX.reshape(numComponents, numColumns);
+
+        if (this.numComponents != numComponents || this.numColumns != numColumns) {
+            this.numComponents = numComponents;
+            this.numColumns = numColumns;
+            hasPassiveSets = false;
+            if (passiveSets.length < numComponents * numColumns)
+                passiveSets = new boolean[numComponents * numColumns];
+        }
+
+        if (columnBuffers.length < numBlocks) {
+            ColumnBuffers[] buffers = Arrays.copyOf(columnBuffers, numBlocks);
+            for (int b = columnBuffers.length; b < numBlocks; ++b)
+                buffers[b] = new ColumnBuffers();
+            columnBuffers = buffers;
+        }
+
+        for (int b = 0; b < numBlocks; ++b)
+            columnBuffers[b].reshape(numComponents);
+    }
+
+    /**
+     * Buffers used for solving one column at a time. Each block of columns processed in parallel has its own buffers
+     */
+    static class ColumnBuffers {
+
+        final UpdatableCholeskyDecomposition cholesky = new UpdatableCholeskyDecomposition();
+
+        boolean[] passiveSet = new boolean[0];
+        double[] vectorS = new double[0];
+
+        void reshape(int numComponents) {
+            if (passiveSet.length < numComponents) {
+                passiveSet = new boolean[numComponents];
+                vectorS = new double[numComponents];
+            }
+        }
+    }
+}
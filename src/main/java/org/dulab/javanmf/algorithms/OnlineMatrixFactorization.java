@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2018 Du-Lab Team <dulab.binf@gmail.com>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.dulab.javanmf.algorithms;
+
+import org.dulab.javanmf.measures.EuclideanDistance;
+import org.ejml.data.DMatrixRMaj;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Iterator;
+import java.util.logging.Logger;
+
+import static org.ejml.dense.row.CommonOps_DDRM.*;
+
+/**
+ * This class performs online non-negative matrix factorization: matrix X is consumed as a sequence of batches of
+ * columns X<sub>1</sub>, X<sub>2</sub>, ..., and only one batch is kept in memory at a time.
+ * <p>
+ * For each batch X<sub>b</sub>, coefficients H<sub>b</sub> are found for the current matrix W, and the sufficient
+ * statistics are accumulated
+ * <p>
+ * &emsp; A = &rho;A + H<sub>b</sub>H<sub>b</sub><sup>T</sup>, &emsp; B = &rho;B + H<sub>b</sub>X<sub>b</sub><sup>T</sup>
+ * <p>
+ * where &rho; is the forgetting factor. Then, matrix W is updated by solving the non-negative least squares problem
+ * with Gram matrix A and product B, which minimizes the (weighted) distance between all seen batches and
+ * WH<sub>b</sub>. Matrix W is updated in place after each batch, so the components are available before all the data
+ * has arrived.
+ * <p>
+ * <strong>Example</strong> for given iterator {@code batches} and initial matrix {@code matrixW}
+ * <pre> {@code
+ *     OnlineMatrixFactorization factorization = new OnlineMatrixFactorization();
+ *     factorization.execute(batches, matrixW);
+ * } </pre>
+ *
+ * See J. Mairal et al. "ONLINE LEARNING FOR MATRIX FACTORIZATION AND SPARSE CODING"
+ *
+ * @author Du-Lab Team dulab.binf@gmail.com
+ */
+public class OnlineMatrixFactorization
+{
+    /* Logger */
+    private static final Logger LOG = Logger.getLogger(OnlineMatrixFactorization.class.getName());
+
+    /* Solver of the non-negative least squares problem for matrix W^T */
+    private final NonNegativeLeastSquaresSolver nonNegativeLeastSquaresForW;
+
+    /* Solver of the non-negative least squares problem for matrices H_b, or null if update rules are used */
+    private final NonNegativeLeastSquaresSolver nonNegativeLeastSquaresForH;
+
+    /* Regression for matrices H_b, or null if the non-negative least squares solver is used */
+    private final MatrixRegression regressionForH;
+
+    /* Weight of the statistics accumulated from previous batches */
+    private final double forgettingFactor;
+
+    /**
+     * Creates an instance of {@link OnlineMatrixFactorization}
+     *
+     * @param nonNegativeLeastSquaresForW instance of {@link NonNegativeLeastSquaresSolver} for matrix W^T. If null,
+     *                                    {@link NonNegativeLeastSquares} with warm starts is used
+     * @param nonNegativeLeastSquaresForH instance of {@link NonNegativeLeastSquaresSolver} for matrices
+     *                                    H<sub>b</sub>. If null, {@link NonNegativeLeastSquares} is used
+     * @param forgettingFactor            weight &rho; of the statistics accumulated from previous batches
+     * @throws IllegalArgumentException If the forgetting factor is not in (0, 1]
+     */
+    public OnlineMatrixFactorization(@Nullable NonNegativeLeastSquaresSolver nonNegativeLeastSquaresForW,
+                                     @Nullable NonNegativeLeastSquaresSolver nonNegativeLeastSquaresForH,
+                                     double forgettingFactor)
+            throws IllegalArgumentException
+    {
+        this(nonNegativeLeastSquaresForW, nonNegativeLeastSquaresForH != null
+                ? nonNegativeLeastSquaresForH : new NonNegativeLeastSquares(), null, forgettingFactor);
+    }
+
+    /**
+     * Creates an instance of {@link OnlineMatrixFactorization} that finds matrices H<sub>b</sub> by
+     * {@link MatrixRegression}, e.g. with {@link org.dulab.javanmf.updaterules.MUpdateRule}. Each regression starts
+     * from matrix H<sub>b</sub> filled with ones
+     *
+     * @param regressionForH   instance of {@link MatrixRegression} for matrices H<sub>b</sub>
+     * @param forgettingFactor weight &rho; of the statistics accumulated from previous batches
+     * @throws IllegalArgumentException If the forgetting factor is not in (0, 1]
+     */
+    public OnlineMatrixFactorization(@Nonnull MatrixRegression regressionForH, double forgettingFactor)
+            throws IllegalArgumentException
+    {
+        this(null, null, regressionForH, forgettingFactor);
+    }
+
+    /**
+     * Creates an instance of {@link OnlineMatrixFactorization} with the active set method for all matrices and
+     * without forgetting
+     */
+    public OnlineMatrixFactorization() {
+        this(null, null, 1.0);
+    }
+
+    private OnlineMatrixFactorization(@Nullable NonNegativeLeastSquaresSolver nonNegativeLeastSquaresForW,
+                                      @Nullable NonNegativeLeastSquaresSolver nonNegativeLeastSquaresForH,
+                                      @Nullable MatrixRegression regressionForH, double forgettingFactor)
+            throws IllegalArgumentException
+    {
+        if (forgettingFactor <= 0.0 || forgettingFactor > 1.0)
+            throw new IllegalArgumentException("Forgetting factor " + forgettingFactor + " is not in (0, 1]");
+
+        this.nonNegativeLeastSquaresForW = nonNegativeLeastSquaresForW != null
+                ? nonNegativeLeastSquaresForW : new NonNegativeLeastSquares(null, true);
+        this.nonNegativeLeastSquaresForH = nonNegativeLeastSquaresForH;
+        this.regressionForH = regressionForH;
+        this.forgettingFactor = forgettingFactor;
+    }
+
+    /**
+     * Performs the online non-negative matrix factorization of the batches of columns of matrix X.
+     * <p>
+     * Parameter {@code w} contains the result of the factorization and is updated after each batch.
+     *
+     * @param batches iterator over matrices of shape [N<sub>points</sub>, N<sub>batch vectors</sub>], batches of
+     *                columns of matrix X. Batches can have different numbers of columns
+     * @param w       matrix of shape [N<sub>points</sub>, N<sub>components</sub>], a collection of initial components
+     * @param verbose flag to output verbose information
+     * @return number of processed batches
+     */
+    public int execute(@Nonnull Iterator<DMatrixRMaj> batches, @Nonnull DMatrixRMaj w, boolean verbose) {
+
+        final int numPoints = w.numRows;
+        final int numComponents = w.numCols;
+
+        DMatrixRMaj wt = new DMatrixRMaj(numComponents, numPoints);
+        transpose(w, wt);
+
+        // Sufficient statistics A = HHt and B = HXt
+        DMatrixRMaj hht = new DMatrixRMaj(numComponents, numComponents);
+        DMatrixRMaj hxt = new DMatrixRMaj(numComponents, numPoints);
+
+        DMatrixRMaj h = new DMatrixRMaj(numComponents, 0);
+
+        int numBatches = 0;
+        while (batches.hasNext()) {
+            DMatrixRMaj x = batches.next();
+
+            if (x.numRows != numPoints)
+                throw new IllegalStateException("Wrong shape of the input matrices");
+
+            h.reshape(numComponents, x.numCols);
+            solveH(x, w, h);
+
+            scale(forgettingFactor, hht);
+            multAddTransB(h, h, hht);  // hht = rho * hht + h * ht
+
+            scale(forgettingFactor, hxt);
+            multAddTransB(h, x, hxt);  // hxt = rho * hxt + h * xt
+
+            nonNegativeLeastSquaresForW.solveGram(hht, hxt, wt);
+            transpose(wt, w);
+
+            ++numBatches;
+
+            if (verbose) {
+                double normX2 = EuclideanDistance.squaredNorm(x);
+                double error = new EuclideanDistance().get(x, w, h);
+                LOG.info("Batch " + numBatches + ": relative error " + Math.sqrt(error / normX2));
+            }
+        }
+
+        if (verbose)
+            LOG.info("Online NMF is completed after " + numBatches + " batches");
+
+        return numBatches;
+    }
+
+    /**
+     * Performs the online non-negative matrix factorization of the batches of columns of matrix X.
+     * <p>
+     * Parameter {@code w} contains the result of the factorization and is updated after each batch.
+     *
+     * @param batches iterator over matrices of shape [N<sub>points</sub>, N<sub>batch vectors</sub>], batches of
+     *                columns of matrix X
+     * @param w       matrix of shape [N<sub>points</sub>, N<sub>components</sub>], a collection of initial components
+     * @return number of processed batches
+     */
+    public int execute(@Nonnull Iterator<DMatrixRMaj> batches, @Nonnull DMatrixRMaj w) {
+        return execute(batches, w, false);
+    }
+
+    private void solveH(@Nonnull DMatrixRMaj x, @Nonnull DMatrixRMaj w, @Nonnull DMatrixRMaj h) {
+
+        if (regressionForH != null) {
+            fill(h, 1.0);
+            regressionForH.solve(x, w, h);
+        }
+        else {
+            fill(h, 0.0);
+            nonNegativeLeastSquaresForH.solve(x, w, h);
+        }
+    }
+}
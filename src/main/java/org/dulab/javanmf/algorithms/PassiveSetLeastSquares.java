@@ -0,0 +1,192 @@
+package org.dulab.javanmf.algorithms;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.dense.row.factory.LinearSolverFactory_DDRM;
+import org.ejml.interfaces.linsol.LinearSolverDense;
+
+/**
+ * This class solves the unconstrained least squares problems S<sub>P</sub> = [(ZtZ)<sub>P</sub>]^(-1) x (ZtX)<sub>P</sub>,
+ * S<sub>R</sub> = 0 for several columns of ZtX at once. Columns with identical passive sets are grouped together, so
+ * that matrix (ZtZ)<sub>P</sub> is factorized only once for each group.
+ *
+ * See M.H. Van Benthem and M.R. Keenan "FAST ALGORITHM FOR THE SOLUTION OF LARGE-SCALE NON-NEGATIVITY-CONSTRAINED
+ * LEAST SQUARES PROBLEMS"
+ */
+class PassiveSetLeastSquares {
+
+    /* Ranges of columns that are sorted by the insertion sort */
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    private final LinearSolverDense<DMatrixRMaj> solver = LinearSolverFactory_DDRM.symmPosDef(0);
+
+    private final DMatrixRMaj matrixZtZP = new DMatrixRMaj(1, 1);
+    private final DMatrixRMaj matrixZtXP = new DMatrixRMaj(1, 1);
+    private final DMatrixRMaj matrixSP = new DMatrixRMaj(1, 1);
+
+    private int[] passiveIndices = new int[0];
+
+    /**
+     * Calculates columns of matrix S for given column indices
+     *
+     * @param matrixZtZ   matrix ZtZ
+     * @param matrixZtX   matrix ZtX
+     * @param passiveSets passive sets of all columns, stored column by column: element (i, j) is passive if
+     *                    {@code passiveSets[j * matrixZtZ.numRows + i]} is true
+     * @param columns     indices of columns to be calculated. The array is reordered by this method
+     * @param numColumns  number of indices in {@code columns}
+     * @param matrixS     matrix S
+     * @return false if matrix (ZtZ)<sub>P</sub> could not be factorized for at least one group of columns
+     */
+    boolean solve(DMatrixRMaj matrixZtZ, DMatrixRMaj matrixZtX, boolean[] passiveSets, int[] columns,
+                  int numColumns, DMatrixRMaj matrixS) {
+
+        final int numRows = matrixZtZ.numRows;
+        if (passiveIndices.length < numRows)
+            passiveIndices = new int[numRows];
+
+        // Sort columns so that columns with identical passive sets follow each other
+        sort(passiveSets, columns, 0, numColumns, numRows);
+
+        boolean success = true;
+        int start = 0;
+        while (start < numColumns) {
+            int end = start + 1;
+            while (end < numColumns && compare(passiveSets, columns[start], columns[end], numRows) == 0)
+                ++end;
+            success &= solveGroup(matrixZtZ, matrixZtX, passiveSets, columns, start, end, matrixS);
+            start = end;
+        }
+        return success;
+    }
+
+    /**
+     * Calculates columns of matrix S for a group of columns with identical passive sets
+     *
+     * @param matrixZtZ   matrix ZtZ
+     * @param matrixZtX   matrix ZtX
+     * @param passiveSets passive sets of all columns
+     * @param columns     indices of columns
+     * @param start       first position of the group in {@code columns}
+     * @param end         position after the last position of the group in {@code columns}
+     * @param matrixS     matrix S
+     * @return false if matrix (ZtZ)<sub>P</sub> could not be factorized
+     */
+    private boolean solveGroup(DMatrixRMaj matrixZtZ, DMatrixRMaj matrixZtX, boolean[] passiveSets, int[] columns,
+                               int start, int end, DMatrixRMaj matrixS) {
+
+        final int numRows = matrixZtZ.numRows;
+        final int offset = columns[start] * numRows;
+
+        int size = 0;
+        for (int i = 0; i < numRows; ++i)
+            if (passiveSets[offset + i])
+                passiveIndices[size++] = i;
+
+        for (int c = start; c < end; ++c)
+            for (int i = 0; i < numRows; ++i)
+                matrixS.unsafe_set(i, columns[c], 0.0);
+
+        if (size == 0)
+            return true;
+
+        matrixZtZP.reshape(size, size);
+        for (int i = 0; i < size; ++i)
+            for (int j = 0; j < size; ++j)
+                matrixZtZP.unsafe_set(i, j, matrixZtZ.unsafe_get(passiveIndices[i], passiveIndices[j]));
+
+        matrixZtXP.reshape(size, end - start);
+        for (int i = 0; i < size; ++i)
+            for (int c = start; c < end; ++c)
+                matrixZtXP.unsafe_set(i, c - start, matrixZtX.unsafe_get(passiveIndices[i], columns[c]));
+
+        if (!solver.setA(matrixZtZP))
+            return false;
+
+        matrixSP.reshape(size, end - start);
+        solver.solve(matrixZtXP, matrixSP);
+
+        for (int i = 0; i < size; ++i)
+            for (int c = start; c < end; ++c)
+                matrixS.unsafe_set(passiveIndices[i], columns[c], matrixSP.unsafe_get(i, c - start));
+
+        return true;
+    }
+
+    /**
+     * Sorts column indices from {@code from} to {@code to - 1} by their passive sets. The three-way quicksort puts
+     * columns with identical passive sets next to each other in one partitioning step, and no indices are boxed
+     *
+     * @param passiveSets passive sets of all columns
+     * @param columns     indices of columns
+     * @param from        first position to sort
+     * @param to          position after the last position to sort
+     * @param numRows     number of rows
+     */
+    private static void sort(boolean[] passiveSets, int[] columns, int from, int to, int numRows) {
+
+        while (to - from > INSERTION_SORT_THRESHOLD) {
+
+            // Partition into [from, lt) < pivot, [lt, gt) == pivot, and [gt, to) > pivot
+            int pivot = columns[(from + to) >>> 1];
+            int lt = from;
+            int gt = to;
+            int i = from;
+            while (i < gt) {
+                int c = compare(passiveSets, columns[i], pivot, numRows);
+                if (c < 0)
+                    swap(columns, lt++, i++);
+                else if (c > 0)
+                    swap(columns, i, --gt);
+                else
+                    ++i;
+            }
+
+            // Recurse into the smaller part and continue with the larger one, so that the recursion depth is
+            // logarithmic
+            if (lt - from < to - gt) {
+                sort(passiveSets, columns, from, lt, numRows);
+                from = gt;
+            } else {
+                sort(passiveSets, columns, gt, to, numRows);
+                to = lt;
+            }
+        }
+
+        for (int i = from + 1; i < to; ++i) {
+            int column = columns[i];
+            int j = i;
+            while (j > from && compare(passiveSets, columns[j - 1], column, numRows) > 0) {
+                columns[j] = columns[j - 1];
+                --j;
+            }
+            columns[j] = column;
+        }
+    }
+
+    private static void swap(int[] columns, int i, int j) {
+        int column = columns[i];
+        columns[i] = columns[j];
+        columns[j] = column;
+    }
+
+    /**
+     * Compares passive sets of two columns lexicographically
+     *
+     * @param passiveSets passive sets of all columns
+     * @param column1     index of the first column
+     * @param column2     index of the second column
+     * @param numRows     number of rows
+     * @return negative, zero, or positive value
+     */
+    private static int compare(boolean[] passiveSets, int column1, int column2, int numRows) {
+        int offset1 = column1 * numRows;
+        int offset2 = column2 * numRows;
+        for (int i = 0; i < numRows; ++i) {
+            boolean p1 = passiveSets[offset1 + i];
+            boolean p2 = passiveSets[offset2 + i];
+            if (p1 != p2)
+                return p1 ? 1 : -1;
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2018 Du-Lab Team <dulab.binf@gmail.com>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.dulab.javanmf.algorithms;
+
+import org.dulab.javanmf.measures.EuclideanDistance;
+import org.ejml.data.DMatrixRMaj;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.logging.Logger;
+
+import static org.ejml.dense.row.CommonOps_DDRM.insert;
+
+/**
+ * This class performs non-negative matrix factorization of matrix X for a range of numbers of components, so that the
+ * number of components can be chosen by the reconstruction error.
+ * <p>
+ * The range of numbers of components is split into consecutive chains, which are factorized in parallel. The first
+ * number of components of each chain is initialized by NNDSVD. When warm starts are enabled, each next number of
+ * components N + 1 is initialized by the converged matrices W and H for N components plus one new NNDSVD component.
+ * The singular value decomposition of X is computed only once for the largest number of components.
+ * <p>
+ * <strong>Example</strong> for given matrix X
+ * <pre> {@code
+ *     MatrixFactorization factorization = new MatrixFactorization(
+ *         new MUpdateRule(0.0, 0.0), new MUpdateRule(0.0, 0.0), 1e-4, 1000);
+ *
+ *     List<RankSweep.Result> results = new RankSweep(factorization).execute(matrixX, 2, 40);
+ * } </pre>
+ *
+ * @author Du-Lab Team dulab.binf@gmail.com
+ */
+public class RankSweep
+{
+    /* Logger */
+    private static final Logger LOG = Logger.getLogger(RankSweep.class.getName());
+
+    /**
+     * Factorization of matrix X with given initial matrices W and H
+     */
+    @FunctionalInterface
+    public interface Factorization {
+
+        /**
+         * @param x matrix of shape [N<sub>points</sub>, N<sub>vectors</sub>]
+         * @param w matrix of shape [N<sub>points</sub>, N<sub>components</sub>] with the initial components
+         * @param h matrix of shape [N<sub>components</sub>, N<sub>vectors</sub>] with the initial coefficients
+         * @return number of iterations
+         */
+        int execute(@Nonnull DMatrixRMaj x, @Nonnull DMatrixRMaj w, @Nonnull DMatrixRMaj h);
+    }
+
+    private final Factorization factorization;
+    private final ForkJoinPool pool;
+    private final boolean warmStart;
+
+    /**
+     * Creates an instance of {@link RankSweep}
+     *
+     * @param factorization instance of {@link Factorization}, which must be safe to use from several threads
+     * @param pool          instance of {@link ForkJoinPool} for factorizing chains of ranks in parallel
+     * @param warmStart     flag to initialize each next number of components by the previous solution
+     */
+    public RankSweep(@Nonnull Factorization factorization, @Nonnull ForkJoinPool pool, boolean warmStart) {
+        this.factorization = factorization;
+        this.pool = pool;
+        this.warmStart = warmStart;
+    }
+
+    /**
+     * Creates an instance of {@link RankSweep} with warm starts that uses the common {@link ForkJoinPool}
+     *
+     * @param factorization instance of {@link MatrixFactorization}
+     */
+    public RankSweep(@Nonnull MatrixFactorization factorization) {
+        this((x, w, h) -> {
+            factorization.execute(x, w, h);
+            return factorization.getNumIterations();
+        }, ForkJoinPool.commonPool(), true);
+    }
+
+    /**
+     * Creates an instance of {@link RankSweep} with warm starts that uses the common {@link ForkJoinPool}
+     *
+     * @param factorization instance of {@link AlternatingLeastSquaresMatrixFactorization}
+     */
+    public RankSweep(@Nonnull AlternatingLeastSquaresMatrixFactorization factorization) {
+        this((x, w, h) -> {
+            factorization.solve(x, w, h);
+            return factorization.getNumIterations();
+        }, ForkJoinPool.commonPool(), true);
+    }
+
+    /**
+     * Performs the non-negative matrix factorization for each number of components from {@code minComponents} to
+     * {@code maxComponents}
+     *
+     * @param x             matrix of shape [N<sub>points</sub>, N<sub>vectors</sub>]
+     * @param minComponents smallest number of components
+     * @param maxComponents largest number of components
+     * @param verbose       flag to output the error of each number of components
+     * @return list of {@link Result} ordered by the number of components
+     * @throws IllegalArgumentException if the range of numbers of components is empty or exceeds the rank of X
+     */
+    public List<Result> execute(@Nonnull DMatrixRMaj x, int minComponents, int maxComponents, boolean verbose)
+            throws IllegalArgumentException
+    {
+        if (minComponents < 1 || minComponents > maxComponents || maxComponents > Math.min(x.numRows, x.numCols))
+            throw new IllegalArgumentException("Wrong range of the numbers of components");
+
+        final SingularValueDecomposition svd = new SingularValueDecomposition(x, maxComponents);
+
+        final int numRanks = maxComponents - minComponents + 1;
+        final int numChains = warmStart ? Math.min(pool.getParallelism(), numRanks) : numRanks;
+        final Result[] results = new Result[numRanks];
+
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(numChains);
+        for (int c = 0; c < numChains; ++c) {
+            final int start = minComponents + c * numRanks / numChains;
+            final int end = minComponents + (c + 1) * numRanks / numChains;
+            tasks.add(pool.submit(() -> runChain(x, svd, start, end, minComponents, results)));
+        }
+
+        for (ForkJoinTask<?> task : tasks)
+            task.join();
+
+        if (verbose)
+            for (Result result : results)
+                LOG.info("NMF with " + result.getNumComponents() + " components: error " + result.getError()
+                        + " after " + result.getNumIterations() + " iterations");
+
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Performs the non-negative matrix factorization for each number of components from {@code minComponents} to
+     * {@code maxComponents}
+     *
+     * @param x             matrix of shape [N<sub>points</sub>, N<sub>vectors</sub>]
+     * @param minComponents smallest number of components
+     * @param maxComponents largest number of components
+     * @return list of {@link Result} ordered by the number of components
+     */
+    public List<Result> execute(@Nonnull DMatrixRMaj x, int minComponents, int maxComponents) {
+        return execute(x, minComponents, maxComponents, false);
+    }
+
+    /**
+     * Factorizes matrix X for the numbers of components from {@code start} to {@code end - 1}, warm-starting each
+     * number of components from the previous one
+     */
+    private void runChain(@Nonnull DMatrixRMaj x, @Nonnull SingularValueDecomposition svd, int start, int end,
+                          int minComponents, @Nonnull Result[] results)
+    {
+        final EuclideanDistance distance = new EuclideanDistance();
+
+        DMatrixRMaj w = null;
+        DMatrixRMaj h = null;
+
+        for (int k = start; k < end; ++k) {
+
+            DMatrixRMaj initW = new DMatrixRMaj(x.numRows, k);
+            DMatrixRMaj initH = new DMatrixRMaj(k, x.numCols);
+            svd.decompose(initW, initH);
+
+            boolean warmStarted = w != null;
+            if (warmStarted) {
+                // Keep the previous solution and add the last NNDSVD component
+                insert(w, initW, 0, 0);
+                insert(h, initH, 0, 0);
+            }
+
+            long startTime = System.nanoTime();
+            int numIterations = factorization.execute(x, initW, initH);
+            long elapsedNanos = System.nanoTime() - startTime;
+
+            results[k - minComponents] = new Result(k, initW, initH, distance.get(x, initW, initH), numIterations,
+                    elapsedNanos, warmStarted);
+
+            w = initW;
+            h = initH;
+        }
+    }
+
+    /**
+     * Factorization of matrix X for one number of components
+     */
+    public static class Result {
+
+        private final int numComponents;
+        private final DMatrixRMaj w;
+        private final DMatrixRMaj h;
+        private final double error;
+        private final int numIterations;
+        private final long elapsedNanos;
+        private final boolean warmStarted;
+
+        Result(int numComponents, DMatrixRMaj w, DMatrixRMaj h, double error, int numIterations, long elapsedNanos,
+               boolean warmStarted) {
+            this.numComponents = numComponents;
+            this.w = w;
+            this.h = h;
+            this.error = error;
+            this.numIterations = numIterations;
+            this.elapsedNanos = elapsedNanos;
+            this.warmStarted = warmStarted;
+        }
+
+        /**
+         * @return number of components
+         */
+        public int getNumComponents() {
+            return numComponents;
+        }
+
+        /**
+         * @return matrix W of shape [N<sub>points</sub>, N<sub>components</sub>]
+         */
+        public DMatrixRMaj getW() {
+            return w;
+        }
+
+        /**
+         * @return matrix H of shape [N<sub>components</sub>, N<sub>vectors</sub>]
+         */
+        public DMatrixRMaj getH() {
+            return h;
+        }
+
+        /**
+         * @return reconstruction error || X &minus; WH ||<sup>2</sup>
+         */
+        public double getError() {
+            return error;
+        }
+
+        /**
+         * @return number of iterations of the factorization
+         */
+        public int getNumIterations() {
+            return numIterations;
+        }
+
+        /**
+         * @return time of the factorization in nanoseconds, excluding the initialization
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * @return true if the factorization was initialized by the solution for one component less
+         */
+        public boolean isWarmStarted() {
+            return warmStarted;
+        }
+    }
+}
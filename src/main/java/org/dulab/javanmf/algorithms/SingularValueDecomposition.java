@@ -19,17 +19,26 @@
 package org.dulab.javanmf.algorithms;
 
 import org.ejml.data.DMatrixRMaj;
+import org.ejml.data.FMatrixRMaj;
+import org.ejml.interfaces.decomposition.QRDecomposition;
+import org.ejml.interfaces.decomposition.SingularValueDecomposition_F32;
 import org.ejml.interfaces.decomposition.SingularValueDecomposition_F64;
 import org.ejml.dense.row.factory.DecompositionFactory_DDRM;
+import org.ejml.dense.row.factory.DecompositionFactory_FDRM;
+import org.ejml.ops.ConvertMatrixData;
 
 import static org.ejml.dense.row.CommonOps_DDRM.*;
-import static org.ejml.dense.row.NormOps_DDRM.normF;
+import static org.ejml.dense.row.RandomMatrices_DDRM.fillGaussian;
+import static org.ejml.dense.row.SingularOps_DDRM.descendingOrder;
 
 import javax.annotation.Nonnull;
+import java.util.Random;
 
 /**
  * This class performs non-negative singular value decomposition: first, the singular value decomposition is
- * performed; then, the non-negative matrices W and H are formed.
+ * performed; then, the non-negative matrices W and H are formed. For large matrices, only the leading singular
+ * triplets can be computed by the randomized decomposition, see
+ * {@link #SingularValueDecomposition(DMatrixRMaj, int)}.
  * <p>
  * Based on <a href="http://www.sciencedirect.com/science/article/pii/S0031320307004359">C. Boutsidis and E. Gallopoulos,
  *     SVD based initialization: A head start for nonnegative matrix factorization</a>
@@ -51,12 +60,19 @@ import javax.annotation.Nonnull;
  */
 public class SingularValueDecomposition
 {
+    /** Default number of additional random vectors in the randomized decomposition */
+    public static final int DEFAULT_OVERSAMPLES = 10;
+
+    /** Default number of power iterations in the randomized decomposition */
+    public static final int DEFAULT_POWER_ITERATIONS = 2;
+
     private final DMatrixRMaj matrixU;
     private final DMatrixRMaj vectorS;
     private final DMatrixRMaj matrixV;
 
     /**
-     * Creates an instance of {@link SingularValueDecomposition} for given {@code matrix}
+     * Creates an instance of {@link SingularValueDecomposition} for given {@code matrix}. The full singular value
+     * decomposition is performed
      * @param x matrix of shape [N<sub>points</sub>, N<sub>vectors</sub>] to be decomposed
      */
     public SingularValueDecomposition(@Nonnull DMatrixRMaj x)
@@ -71,14 +87,161 @@ public class SingularValueDecomposition
         vectorS = svd.getW(null);
         matrixV = svd.getV(null, false);
 
-        DMatrixRMaj matrixUS = new DMatrixRMaj(matrixU.numRows, vectorS.numCols);
-        mult(matrixU, vectorS, matrixUS);
+        descendingOrder(matrixU, false, vectorS, matrixV, false);
+    }
+
+    /**
+     * Creates an instance of {@link SingularValueDecomposition} for given single-precision {@code matrix}. The
+     * decomposition is performed in single precision
+     * @param x matrix of shape [N<sub>points</sub>, N<sub>vectors</sub>] to be decomposed
+     */
+    public SingularValueDecomposition(@Nonnull FMatrixRMaj x)
+    {
+        SingularValueDecomposition_F32<FMatrixRMaj> svd =
+                DecompositionFactory_FDRM.svd(x.numRows, x.numCols, true, true, false);
+
+        if (!svd.decompose(x.copy()))
+            throw new IllegalStateException("Decomposition failed");
+
+        matrixU = toDouble(svd.getU(null, false));
+        vectorS = toDouble(svd.getW(null));
+        matrixV = toDouble(svd.getV(null, false));
+
+        descendingOrder(matrixU, false, vectorS, matrixV, false);
+    }
+
+    /**
+     * Creates an instance of {@link SingularValueDecomposition} that computes only the {@code numComponents} largest
+     * singular triplets of {@code matrix} by the randomized range finder with power iterations. The cost is
+     * O(N<sub>points</sub> N<sub>vectors</sub> (N<sub>components</sub> + N<sub>oversamples</sub>)) per pass over X
+     * instead of O(N<sub>points</sub> N<sub>vectors</sub> min(N<sub>points</sub>, N<sub>vectors</sub>)) for the full
+     * decomposition.
+     * <p>
+     * Based on <a href="https://doi.org/10.1137/090771806">N. Halko, P.G. Martinsson, and J.A. Tropp, Finding structure
+     * with randomness: Probabilistic algorithms for constructing approximate matrix decompositions</a>
+     *
+     * @param x                  matrix of shape [N<sub>points</sub>, N<sub>vectors</sub>] to be decomposed
+     * @param numComponents      number of singular triplets to compute
+     * @param numOversamples     number of additional random vectors, which improve the accuracy
+     * @param numPowerIterations number of power iterations, which improve the accuracy when the singular values decay
+     *                           slowly
+     * @param random             random number generator for the random test matrix
+     * @throws IllegalArgumentException if the number of components is not between 1 and min(N<sub>points</sub>,
+     * N<sub>vectors</sub>), or the number of oversamples or power iterations is negative
+     */
+    public SingularValueDecomposition(@Nonnull DMatrixRMaj x, int numComponents, int numOversamples,
+                                      int numPowerIterations, @Nonnull Random random)
+            throws IllegalArgumentException
+    {
+        this(x, numComponents, numOversamples, numPowerIterations, random, new Workspace());
+    }
+
+    /**
+     * Creates an instance of {@link SingularValueDecomposition} by the randomized decomposition, see
+     * {@link #SingularValueDecomposition(DMatrixRMaj, int, int, int, Random)}. The intermediate matrices and
+     * decompositions are taken from {@code workspace}, so that only the singular vectors of the small matrix
+     * Q<sup>T</sup> x X and the matrices U, S, and V are allocated
+     *
+     * @param workspace buffers of the randomized decomposition
+     */
+    SingularValueDecomposition(@Nonnull DMatrixRMaj x, int numComponents, int numOversamples,
+                               int numPowerIterations, @Nonnull Random random, @Nonnull Workspace workspace)
+            throws IllegalArgumentException
+    {
+        final int numPoints = x.numRows;
+        final int numVectors = x.numCols;
+        final int minSize = Math.min(numPoints, numVectors);
+
+        if (numComponents < 1 || numComponents > minSize)
+            throw new IllegalArgumentException("Number of components must be between 1 and " + minSize);
+
+        if (numOversamples < 0 || numPowerIterations < 0)
+            throw new IllegalArgumentException("Number of oversamples and power iterations cannot be negative");
+
+        final int numSamples = Math.min(numComponents + numOversamples, minSize);
+
+        // Orthonormal basis Q of the range of X x Omega
+        DMatrixRMaj matrixOmega = workspace.omega;
+        matrixOmega.reshape(numVectors, numSamples);
+        fillGaussian(matrixOmega, 0.0, 1.0, random);
+
+        DMatrixRMaj matrixY = workspace.y;
+        matrixY.reshape(numPoints, numSamples);
+        mult(x, matrixOmega, matrixY);
+
+        DMatrixRMaj matrixQ = workspace.q;
+        workspace.orthonormalize(matrixY, matrixQ);
+
+        // Power iterations Q = orth(X x orth(X^T x Q))
+        DMatrixRMaj matrixZ = workspace.z;
+        matrixZ.reshape(numVectors, numSamples);
+        for (int i = 0; i < numPowerIterations; ++i) {
+            multTransA(x, matrixQ, matrixZ);
+            workspace.orthonormalize(matrixZ, workspace.qz);
+            mult(x, workspace.qz, matrixY);
+            workspace.orthonormalize(matrixY, matrixQ);
+        }
+
+        // Decomposition of the small matrix B = Q^T x X = Ub x S x V^T
+        DMatrixRMaj matrixB = workspace.b;
+        matrixB.reshape(numSamples, numVectors);
+        multTransA(matrixQ, x, matrixB);
 
-        DMatrixRMaj matrixE = x.copy();
-        multAddTransB(-1.0, matrixUS, matrixV, matrixE);
-        double error = normF(matrixE);
+        SingularValueDecomposition_F64<DMatrixRMaj> svd = workspace.svd(numSamples, numVectors);
 
-        System.out.println(error);
+        if (!svd.decompose(matrixB))
+            throw new IllegalStateException("Decomposition failed");
+
+        DMatrixRMaj matrixUb = svd.getU(null, false);
+        DMatrixRMaj matrixS = svd.getW(null);
+        DMatrixRMaj matrixVb = svd.getV(null, false);
+        descendingOrder(matrixUb, false, matrixS, matrixVb, false);
+
+        // U = Q x Ub
+        DMatrixRMaj matrixQU = workspace.qu;
+        matrixQU.reshape(numPoints, matrixUb.numCols);
+        mult(matrixQ, matrixUb, matrixQU);
+
+        matrixU = extract(matrixQU, 0, numPoints, 0, numComponents);
+        vectorS = extract(matrixS, 0, numComponents, 0, numComponents);
+        matrixV = extract(matrixVb, 0, numVectors, 0, numComponents);
+    }
+
+    /**
+     * Creates an instance of {@link SingularValueDecomposition} that computes only the {@code numComponents} largest
+     * singular triplets of {@code matrix} with {@link #DEFAULT_OVERSAMPLES} oversamples, {@link
+     * #DEFAULT_POWER_ITERATIONS} power iterations, and a fixed random seed, see
+     * {@link #SingularValueDecomposition(DMatrixRMaj, int, int, int, Random)}
+     *
+     * @param x             matrix of shape [N<sub>points</sub>, N<sub>vectors</sub>] to be decomposed
+     * @param numComponents number of singular triplets to compute
+     */
+    public SingularValueDecomposition(@Nonnull DMatrixRMaj x, int numComponents)
+    {
+        this(x, numComponents, DEFAULT_OVERSAMPLES, DEFAULT_POWER_ITERATIONS, new Random(0));
+    }
+
+    /**
+     * @return number of computed singular triplets, which is the maximum number of components in
+     * {@link #decompose(DMatrixRMaj, DMatrixRMaj)}
+     */
+    public int getNumComponents() {
+        return Math.min(vectorS.numRows, vectorS.numCols);
+    }
+
+    /**
+     * @param index index of the singular value, from 0 to N<sub>components</sub> &minus; 1
+     * @return singular value, where the singular values are in the descending order
+     */
+    double getSingularValue(int index) {
+        return vectorS.get(index, index);
+    }
+
+    /**
+     * @return total number of elements in the stored matrices U, S, and V
+     */
+    long getNumElements() {
+        return (long) matrixU.getNumElements() + vectorS.getNumElements() + matrixV.getNumElements();
     }
 
     /**
@@ -104,6 +267,27 @@ public class SingularValueDecomposition
             calculate(w, h, j);
     }
 
+    /**
+     * Performs non-negative singular value decomposition (NNDSVD) of matrix X into single-precision matrices W and H,
+     * see {@link #decompose(DMatrixRMaj, DMatrixRMaj)}
+     *
+     * @param w matrix of shape [N<sub>points</sub>, N<sub>components</sub>]
+     * @param h matrix of shape [N<sub>components</sub>, N<sub>vectors</sub>]
+     * @throws IllegalArgumentException if the number of columns in matrix X is not equal to the number of rows in
+     * matrix H
+     */
+    public void decompose(@Nonnull FMatrixRMaj w, @Nonnull FMatrixRMaj h)
+            throws IllegalArgumentException
+    {
+        DMatrixRMaj wDouble = new DMatrixRMaj(w.numRows, w.numCols);
+        DMatrixRMaj hDouble = new DMatrixRMaj(h.numRows, h.numCols);
+
+        decompose(wDouble, hDouble);
+
+        ConvertMatrixData.convert(wDouble, w);
+        ConvertMatrixData.convert(hDouble, h);
+    }
+
     private void calculate(@Nonnull DMatrixRMaj w, @Nonnull DMatrixRMaj h, int index)
     {
         if (index < 0 || index >= vectorS.numRows || index >= vectorS.numCols)
@@ -180,4 +364,77 @@ public class SingularValueDecomposition
         }
         return Math.sqrt(sum);
     }
+
+    private static DMatrixRMaj toDouble(@Nonnull FMatrixRMaj m) {
+        DMatrixRMaj result = new DMatrixRMaj(m.numRows, m.numCols);
+        ConvertMatrixData.convert(m, result);
+        return result;
+    }
+
+    /**
+     * Buffers of the randomized decomposition, see
+     * {@link #SingularValueDecomposition(DMatrixRMaj, int, int, int, Random, Workspace)}. The buffers are reshaped for
+     * each matrix X and reallocated only if they are too small. A workspace must not be used by several threads at the
+     * same time.
+     */
+    static class Workspace {
+
+        /* Random test matrix Omega */
+        final DMatrixRMaj omega = new DMatrixRMaj(1, 1);
+
+        /* Matrix X x Omega */
+        final DMatrixRMaj y = new DMatrixRMaj(1, 1);
+
+        /* Orthonormal basis of the range of X */
+        final DMatrixRMaj q = new DMatrixRMaj(1, 1);
+
+        /* Matrix X^T x Q */
+        final DMatrixRMaj z = new DMatrixRMaj(1, 1);
+
+        /* Orthonormal basis of the range of X^T x Q */
+        final DMatrixRMaj qz = new DMatrixRMaj(1, 1);
+
+        /* Matrix Q^T x X */
+        final DMatrixRMaj b = new DMatrixRMaj(1, 1);
+
+        /* Matrix Q x Ub */
+        final DMatrixRMaj qu = new DMatrixRMaj(1, 1);
+
+        /* Copy of the input of the QR decomposition */
+        private final DMatrixRMaj qrInput = new DMatrixRMaj(1, 1);
+
+        private QRDecomposition<DMatrixRMaj> qr = null;
+        private SingularValueDecomposition_F64<DMatrixRMaj> svd = null;
+
+        /**
+         * Computes the matrix with orthonormal columns spanning the columns of matrix {@code a}
+         *
+         * @param a      matrix of shape [N<sub>rows</sub>, N<sub>cols</sub>], where N<sub>rows</sub> &ge;
+         *               N<sub>cols</sub>
+         * @param result matrix that is reshaped to [N<sub>rows</sub>, N<sub>cols</sub>]
+         */
+        void orthonormalize(@Nonnull DMatrixRMaj a, @Nonnull DMatrixRMaj result) {
+
+            if (qr == null)
+                qr = DecompositionFactory_DDRM.qr(a.numRows, a.numCols);
+
+            DMatrixRMaj input = a;
+            if (qr.inputModified()) {
+                qrInput.set(a);
+                input = qrInput;
+            }
+
+            if (!qr.decompose(input))
+                throw new IllegalStateException("Decomposition failed");
+
+            result.reshape(a.numRows, a.numCols);
+            qr.getQ(result, true);
+        }
+
+        SingularValueDecomposition_F64<DMatrixRMaj> svd(int numRows, int numCols) {
+            if (svd == null)
+                svd = DecompositionFactory_DDRM.svd(numRows, numCols, true, true, true);
+            return svd;
+        }
+    }
 }
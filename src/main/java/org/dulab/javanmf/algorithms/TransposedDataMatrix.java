@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2018 Du-Lab Team <dulab.binf@gmail.com>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.dulab.javanmf.algorithms;
+
+import org.dulab.javanmf.data.DataMatrix;
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.dense.row.CommonOps_DDRM;
+
+import javax.annotation.Nonnull;
+
+/**
+ * View of matrix X<sup>T</sup> for given {@link DataMatrix} X. Products with X<sup>T</sup> are calculated by the
+ * products with X after transposing the small operand
+ *
+ * @author Du-Lab Team dulab.binf@gmail.com
+ */
+class TransposedDataMatrix implements DataMatrix
+{
+    private final DataMatrix matrix;
+
+    /* Buffer of each thread for the transposed operand */
+    private final ThreadLocal<DMatrixRMaj> buffer = ThreadLocal.withInitial(() -> new DMatrixRMaj(1, 1));
+
+    TransposedDataMatrix(@Nonnull DataMatrix matrix) {
+        this.matrix = matrix;
+    }
+
+    @Override
+    public int getNumRows() {
+        return matrix.getNumCols();
+    }
+
+    @Override
+    public int getNumCols() {
+        return matrix.getNumRows();
+    }
+
+    @Override
+    public void multTransA(@Nonnull DMatrixRMaj a, @Nonnull DMatrixRMaj c) {
+        // A^T (X^T) = B X^T, where B = A^T
+        DMatrixRMaj at = buffer.get();
+        at.reshape(a.numCols, a.numRows);
+        CommonOps_DDRM.transpose(a, at);
+        matrix.multTransB(at, c);
+    }
+
+    @Override
+    public void multTransB(@Nonnull DMatrixRMaj b, @Nonnull DMatrixRMaj c) {
+        // B (X^T)^T = A^T X, where A = B^T
+        DMatrixRMaj bt = buffer.get();
+        bt.reshape(b.numCols, b.numRows);
+        CommonOps_DDRM.transpose(b, bt);
+        matrix.multTransA(bt, c);
+    }
+
+    @Override
+    public double squaredNorm() {
+        return matrix.squaredNorm();
+    }
+
+    @Override
+    public DataMatrix transpose() {
+        return matrix;
+    }
+}
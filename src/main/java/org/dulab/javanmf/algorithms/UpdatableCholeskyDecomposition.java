@@ -0,0 +1,140 @@
+package org.dulab.javanmf.algorithms;
+
+import org.ejml.data.DMatrixRMaj;
+
+/**
+ * This class maintains the Cholesky decomposition L x L<sup>T</sup> of matrix (ZtZ)<sub>P</sub> while indices are added
+ * to and removed from the passive set P. Adding an index appends a row to L, and removing an index deletes a row of L
+ * and restores its triangular shape with Givens rotations. Both operations cost O(|P|<sup>2</sup>) instead of
+ * O(|P|<sup>3</sup>) for a new decomposition.
+ */
+class UpdatableCholeskyDecomposition {
+
+    /* Lower-triangular factor L, stored row by row with the row length equal to the capacity */
+    private double[] matrixL = new double[0];
+
+    /* Indices of the passive set in the order of rows of L */
+    private int[] indices = new int[0];
+
+    /* Buffer for forward and backward substitutions */
+    private double[] vectorY = new double[0];
+
+    private int capacity = 0;
+    private int size = 0;
+
+    /**
+     * Removes all indices and makes sure that the decomposition can hold up to {@code capacity} indices
+     *
+     * @param capacity maximum number of indices
+     */
+    void reset(int capacity) {
+        if (this.capacity < capacity) {
+            this.capacity = capacity;
+            matrixL = new double[capacity * capacity];
+            indices = new int[capacity];
+            vectorY = new double[capacity];
+        }
+        size = 0;
+    }
+
+    /**
+     * Adds an index to the passive set
+     *
+     * @param matrixZtZ matrix ZtZ
+     * @param index     index to be added
+     * @return false if (ZtZ)<sub>P</sub> with the new index is not positive definite. In that case, the decomposition
+     * is not modified
+     */
+    boolean add(DMatrixRMaj matrixZtZ, int index) {
+
+        // Solve L x r = (ZtZ)[P, index] and store r as the new row of L
+        final int offset = size * capacity;
+        double diagonal = matrixZtZ.unsafe_get(index, index);
+        for (int j = 0; j < size; ++j) {
+            double r = matrixZtZ.unsafe_get(indices[j], index);
+            for (int k = 0; k < j; ++k)
+                r -= matrixL[j * capacity + k] * matrixL[offset + k];
+            r /= matrixL[j * capacity + j];
+            matrixL[offset + j] = r;
+            diagonal -= r * r;
+        }
+
+        if (!(diagonal > 0.0))
+            return false;
+
+        matrixL[offset + size] = Math.sqrt(diagonal);
+        indices[size++] = index;
+        return true;
+    }
+
+    /**
+     * Removes an index from the passive set
+     *
+     * @param index index to be removed
+     */
+    void remove(int index) {
+
+        int position = 0;
+        while (position < size && indices[position] != index)
+            ++position;
+
+        if (position == size)
+            throw new IllegalArgumentException("Index " + index + " is not in the passive set");
+
+        // Delete the row of L. Rows below it have one non-zero value above the diagonal.
+        for (int i = position; i < size - 1; ++i) {
+            indices[i] = indices[i + 1];
+            System.arraycopy(matrixL, (i + 1) * capacity, matrixL, i * capacity, i + 2);
+        }
+        --size;
+
+        // Zero the values above the diagonal with Givens rotations of columns (j, j + 1)
+        for (int j = position; j < size; ++j) {
+            double a = matrixL[j * capacity + j];
+            double b = matrixL[j * capacity + j + 1];
+            double r = Math.hypot(a, b);
+            double c = a / r;
+            double s = b / r;
+
+            matrixL[j * capacity + j] = r;
+            matrixL[j * capacity + j + 1] = 0.0;
+
+            for (int i = j + 1; i < size; ++i) {
+                double x = matrixL[i * capacity + j];
+                double y = matrixL[i * capacity + j + 1];
+                matrixL[i * capacity + j] = c * x + s * y;
+                matrixL[i * capacity + j + 1] = c * y - s * x;
+            }
+        }
+    }
+
+    /**
+     * Calculates S, where SP = [(ZtZ)P]^(-1) x (ZtX)P, by forward and backward substitutions. Values of S outside of
+     * the passive set are not modified
+     *
+     * @param matrixZtX matrix ZtX
+     * @param column    column of ZtX
+     * @param vectorS   vector S
+     */
+    void solve(DMatrixRMaj matrixZtX, int column, double[] vectorS) {
+
+        // L x y = (ZtX)P
+        for (int i = 0; i < size; ++i) {
+            double y = matrixZtX.unsafe_get(indices[i], column);
+            for (int k = 0; k < i; ++k)
+                y -= matrixL[i * capacity + k] * vectorY[k];
+            vectorY[i] = y / matrixL[i * capacity + i];
+        }
+
+        // L^T x s = y
+        for (int i = size - 1; i >= 0; --i) {
+            double s = vectorY[i];
+            for (int k = i + 1; k < size; ++k)
+                s -= matrixL[k * capacity + i] * vectorY[k];
+            vectorY[i] = s / matrixL[i * capacity + i];
+        }
+
+        for (int i = 0; i < size; ++i)
+            vectorS[indices[i]] = vectorY[i];
+    }
+}
@@ -13,8 +13,15 @@
  * </ul>
  *
  * @see org.dulab.javanmf.algorithms.MatrixFactorization
+ * @see org.dulab.javanmf.algorithms.OnlineMatrixFactorization
+ * @see org.dulab.javanmf.algorithms.BatchFactorization
+ * @see org.dulab.javanmf.algorithms.RankSweep
+ * @see org.dulab.javanmf.algorithms.MultiStartFactorization
+ * @see org.dulab.javanmf.algorithms.ConsensusClustering
+ * @see org.dulab.javanmf.algorithms.ConsensusMatrix
  * @see org.dulab.javanmf.algorithms.MatrixRegression
  * @see org.dulab.javanmf.algorithms.SingularValueDecomposition
+ * @see org.dulab.javanmf.algorithms.InitializationCache
  * @author Du-Lab Team dulab.binf@gmail.com
  */
 package org.dulab.javanmf.algorithms;
\ No newline at end of file
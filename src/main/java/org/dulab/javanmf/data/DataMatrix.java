@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2018 Du-Lab Team <dulab.binf@gmail.com>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.dulab.javanmf.data;
+
+import org.ejml.data.DMatrixRMaj;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Provides access to data matrix X that is not necessarily stored on the heap, e.g. {@link org.dulab.javanmf.algorithms.MappedMatrix}. Matrix X is
+ * used only through products with small matrices W and H, so that an implementation can stream X in tiles.
+ *
+ * @author Du-Lab Team dulab.binf@gmail.com
+ */
+public interface DataMatrix
+{
+    /**
+     * @return number of rows of matrix X
+     */
+    int getNumRows();
+
+    /**
+     * @return number of columns of matrix X
+     */
+    int getNumCols();
+
+    /**
+     * Calculates product C = A<sup>T</sup>X
+     * @param a matrix of shape [N<sub>rows</sub>, N<sub>components</sub>]
+     * @param c matrix of shape [N<sub>components</sub>, N<sub>cols</sub>], the result of the product
+     */
+    void multTransA(@Nonnull DMatrixRMaj a, @Nonnull DMatrixRMaj c);
+
+    /**
+     * Calculates product C = BX<sup>T</sup>
+     * @param b matrix of shape [N<sub>components</sub>, N<sub>cols</sub>]
+     * @param c matrix of shape [N<sub>components</sub>, N<sub>rows</sub>], the result of the product
+     */
+    void multTransB(@Nonnull DMatrixRMaj b, @Nonnull DMatrixRMaj c);
+
+    /**
+     * @return squared Frobenius norm ||X||<sup>2</sup>
+     */
+    double squaredNorm();
+
+    /**
+     * Returns matrix X<sup>T</sup> as a view of matrix X. No data is copied
+     * @return transposed matrix
+     */
+    DataMatrix transpose();
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2018 Du-Lab Team <dulab.binf@gmail.com>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.dulab.javanmf.data;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.data.DMatrixSparseCSC;
+
+import java.util.Arrays;
+
+/**
+ * Products of dense matrices with sparse matrices X, which are used by the measures, the update rules, and the
+ * algorithms
+ *
+ * @author Du-Lab Team dulab.binf@gmail.com
+ */
+public class SparseMatrixUtils {
+
+    /**
+     * Calculates matrix C = A<sup>T</sup> x B, where B is a sparse matrix. Only non-zero elements of B are used, so the
+     * cost is proportional to the number of non-zero elements times the number of columns of A.
+     *
+     * @param a matrix A
+     * @param b sparse matrix B
+     * @param c matrix C
+     */
+    public static void multTransA(DMatrixRMaj a, DMatrixSparseCSC b, DMatrixRMaj c) {
+
+        c.reshape(a.numCols, b.numCols);
+        Arrays.fill(c.data, 0, c.getNumElements(), 0.0);
+
+        for (int j = 0; j < b.numCols; ++j)
+            for (int p = b.col_idx[j]; p < b.col_idx[j + 1]; ++p) {
+                double bij = b.nz_values[p];
+                int aOffset = b.nz_rows[p] * a.numCols;
+                int cIndex = j;
+                for (int i = 0; i < a.numCols; ++i, cIndex += c.numCols)
+                    c.data[cIndex] += bij * a.data[aOffset + i];
+            }
+    }
+}
@@ -0,0 +1,14 @@
+/**
+ * Provides the access to data matrix X that is shared by the measures, the update rules, and the algorithms.
+ *
+ * <ul>
+ *     <li>Data matrix X that is used only through products with small matrices W and H, so that it does not have to
+ *     be stored on the heap</li>
+ *     <li>Products of dense matrices with sparse matrices X</li>
+ * </ul>
+ *
+ * @see org.dulab.javanmf.data.DataMatrix
+ * @see org.dulab.javanmf.data.SparseMatrixUtils
+ * @author Du-Lab Team dulab.binf@gmail.com
+ */
+package org.dulab.javanmf.data;
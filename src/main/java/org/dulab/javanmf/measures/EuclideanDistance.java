@@ -1,9 +1,15 @@
 package org.dulab.javanmf.measures;
 
+import org.dulab.javanmf.data.DataMatrix;
+import org.dulab.javanmf.data.SparseMatrixUtils;
 import org.ejml.data.DMatrixRMaj;
+import org.ejml.data.DMatrixSparseCSC;
+import org.ejml.data.FMatrixRMaj;
 
 import javax.annotation.Nonnull;
 
+import static org.ejml.dense.row.CommonOps_DDRM.multInner;
+
 /**
  * Calculates the distance between matrices X and WH using the euclidean distance || X &minus; WH ||<sup>2</sup>
  * @author Du-Lab Team dulab.binf@gmail.com
@@ -15,16 +21,281 @@ public class EuclideanDistance extends Measure
 
 //        double norm = x.sub(w.mmul(h)).norm2();
 
-        // Calculate ||X - W x H||^2
+        return get(x, w, h, new double[x.numCols]);
+    }
+
+    /**
+     * Returns distance || X &minus; WH ||<sup>2</sup>, storing the residuals of one row of X in {@code residuals}
+     *
+     * @throws IllegalArgumentException if the buffer has less than N<sub>vectors</sub> elements
+     */
+    @Override
+    public double get(@Nonnull DMatrixRMaj x, @Nonnull DMatrixRMaj w, @Nonnull DMatrixRMaj h,
+                      @Nonnull double[] residuals)
+            throws IllegalArgumentException
+    {
+        final int numComponents = w.numCols;
+        final int numCols = x.numCols;
+
+        if (residuals.length < numCols)
+            throw new IllegalArgumentException("Buffer must have at least " + numCols + " elements");
+
+        // Calculate ||X - W x H||^2. The first non-zero component is subtracted while copying the row of X, and the
+        // squares are summed while subtracting the last non-zero component
+        double norm2 = 0.0;
+        for (int i = 0; i < x.numRows; ++i) {
+            final int rowIndex = i * numCols;
+            final int wIndex = i * numComponents;
+
+            int first = 0;
+            while (first < numComponents && w.data[wIndex + first] == 0.0) ++first;
+
+            int last = numComponents - 1;
+            while (last > first && w.data[wIndex + last] == 0.0) --last;
+
+            if (first == numComponents) {
+                for (int j = 0; j < numCols; ++j)
+                    norm2 += x.data[rowIndex + j] * x.data[rowIndex + j];
+                continue;
+            }
+
+            double wik = w.data[wIndex + first];
+            int index = first * numCols;
+            if (first == last) {
+                for (int j = 0; j < numCols; ++j) {
+                    double residual = x.data[rowIndex + j] - wik * h.data[index + j];
+                    norm2 += residual * residual;
+                }
+                continue;
+            }
+
+            for (int j = 0; j < numCols; ++j)
+                residuals[j] = x.data[rowIndex + j] - wik * h.data[index + j];
+
+            for (int k = first + 1; k < last; ++k) {
+                wik = w.data[wIndex + k];
+                if (wik == 0.0)
+                    continue;
+
+                index = k * numCols;
+                for (int j = 0; j < numCols; ++j)
+                    residuals[j] -= wik * h.data[index + j];
+            }
+
+            wik = w.data[wIndex + last];
+            index = last * numCols;
+            for (int j = 0; j < numCols; ++j) {
+                double residual = residuals[j] - wik * h.data[index + j];
+                norm2 += residual * residual;
+            }
+        }
+
+        return norm2;
+    }
+
+    /**
+     * Returns distance || X &minus; WH ||<sup>2</sup> for sparse matrix X. Only non-zero elements of X are used, see
+     * {@link #get(double, DMatrixRMaj, DMatrixRMaj, DMatrixRMaj)}
+     */
+    @Override
+    public double get(@Nonnull DMatrixSparseCSC x, @Nonnull DMatrixRMaj w, @Nonnull DMatrixRMaj h) {
+
+        DMatrixRMaj wtx = new DMatrixRMaj(w.numCols, x.numCols);
+        SparseMatrixUtils.multTransA(w, x, wtx);
+
+        DMatrixRMaj wtw = new DMatrixRMaj(w.numCols, w.numCols);
+        multInner(w, wtw);
+
+        return get(squaredNorm(x), wtx, wtw, h);
+    }
+
+    /**
+     * Returns distance || X &minus; WH ||<sup>2</sup> for data matrix X, e.g. a memory-mapped matrix. Matrix X is
+     * used only through product W<sup>T</sup>X, see {@link #get(double, DMatrixRMaj, DMatrixRMaj, DMatrixRMaj)}
+     */
+    @Override
+    public double get(@Nonnull DataMatrix x, @Nonnull DMatrixRMaj w, @Nonnull DMatrixRMaj h) {
+
+        DMatrixRMaj wtx = new DMatrixRMaj(w.numCols, x.getNumCols());
+        x.multTransA(w, wtx);
+
+        DMatrixRMaj wtw = new DMatrixRMaj(w.numCols, w.numCols);
+        multInner(w, wtw);
+
+        return get(x.squaredNorm(), wtx, wtw, h);
+    }
+
+    /**
+     * Returns distance || X &minus; WH ||<sup>2</sup> for single-precision matrices. The sum is accumulated in double
+     * precision
+     */
+    @Override
+    public double get(@Nonnull FMatrixRMaj x, @Nonnull FMatrixRMaj w, @Nonnull FMatrixRMaj h) {
+
+        final int numComponents = w.numCols;
+        final int numCols = x.numCols;
+
         double norm2 = 0.0;
-        for (int i = 0; i < x.numRows; ++i)
-            for (int j = 0; j < x.numCols; ++j) {
-                double residual = x.get(i, j);
-                for (int k = 0; k < w.numCols; ++k)
-                    residual -= w.unsafe_get(i, k) * h.unsafe_get(k, j);
+        float[] residuals = new float[numCols];
+        for (int i = 0; i < x.numRows; ++i) {
+            final int rowIndex = i * numCols;
+            final int wIndex = i * numComponents;
+
+            int first = 0;
+            while (first < numComponents && w.data[wIndex + first] == 0.0f) ++first;
+
+            int last = numComponents - 1;
+            while (last > first && w.data[wIndex + last] == 0.0f) --last;
+
+            if (first == numComponents) {
+                for (int j = 0; j < numCols; ++j)
+                    norm2 += x.data[rowIndex + j] * x.data[rowIndex + j];
+                continue;
+            }
+
+            float wik = w.data[wIndex + first];
+            int index = first * numCols;
+            if (first == last) {
+                for (int j = 0; j < numCols; ++j) {
+                    float residual = x.data[rowIndex + j] - wik * h.data[index + j];
+                    norm2 += residual * residual;
+                }
+                continue;
+            }
+
+            for (int j = 0; j < numCols; ++j)
+                residuals[j] = x.data[rowIndex + j] - wik * h.data[index + j];
+
+            for (int k = first + 1; k < last; ++k) {
+                wik = w.data[wIndex + k];
+                if (wik == 0.0f)
+                    continue;
+
+                index = k * numCols;
+                for (int j = 0; j < numCols; ++j)
+                    residuals[j] -= wik * h.data[index + j];
+            }
+
+            wik = w.data[wIndex + last];
+            index = last * numCols;
+            for (int j = 0; j < numCols; ++j) {
+                float residual = residuals[j] - wik * h.data[index + j];
                 norm2 += residual * residual;
             }
+        }
+
+        return norm2;
+    }
+
+    /**
+     * Returns distance || X &minus; WH ||<sup>2</sup> = ||X||<sup>2</sup> &minus; 2 tr(H<sup>T</sup>W<sup>T</sup>X) +
+     * tr(W<sup>T</sup>W HH<sup>T</sup>) without forming matrix WH. The cost is O(N<sub>components</sub><sup>2</sup>
+     * N<sub>vectors</sub>) when products W<sup>T</sup>X and W<sup>T</sup>W are already computed.
+     * <p>
+     * Because of the cancellation of large terms, the result is accurate only up to about 1e-15 ||X||<sup>2</sup>.
+     *
+     * @param normX2 squared Frobenius norm of matrix X, see {@link #squaredNorm(DMatrixRMaj)}
+     * @param wtx    matrix W<sup>T</sup>X of shape [N<sub>components</sub>, N<sub>vectors</sub>]
+     * @param wtw    matrix W<sup>T</sup>W of shape [N<sub>components</sub>, N<sub>components</sub>]
+     * @param h      matrix of shape [N<sub>components</sub>, N<sub>vectors</sub>]
+     * @return distance value
+     */
+    public static double get(double normX2, @Nonnull DMatrixRMaj wtx, @Nonnull DMatrixRMaj wtw,
+                             @Nonnull DMatrixRMaj h) {
+
+        final int numComponents = h.numRows;
+        final int numCols = h.numCols;
+
+        // tr(Ht x WtX)
+        double trace1 = 0.0;
+        for (int i = 0; i < h.getNumElements(); ++i)
+            trace1 += wtx.data[i] * h.data[i];
+
+        // tr(WtW x HHt), using the symmetry of both matrices
+        double trace2 = 0.0;
+        for (int a = 0; a < numComponents; ++a)
+            for (int b = a; b < numComponents; ++b) {
+                double hht = 0.0;
+                int indexA = a * numCols;
+                int indexB = b * numCols;
+                for (int j = 0; j < numCols; ++j)
+                    hht += h.data[indexA++] * h.data[indexB++];
+
+                trace2 += (a == b ? 1.0 : 2.0) * wtw.data[a * numComponents + b] * hht;
+            }
 
+        return Math.max(normX2 - 2.0 * trace1 + trace2, 0.0);
+    }
+
+    /**
+     * Returns the squared Frobenius norm ||X||<sup>2</sup>
+     * @param x matrix X
+     * @return squared norm
+     */
+    public static double squaredNorm(@Nonnull DMatrixRMaj x) {
+        double norm2 = 0.0;
+        for (int i = 0; i < x.getNumElements(); ++i)
+            norm2 += x.data[i] * x.data[i];
+        return norm2;
+    }
+
+    /**
+     * Returns the squared Frobenius norm ||X||<sup>2</sup> of sparse matrix X
+     * @param x sparse matrix X
+     * @return squared norm
+     */
+    public static double squaredNorm(@Nonnull DMatrixSparseCSC x) {
+        double norm2 = 0.0;
+        for (int i = 0; i < x.nz_length; ++i)
+            norm2 += x.nz_values[i] * x.nz_values[i];
+        return norm2;
+    }
+
+    /**
+     * Returns distance || X &minus; WH ||<sup>2</sup> using products W<sup>T</sup>X and W<sup>T</sup>W in single
+     * precision, see {@link #get(double, DMatrixRMaj, DMatrixRMaj, DMatrixRMaj)}. The traces are accumulated in double
+     * precision
+     *
+     * @param normX2 squared Frobenius norm of matrix X, see {@link #squaredNorm(FMatrixRMaj)}
+     * @param wtx    matrix W<sup>T</sup>X of shape [N<sub>components</sub>, N<sub>vectors</sub>]
+     * @param wtw    matrix W<sup>T</sup>W of shape [N<sub>components</sub>, N<sub>components</sub>]
+     * @param h      matrix of shape [N<sub>components</sub>, N<sub>vectors</sub>]
+     * @return distance value
+     */
+    public static double get(double normX2, @Nonnull FMatrixRMaj wtx, @Nonnull FMatrixRMaj wtw,
+                             @Nonnull FMatrixRMaj h) {
+
+        final int numComponents = h.numRows;
+        final int numCols = h.numCols;
+
+        double trace1 = 0.0;
+        for (int i = 0; i < h.getNumElements(); ++i)
+            trace1 += (double) wtx.data[i] * h.data[i];
+
+        double trace2 = 0.0;
+        for (int a = 0; a < numComponents; ++a)
+            for (int b = a; b < numComponents; ++b) {
+                double hht = 0.0;
+                int indexA = a * numCols;
+                int indexB = b * numCols;
+                for (int j = 0; j < numCols; ++j)
+                    hht += (double) h.data[indexA++] * h.data[indexB++];
+
+                trace2 += (a == b ? 1.0 : 2.0) * wtw.data[a * numComponents + b] * hht;
+            }
+
+        return Math.max(normX2 - 2.0 * trace1 + trace2, 0.0);
+    }
+
+    /**
+     * Returns the squared Frobenius norm ||X||<sup>2</sup> of single-precision matrix X
+     * @param x matrix X
+     * @return squared norm
+     */
+    public static double squaredNorm(@Nonnull FMatrixRMaj x) {
+        double norm2 = 0.0;
+        for (int i = 0; i < x.getNumElements(); ++i)
+            norm2 += (double) x.data[i] * x.data[i];
         return norm2;
     }
 }
@@ -1,6 +1,11 @@
 package org.dulab.javanmf.measures;
 
+import org.dulab.javanmf.data.DataMatrix;
 import org.ejml.data.DMatrixRMaj;
+import org.ejml.data.DMatrixSparseCSC;
+import org.ejml.data.FMatrixRMaj;
+import org.ejml.ops.ConvertMatrixData;
+import org.ejml.ops.ConvertDMatrixStruct;
 
 import javax.annotation.Nonnull;
 
@@ -18,4 +23,61 @@ public abstract class Measure
      * @return distance value
      */
     public abstract double get(@Nonnull DMatrixRMaj x, @Nonnull DMatrixRMaj w, @Nonnull DMatrixRMaj h);
+
+    /**
+     * Returns distance between matrices X and WH using a buffer for intermediate values, so that repeated calls do
+     * not allocate memory. By default, the buffer is not used
+     * @param x      matrix of shape [N<sub>points</sub>, N<sub>vectors</sub>]
+     * @param w      matrix of shape [N<sub>points</sub>, N<sub>components</sub>]
+     * @param h      matrix of shape [N<sub>components</sub>, N<sub>vectors</sub>]
+     * @param buffer array of at least N<sub>vectors</sub> elements
+     * @return distance value
+     */
+    public double get(@Nonnull DMatrixRMaj x, @Nonnull DMatrixRMaj w, @Nonnull DMatrixRMaj h,
+                      @Nonnull double[] buffer) {
+        return get(x, w, h);
+    }
+
+    /**
+     * Returns distance between sparse matrix X and WH. By default, matrix X is converted to a dense matrix
+     * @param x sparse matrix of shape [N<sub>points</sub>, N<sub>vectors</sub>]
+     * @param w matrix of shape [N<sub>points</sub>, N<sub>components</sub>]
+     * @param h matrix of shape [N<sub>components</sub>, N<sub>vectors</sub>]
+     * @return distance value
+     */
+    public double get(@Nonnull DMatrixSparseCSC x, @Nonnull DMatrixRMaj w, @Nonnull DMatrixRMaj h) {
+        return get(ConvertDMatrixStruct.convert(x, new DMatrixRMaj(x.numRows, x.numCols)), w, h);
+    }
+
+    /**
+     * Returns distance between single-precision matrices X and WH. By default, the matrices are converted to double
+     * precision
+     * @param x matrix of shape [N<sub>points</sub>, N<sub>vectors</sub>]
+     * @param w matrix of shape [N<sub>points</sub>, N<sub>components</sub>]
+     * @param h matrix of shape [N<sub>components</sub>, N<sub>vectors</sub>]
+     * @return distance value
+     */
+    public double get(@Nonnull FMatrixRMaj x, @Nonnull FMatrixRMaj w, @Nonnull FMatrixRMaj h) {
+        return get(toDouble(x), toDouble(w), toDouble(h));
+    }
+
+    /**
+     * Returns distance between data matrix X and WH. By default, data matrices are not supported
+     * @param x data matrix of shape [N<sub>points</sub>, N<sub>vectors</sub>]
+     * @param w matrix of shape [N<sub>points</sub>, N<sub>components</sub>]
+     * @param h matrix of shape [N<sub>components</sub>, N<sub>vectors</sub>]
+     * @return distance value
+     * @throws UnsupportedOperationException If the measure cannot be calculated from products of X
+     */
+    public double get(@Nonnull DataMatrix x, @Nonnull DMatrixRMaj w, @Nonnull DMatrixRMaj h)
+            throws UnsupportedOperationException
+    {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support data matrices");
+    }
+
+    private static DMatrixRMaj toDouble(FMatrixRMaj m) {
+        DMatrixRMaj result = new DMatrixRMaj(m.numRows, m.numCols);
+        ConvertMatrixData.convert(m, result);
+        return result;
+    }
 }
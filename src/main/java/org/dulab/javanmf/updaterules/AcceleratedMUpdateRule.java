@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2018 Du-Lab Team <dulab.binf@gmail.com>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.dulab.javanmf.updaterules;
+
+import org.ejml.data.DMatrixRMaj;
+
+import javax.annotation.Nonnull;
+
+import static org.ejml.dense.row.CommonOps_DDRM.*;
+
+/**
+ * Performs accelerated multiplicative update for the euclidean distance with regularization. Products
+ * W<sup>T</sup>X and W<sup>T</sup>W are computed once, and then the multiplicative update of H is repeated several
+ * times, because each repetition is much cheaper than computing W<sup>T</sup>X.
+ * <p>
+ * The number of repetitions is at most 1 + &alpha;&rho;, where &rho; is the ratio between the costs of the first and
+ * the following repetitions. The repetitions stop earlier if the change of H becomes smaller than &delta; times the
+ * change of H at the first repetition.
+ *
+ * See N. Gillis and F. Glineur "ACCELERATED MULTIPLICATIVE UPDATES AND HIERARCHICAL ALS ALGORITHMS FOR NONNEGATIVE
+ * MATRIX FACTORIZATION"
+ *
+ * @author Du-Lab Team dulab.binf@gmail.com
+ */
+public class AcceleratedMUpdateRule extends EuclideanUpdateRule
+{
+    private static final double DEFAULT_ALPHA = 2.0;
+    private static final double DEFAULT_DELTA = 0.1;
+
+    /* Parameter controlling the maximum number of repetitions */
+    private final double alpha;
+
+    /* Relative change of H for stopping the repetitions */
+    private final double delta;
+
+    /* Buffer of each thread for the denominator */
+    private final ThreadLocal<DMatrixRMaj> wtwhBuffer = ThreadLocal.withInitial(() -> new DMatrixRMaj(1, 1));
+
+    /**
+     * Creates an instance of {@link AcceleratedMUpdateRule} with given regularization coefficients and default
+     * parameters &alpha; = 2 and &delta; = 0.1
+     * @param lambda <i>l</i><sub>1</sub>-regularization coefficient
+     * @param mu <i>l</i><sub>2</sub>-regularization coefficient
+     */
+    public AcceleratedMUpdateRule(double lambda, double mu) {
+        this(lambda, mu, DEFAULT_ALPHA, DEFAULT_DELTA);
+    }
+
+    /**
+     * Creates an instance of {@link AcceleratedMUpdateRule}
+     * @param lambda <i>l</i><sub>1</sub>-regularization coefficient
+     * @param mu <i>l</i><sub>2</sub>-regularization coefficient
+     * @param alpha parameter controlling the maximum number of repetitions
+     * @param delta relative change of H for stopping the repetitions
+     * @throws IllegalArgumentException If at least one of the parameters is negative
+     */
+    public AcceleratedMUpdateRule(double lambda, double mu, double alpha, double delta)
+            throws IllegalArgumentException
+    {
+        super(lambda, mu);
+
+        if (alpha < 0.0)
+            throw new IllegalArgumentException("Negative parameter alpha " + alpha);
+
+        if (delta < 0.0)
+            throw new IllegalArgumentException("Negative parameter delta " + delta);
+
+        this.alpha = alpha;
+        this.delta = delta;
+    }
+
+    @Override
+    protected double update(@Nonnull DMatrixRMaj wtx, @Nonnull DMatrixRMaj wtw, @Nonnull DMatrixRMaj h,
+                            double scale, double productCost)
+    {
+        final int numComponents = h.numRows;
+        final int numVectors = h.numCols;
+
+        DMatrixRMaj wtwh = wtwhBuffer.get();
+        wtwh.reshape(h.numRows, h.numCols);
+
+        // Ratio between costs of computing (wtx, wtw) and one repetition
+        double rho = 1.0 + productCost / ((double) numVectors * numComponents * (numComponents + 1.0));
+        int maxRepetitions = (int) Math.floor(1.0 + alpha * rho);
+
+        final double l1 = lambda * scale;
+        final double l2 = mu * scale;
+
+        double increment = 0.0;
+        double firstChange = 0.0;
+        for (int l = 0; l < maxRepetitions; ++l) {
+
+            mult(wtw, h, wtwh);  // wtwh = wt * w * h
+
+            // h = h (*) wtx (/) (wt * w * h + lambda * a / b + mu * a / b * h + 1e-12) in one pass
+            double change = 0.0;
+            for (int i = 0; i < h.getNumElements(); ++i) {
+                double denominator = wtwh.data[i] + l1 + l2 * h.data[i] + EPS;
+                double value = h.data[i] * (wtx.data[i] / denominator);
+                double difference = value - h.data[i];
+                change += difference * difference;
+                increment += Math.abs(difference);
+                h.data[i] = value;
+            }
+
+            if (l == 0)
+                firstChange = change;
+            else if (change <= delta * delta * firstChange)
+                break;
+        }
+
+        return increment;
+    }
+}
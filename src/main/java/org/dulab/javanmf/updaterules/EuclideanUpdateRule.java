@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2018 Du-Lab Team <dulab.binf@gmail.com>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.dulab.javanmf.updaterules;
+
+import org.dulab.javanmf.data.DataMatrix;
+import org.dulab.javanmf.data.SparseMatrixUtils;
+import org.dulab.javanmf.measures.EuclideanDistance;
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.data.DMatrixSparseCSC;
+import org.ejml.data.FMatrixRMaj;
+import org.ejml.dense.row.CommonOps_FDRM;
+import org.ejml.ops.ConvertMatrixData;
+
+import javax.annotation.Nonnull;
+
+import static org.ejml.dense.row.CommonOps_DDRM.*;
+
+/**
+ * Provides a template for update rules for the euclidean distance with regularization. Matrix X is used only through
+ * products W<sup>T</sup>X and W<sup>T</sup>W, which are computed once per update, both for dense and sparse matrices X.
+ * The products are reused for calculating the distance after the update.
+ * <p>
+ * The products and all other scratch matrices are confined to the calling thread, so one instance of the update rule
+ * can be used by several threads at the same time. The distance is calculated from the products of the last update
+ * made by the same thread. The scratch matrices of a thread are as large as its largest problem and stay allocated
+ * until the thread terminates or the update rule is discarded.
+ *
+ * @author Du-Lab Team dulab.binf@gmail.com
+ */
+public abstract class EuclideanUpdateRule extends RegularizationUpdateRule
+{
+    /* Products W^T X and W^T W computed by the last update of each thread */
+    private final ThreadLocal<Products> products = ThreadLocal.withInitial(Products::new);
+
+    /**
+     * Creates an instance of {@link EuclideanUpdateRule} with given regularization coefficients
+     * @param lambda <i>l</i><sub>1</sub>-regularization coefficient
+     * @param mu <i>l</i><sub>2</sub>-regularization coefficient
+     */
+    public EuclideanUpdateRule(double lambda, double mu) {
+        super(new EuclideanDistance(), lambda, mu);
+    }
+
+    @Override
+    public double update(@Nonnull DMatrixRMaj x, @Nonnull DMatrixRMaj w, @Nonnull DMatrixRMaj h)
+    {
+        Products p = products.get().reshape(w.numCols, h.numCols);
+        multTransA(w, x, p.wtx);  // wtx = wt * x
+        multInner(w, p.wtw);  // wtw = wt * w
+
+        return update(p.wtx, p.wtw, h, (double) x.getNumElements() / h.getNumElements(),
+                ((double) x.getNumElements() + w.getNumElements()) * w.numCols);
+    }
+
+    @Override
+    public double update(@Nonnull DMatrixSparseCSC x, @Nonnull DMatrixRMaj w, @Nonnull DMatrixRMaj h)
+    {
+        Products p = products.get().reshape(w.numCols, h.numCols);
+        SparseMatrixUtils.multTransA(w, x, p.wtx);  // wtx = wt * x over non-zero elements of x
+        multInner(w, p.wtw);  // wtw = wt * w
+
+        return update(p.wtx, p.wtw, h, (double) x.numRows * x.numCols / h.getNumElements(),
+                ((double) x.nz_length + w.getNumElements()) * w.numCols);
+    }
+
+    @Override
+    public double update(@Nonnull DataMatrix x, @Nonnull DMatrixRMaj w, @Nonnull DMatrixRMaj h)
+    {
+        Products p = products.get().reshape(w.numCols, h.numCols);
+        x.multTransA(w, p.wtx);  // wtx = wt * x streamed over tiles of x
+        multInner(w, p.wtw);  // wtw = wt * w
+
+        return update(p.wtx, p.wtw, h, (double) x.getNumRows() * x.getNumCols() / h.getNumElements(),
+                ((double) x.getNumRows() * x.getNumCols() + w.getNumElements()) * w.numCols);
+    }
+
+    /**
+     * Updates single-precision matrix H. Products W<sup>T</sup>X and W<sup>T</sup>W are computed in single precision,
+     * and only these products and matrix H are converted to double precision, so that X and W are never copied
+     */
+    @Override
+    public double update(@Nonnull FMatrixRMaj x, @Nonnull FMatrixRMaj w, @Nonnull FMatrixRMaj h)
+    {
+        Products p = products.get().reshape(w.numCols, h.numCols);
+        p.reshapeFloat(w.numCols, h.numCols);
+        CommonOps_FDRM.multTransA(w, x, p.wtxFloat);  // wtx = wt * x
+        CommonOps_FDRM.multInner(w, p.wtwFloat);  // wtw = wt * w
+
+        ConvertMatrixData.convert(p.wtxFloat, p.wtx);
+        ConvertMatrixData.convert(p.wtwFloat, p.wtw);
+        ConvertMatrixData.convert(h, p.h);
+
+        double increment = update(p.wtx, p.wtw, p.h, (double) x.getNumElements() / h.getNumElements(),
+                ((double) x.getNumElements() + w.getNumElements()) * w.numCols);
+
+        ConvertMatrixData.convert(p.h, h);
+        return increment;
+    }
+
+    /**
+     * @return true, because the products are calculated from transposed operands directly
+     */
+    @Override
+    public boolean supportsTransposedOperands() {
+        return true;
+    }
+
+    /**
+     * Updates matrix H using products W<sup>T</sup>X and W<sup>T</sup>W calculated from matrix W<sup>T</sup> without
+     * transposing it
+     */
+    @Override
+    public double updateTransA(@Nonnull DMatrixRMaj x, @Nonnull DMatrixRMaj wt, @Nonnull DMatrixRMaj h)
+    {
+        Products p = products.get().reshape(wt.numRows, h.numCols);
+        mult(wt, x, p.wtx);  // wtx = wt * x
+        multOuter(wt, p.wtw);  // wtw = wt * w
+
+        return update(p.wtx, p.wtw, h, (double) x.getNumElements() / h.getNumElements(),
+                ((double) x.getNumElements() + wt.getNumElements()) * wt.numRows);
+    }
+
+    /**
+     * Updates matrix W<sup>T</sup> using products HX<sup>T</sup> and HH<sup>T</sup>, so that neither X nor H is
+     * transposed
+     */
+    @Override
+    public double updateTransB(@Nonnull DMatrixRMaj x, @Nonnull DMatrixRMaj h, @Nonnull DMatrixRMaj wt)
+    {
+        Products p = products.get().reshape(h.numRows, wt.numCols);
+        multTransB(h, x, p.wtx);  // wtx = h * xt
+        multOuter(h, p.wtw);  // wtw = h * ht
+
+        return update(p.wtx, p.wtw, wt, (double) x.getNumElements() / wt.getNumElements(),
+                ((double) x.getNumElements() + h.getNumElements()) * h.numRows);
+    }
+
+    /**
+     * Updates matrix H using products W<sup>T</sup>X and W<sup>T</sup>W
+     * @param wtx matrix W<sup>T</sup>X of shape [N<sub>components</sub>, N<sub>vectors</sub>]
+     * @param wtw matrix W<sup>T</sup>W of shape [N<sub>components</sub>, N<sub>components</sub>]
+     * @param h matrix of shape [N<sub>components</sub>, N<sub>vectors</sub>]
+     * @param scale ratio between the numbers of elements of X and H, used for scaling the regularization coefficients
+     * @param productCost number of multiplications used to compute W<sup>T</sup>X and W<sup>T</sup>W
+     * @return increment of |H|
+     */
+    protected abstract double update(@Nonnull DMatrixRMaj wtx, @Nonnull DMatrixRMaj wtw, @Nonnull DMatrixRMaj h,
+                                     double scale, double productCost);
+
+    /**
+     * Returns distance between X and WH using products W<sup>T</sup>X and W<sup>T</sup>W computed during the last
+     * update with the same matrices X and W
+     */
+    @Override
+    public double getDistance(@Nonnull DMatrixRMaj x, @Nonnull DMatrixRMaj w, @Nonnull DMatrixRMaj h, double normX2)
+    {
+        Products p = products.get();
+        if (!p.matches(h))
+            return super.getDistance(x, w, h, normX2);
+
+        return EuclideanDistance.get(normX2, p.wtx, p.wtw, h);
+    }
+
+    /**
+     * Returns distance between sparse matrix X and WH using products W<sup>T</sup>X and W<sup>T</sup>W computed
+     * during the last update with the same matrices X and W
+     */
+    @Override
+    public double getDistance(@Nonnull DMatrixSparseCSC x, @Nonnull DMatrixRMaj w, @Nonnull DMatrixRMaj h,
+                              double normX2)
+    {
+        Products p = products.get();
+        if (!p.matches(h))
+            return super.getDistance(x, w, h, normX2);
+
+        return EuclideanDistance.get(normX2, p.wtx, p.wtw, h);
+    }
+
+    /**
+     * Returns distance between single-precision matrices X and WH using products W<sup>T</sup>X and W<sup>T</sup>W
+     * computed during the last update with the same matrices X and W
+     */
+    @Override
+    public double getDistance(@Nonnull FMatrixRMaj x, @Nonnull FMatrixRMaj w, @Nonnull FMatrixRMaj h, double normX2)
+    {
+        Products p = products.get();
+        if (!p.matches(h))
+            return super.getDistance(x, w, h, normX2);
+
+        ConvertMatrixData.convert(h, p.h);
+        return EuclideanDistance.get(normX2, p.wtx, p.wtw, p.h);
+    }
+
+    /**
+     * Returns distance between data matrix X and WH using products W<sup>T</sup>X and W<sup>T</sup>W computed during
+     * the last update with the same matrices X and W
+     */
+    @Override
+    public double getDistance(@Nonnull DataMatrix x, @Nonnull DMatrixRMaj w, @Nonnull DMatrixRMaj h, double normX2)
+    {
+        Products p = products.get();
+        if (!p.matches(h))
+            return super.getDistance(x, w, h, normX2);
+
+        return EuclideanDistance.get(normX2, p.wtx, p.wtw, h);
+    }
+
+    /**
+     * Returns distance between X and WH using products HX<sup>T</sup> and HH<sup>T</sup> computed during the last
+     * call of {@link #updateTransB(DMatrixRMaj, DMatrixRMaj, DMatrixRMaj)} with the same matrices X and H
+     */
+    @Override
+    public double getDistanceTransB(@Nonnull DMatrixRMaj x, @Nonnull DMatrixRMaj h, @Nonnull DMatrixRMaj wt,
+                                    double normX2)
+    {
+        Products p = products.get();
+        if (!p.matches(wt))
+            return super.getDistanceTransB(x, h, wt, normX2);
+
+        return EuclideanDistance.get(normX2, p.wtx, p.wtw, wt);
+    }
+
+    /**
+     * Products W<sup>T</sup>X and W<sup>T</sup>W of one thread. Arrays are reallocated only if they are too small
+     */
+    private static class Products {
+
+        final DMatrixRMaj wtx = new DMatrixRMaj(1, 1);
+        final DMatrixRMaj wtw = new DMatrixRMaj(1, 1);
+
+        /* Single-precision products and double-precision copy of H, used by single-precision updates */
+        final FMatrixRMaj wtxFloat = new FMatrixRMaj(1, 1);
+        final FMatrixRMaj wtwFloat = new FMatrixRMaj(1, 1);
+        final DMatrixRMaj h = new DMatrixRMaj(1, 1);
+
+        private boolean computed = false;
+
+        Products reshape(int numComponents, int numCols) {
+            wtx.reshape(numComponents, numCols);
+            wtw.reshape(numComponents, numComponents);
+            computed = true;
+            return this;
+        }
+
+        void reshapeFloat(int numComponents, int numCols) {
+            wtxFloat.reshape(numComponents, numCols);
+            wtwFloat.reshape(numComponents, numComponents);
+            h.reshape(numComponents, numCols);
+        }
+
+        boolean matches(DMatrixRMaj h) {
+            return computed && wtx.numRows == h.numRows && wtx.numCols == h.numCols;
+        }
+
+        boolean matches(FMatrixRMaj h) {
+            return computed && wtx.numRows == h.numRows && wtx.numCols == h.numCols;
+        }
+    }
+}
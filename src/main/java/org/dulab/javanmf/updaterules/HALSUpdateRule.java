@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2018 Du-Lab Team <dulab.binf@gmail.com>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.dulab.javanmf.updaterules;
+
+import org.ejml.data.DMatrixRMaj;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Performs hierarchical alternating least squares (HALS) update for the euclidean distance with regularization. Rows
+ * of matrix H are updated one by one in the closed form
+ * <p>
+ * &emsp; H<sub>k</sub> = max(0, H<sub>k</sub> + ((W<sup>T</sup>X)<sub>k</sub> &minus; (W<sup>T</sup>WH)<sub>k</sub>
+ * &minus; &lambda; &minus; &mu;H<sub>k</sub>) / ((W<sup>T</sup>W)<sub>kk</sub> + &mu;))
+ * <p>
+ * Products W<sup>T</sup>X and W<sup>T</sup>W are computed once per update.
+ *
+ * See A. Cichocki and A.-H. Phan "FAST LOCAL ALGORITHMS FOR LARGE SCALE NONNEGATIVE MATRIX AND TENSOR FACTORIZATIONS"
+ *
+ * @author Du-Lab Team dulab.binf@gmail.com
+ */
+public class HALSUpdateRule extends EuclideanUpdateRule
+{
+    /* Buffer of each thread for one row of H */
+    private final ThreadLocal<DMatrixRMaj> rowBuffer = ThreadLocal.withInitial(() -> new DMatrixRMaj(1, 1));
+
+    /**
+     * Creates an instance of {@link HALSUpdateRule} with given regularization coefficients
+     * @param lambda <i>l</i><sub>1</sub>-regularization coefficient
+     * @param mu <i>l</i><sub>2</sub>-regularization coefficient
+     */
+    public HALSUpdateRule(double lambda, double mu) {
+        super(lambda, mu);
+    }
+
+    @Override
+    protected double update(@Nonnull DMatrixRMaj wtx, @Nonnull DMatrixRMaj wtw, @Nonnull DMatrixRMaj h,
+                            double scale, double productCost)
+    {
+        final int numComponents = h.numRows;
+        final int numCols = h.numCols;
+
+        // Scale regularization coefficients in the same way as MUpdateRule
+        final double l1 = lambda * scale;
+        final double l2 = mu * scale;
+
+        DMatrixRMaj buffer = rowBuffer.get();
+        buffer.reshape(1, numCols);
+        double[] row = buffer.data;
+
+        double increment = 0.0;
+        for (int k = 0; k < numComponents; ++k) {
+
+            double denominator = wtw.unsafe_get(k, k) + l2;
+            if (denominator < EPS)
+                continue;
+
+            // row = (wtx)k - lambda - (wtw * h)k
+            System.arraycopy(wtx.data, k * numCols, row, 0, numCols);
+            for (int j = 0; j < numCols; ++j)
+                row[j] -= l1;
+
+            for (int l = 0; l < numComponents; ++l) {
+                double wtwkl = wtw.unsafe_get(k, l);
+                if (wtwkl == 0.0)
+                    continue;
+
+                int index = l * numCols;
+                for (int j = 0; j < numCols; ++j)
+                    row[j] -= wtwkl * h.data[index++];
+            }
+
+            int index = k * numCols;
+            for (int j = 0; j < numCols; ++j, ++index) {
+                double hkj = h.data[index];
+                double value = Math.max(0.0, hkj + (row[j] - l2 * hkj) / denominator);
+                increment += Math.abs(value - hkj);
+                h.data[index] = value;
+            }
+        }
+
+        return increment;
+    }
+}
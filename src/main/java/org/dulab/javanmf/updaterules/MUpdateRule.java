@@ -20,6 +20,8 @@ package org.dulab.javanmf.updaterules;
 
 import org.dulab.javanmf.measures.EuclideanDistance;
 import org.ejml.data.DMatrixRMaj;
+import org.ejml.data.FMatrixRMaj;
+import org.ejml.dense.row.CommonOps_FDRM;
 
 import javax.annotation.Nonnull;
 
@@ -29,11 +31,13 @@ import static org.ejml.dense.row.CommonOps_DDRM.*;
  * Performs multiplicative update for the euclidean distance with regularization
  * @author Du-Lab Team dulab.binf@gmail.com
  */
-public class MUpdateRule extends RegularizationUpdateRule
+public class MUpdateRule extends EuclideanUpdateRule
 {
-    private DMatrixRMaj wtx = null;
-    private DMatrixRMaj wtw = null;
-    private DMatrixRMaj wtwh = null;
+    /* Buffer of each thread for the denominator */
+    private final ThreadLocal<DMatrixRMaj> wtwhBuffer = ThreadLocal.withInitial(() -> new DMatrixRMaj(1, 1));
+
+    /* Buffers of each thread for single-precision updates */
+    private final ThreadLocal<FloatBuffers> floatBuffers = ThreadLocal.withInitial(FloatBuffers::new);
 
     /**
      * Creates an instance of {@link MUpdateRule} with given regularization coefficients
@@ -41,41 +45,126 @@ public class MUpdateRule extends RegularizationUpdateRule
      * @param mu <i>l</i><sub>2</sub>-regularization coefficient
      */
     public MUpdateRule(double lambda, double mu) {
-        super(new EuclideanDistance(), lambda, mu);
+        super(lambda, mu);
     }
 
     @Override
-    public double update(@Nonnull DMatrixRMaj x, @Nonnull DMatrixRMaj w, @Nonnull DMatrixRMaj h)
+    protected double update(@Nonnull DMatrixRMaj wtx, @Nonnull DMatrixRMaj wtw, @Nonnull DMatrixRMaj h,
+                            double scale, double productCost)
     {
-        double a = x.getNumElements();
-        double b = h.getNumElements();
-
 //        DoubleMatrix wt = w.transpose();
 //        h.muli(wt.mmul(x).div(wt.mmul(w).mmul(h).add(a / b * lambda).add(h.mul(a / b * mu)).max(1e-12)));
 
-        if (wtx == null || wtx.numRows != w.numCols || wtx.numCols != x.numCols)
-            wtx = new DMatrixRMaj(w.numCols, x.numCols);
+        DMatrixRMaj wtwh = wtwhBuffer.get();
+        wtwh.reshape(h.numRows, h.numCols);
+
+        mult(wtw, h, wtwh);  // wtwh = wt * w * h
+
+        // h = h (*) wtx (/) (wt * w * h + lambda * a / b + mu * a / b * h + 1e-12)
+        multiplicativeUpdate(h, wtx, wtwh, lambda * scale, mu * scale);
 
-        if (wtw == null || wtw.numRows != w.numCols || wtw.numCols != w.numCols)
-            wtw = new DMatrixRMaj(w.numCols, w.numCols);
+        return 0.0;
+    }
+
+    /**
+     * Performs multiplicative update in single precision
+     */
+    @Override
+    public double update(@Nonnull FMatrixRMaj x, @Nonnull FMatrixRMaj w, @Nonnull FMatrixRMaj h)
+    {
+        float scale = (float) x.getNumElements() / h.getNumElements();
 
-        if (wtwh == null || wtwh.numRows != w.numCols || wtwh.numCols != h.numCols)
-            wtwh = new DMatrixRMaj(w.numCols, h.numCols);
+        FloatBuffers buffers = floatBuffers.get().reshape(w.numCols, x.numCols);
+        FMatrixRMaj wtxFloat = buffers.wtx;
+        FMatrixRMaj wtwFloat = buffers.wtw;
+        FMatrixRMaj wtwhFloat = buffers.wtwh;
 
         // Nominator
-        multTransA(w, x, wtx);  // wtx = wt * x
+        CommonOps_FDRM.multTransA(w, x, wtxFloat);  // wtx = wt * x
 
         // Denominator
-        multTransA(w, w, wtw);  // wtw = wt * w
-        mult(wtw, h, wtwh);  // wtwh = wt * w * h
-        add(wtwh, lambda * a / b);  // wtwh = wt * w * h + lambda * a / b
-        addEquals(wtwh, mu * a / b, h);  // wtwh = wt * w * h + lambda * a / b + mu * a / b * h
-        add(wtwh, 1e-12);  // wtwh = wt * w * h + lambda * a / b + mu * a / b * h + 1e-12
+        CommonOps_FDRM.multInner(w, wtwFloat);  // wtw = wt * w
+        CommonOps_FDRM.mult(wtwFloat, h, wtwhFloat);  // wtwh = wt * w * h
 
-        // Fraction
-        elementDiv(wtx, wtwh);  // wtx = wtx (/) wtwh
-        elementMult(h, wtx);  // h = h (*) wtx
+        // h = h (*) wtx (/) (wt * w * h + lambda * a / b + mu * a / b * h + 1e-12)
+        multiplicativeUpdate(h, wtxFloat, wtwhFloat, (float) lambda * scale, (float) mu * scale);
 
         return 0.0;
     }
+
+    /**
+     * Returns distance between single-precision matrices X and WH using products W<sup>T</sup>X and W<sup>T</sup>W
+     * computed during the last update with the same matrices X and W
+     */
+    @Override
+    public double getDistance(@Nonnull FMatrixRMaj x, @Nonnull FMatrixRMaj w, @Nonnull FMatrixRMaj h, double normX2)
+    {
+        FloatBuffers buffers = floatBuffers.get();
+        if (!buffers.computed || buffers.wtx.numRows != h.numRows || buffers.wtx.numCols != h.numCols)
+            return super.getDistance(x, w, h, normX2);
+
+        return EuclideanDistance.get(normX2, buffers.wtx, buffers.wtw, h);
+    }
+
+    /**
+     * Performs the multiplicative update H = H (*) W<sup>T</sup>X (/) (W<sup>T</sup>WH + l<sub>1</sub> +
+     * l<sub>2</sub>H + 1e-12) in one pass over the elements, without storing the denominator and the fraction.
+     *
+     * @param h    matrix H, which is updated in place
+     * @param wtx  matrix W<sup>T</sup>X of the same shape as H
+     * @param wtwh matrix W<sup>T</sup>WH of the same shape as H
+     * @param l1   coefficient l<sub>1</sub> added to the denominator
+     * @param l2   coefficient l<sub>2</sub> of matrix H added to the denominator
+     */
+    static void multiplicativeUpdate(DMatrixRMaj h, DMatrixRMaj wtx, DMatrixRMaj wtwh, double l1, double l2) {
+
+        final double[] hData = h.data;
+        final double[] wtxData = wtx.data;
+        final double[] wtwhData = wtwh.data;
+
+        final int length = h.getNumElements();
+        for (int i = 0; i < length; ++i) {
+            double hi = hData[i];
+            double denominator = wtwhData[i] + l1 + l2 * hi + 1e-12;
+            hData[i] = hi * (wtxData[i] / denominator);
+        }
+    }
+
+    /**
+     * Performs the multiplicative update of single-precision matrix H, see
+     * {@link #multiplicativeUpdate(DMatrixRMaj, DMatrixRMaj, DMatrixRMaj, double, double)}
+     */
+    static void multiplicativeUpdate(FMatrixRMaj h, FMatrixRMaj wtx, FMatrixRMaj wtwh, float l1, float l2) {
+
+        final float[] hData = h.data;
+        final float[] wtxData = wtx.data;
+        final float[] wtwhData = wtwh.data;
+
+        final int length = h.getNumElements();
+        for (int i = 0; i < length; ++i) {
+            float hi = hData[i];
+            float denominator = wtwhData[i] + l1 + l2 * hi + 1e-12f;
+            hData[i] = hi * (wtxData[i] / denominator);
+        }
+    }
+
+    /**
+     * Single-precision products and denominator of one thread
+     */
+    private static class FloatBuffers {
+
+        final FMatrixRMaj wtx = new FMatrixRMaj(1, 1);
+        final FMatrixRMaj wtw = new FMatrixRMaj(1, 1);
+        final FMatrixRMaj wtwh = new FMatrixRMaj(1, 1);
+
+        boolean computed = false;
+
+        FloatBuffers reshape(int numComponents, int numCols) {
+            wtx.reshape(numComponents, numCols);
+            wtw.reshape(numComponents, numComponents);
+            wtwh.reshape(numComponents, numCols);
+            computed = true;
+            return this;
+        }
+    }
 }
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2018 Du-Lab Team <dulab.binf@gmail.com>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.dulab.javanmf.updaterules;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.dense.row.NormOps_DDRM;
+
+import javax.annotation.Nonnull;
+
+import static org.ejml.dense.row.CommonOps_DDRM.*;
+
+/**
+ * Performs fast-gradient update for the euclidean distance with regularization. Matrix H is updated by Nesterov's
+ * accelerated projected gradient method with step size 1 / L, where L = ||W<sup>T</sup>W||<sub>2</sub> + &mu; is the
+ * Lipschitz constant of the gradient.
+ * <p>
+ * Each update starts the method from the current matrix H and makes at most a given number of iterations. The
+ * iterations stop earlier if the gradient mapping becomes smaller than the given fraction of its initial value.
+ *
+ * See N. Guan et al. "NENMF: AN OPTIMAL GRADIENT METHOD FOR NONNEGATIVE MATRIX FACTORIZATION"
+ *
+ * @author Du-Lab Team dulab.binf@gmail.com
+ */
+public class NesterovUpdateRule extends EuclideanUpdateRule
+{
+    private static final int DEFAULT_MAX_ITERATIONS = 10;
+    private static final double DEFAULT_TOLERANCE = 1e-3;
+
+    /* Maximum number of iterations per update */
+    private final int maxIterations;
+
+    /* Relative size of the gradient mapping for stopping the iterations */
+    private final double tolerance;
+
+    /* Buffers of each thread for the extrapolated point and the gradient */
+    private final ThreadLocal<DMatrixRMaj> yBuffer = ThreadLocal.withInitial(() -> new DMatrixRMaj(1, 1));
+    private final ThreadLocal<DMatrixRMaj> gradientBuffer = ThreadLocal.withInitial(() -> new DMatrixRMaj(1, 1));
+
+    /**
+     * Creates an instance of {@link NesterovUpdateRule} with given regularization coefficients, at most 10 iterations
+     * per update, and relative tolerance 1e-3
+     * @param lambda <i>l</i><sub>1</sub>-regularization coefficient
+     * @param mu <i>l</i><sub>2</sub>-regularization coefficient
+     */
+    public NesterovUpdateRule(double lambda, double mu) {
+        this(lambda, mu, DEFAULT_MAX_ITERATIONS, DEFAULT_TOLERANCE);
+    }
+
+    /**
+     * Creates an instance of {@link NesterovUpdateRule}
+     * @param lambda <i>l</i><sub>1</sub>-regularization coefficient
+     * @param mu <i>l</i><sub>2</sub>-regularization coefficient
+     * @param maxIterations maximum number of iterations per update
+     * @param tolerance relative size of the gradient mapping for stopping the iterations
+     * @throws IllegalArgumentException If the maximum number of iterations is not positive or tolerance is negative
+     */
+    public NesterovUpdateRule(double lambda, double mu, int maxIterations, double tolerance)
+            throws IllegalArgumentException
+    {
+        super(lambda, mu);
+
+        if (maxIterations < 1)
+            throw new IllegalArgumentException("Non-positive maximum number of iterations " + maxIterations);
+
+        if (tolerance < 0.0)
+            throw new IllegalArgumentException("Negative tolerance " + tolerance);
+
+        this.maxIterations = maxIterations;
+        this.tolerance = tolerance;
+    }
+
+    @Override
+    protected double update(@Nonnull DMatrixRMaj wtx, @Nonnull DMatrixRMaj wtw, @Nonnull DMatrixRMaj h,
+                            double scale, double productCost)
+    {
+        // Scale regularization coefficients in the same way as MUpdateRule
+        final double l1 = lambda * scale;
+        final double l2 = mu * scale;
+
+        DMatrixRMaj y = yBuffer.get();
+        y.reshape(h.numRows, h.numCols);
+
+        DMatrixRMaj gradient = gradientBuffer.get();
+        gradient.reshape(h.numRows, h.numCols);
+
+        // Lipschitz constant of the gradient
+        final double lipschitz = NormOps_DDRM.normP2(wtw) + l2;
+        if (lipschitz < EPS)
+            return 0.0;
+
+        y.set(h);
+
+        double increment = 0.0;
+        double initialMapping = 0.0;
+        double alpha = 1.0;
+        for (int k = 0; k < maxIterations; ++k) {
+
+            // gradient = wtw * y - wtx + lambda + mu * y
+            mult(wtw, y, gradient);
+            subtractEquals(gradient, wtx);
+            add(gradient, l1);
+            addEquals(gradient, l2, y);
+
+            double nextAlpha = 0.5 * (1.0 + Math.sqrt(4.0 * alpha * alpha + 1.0));
+            double beta = (alpha - 1.0) / nextAlpha;
+            alpha = nextAlpha;
+
+            // h = max(0, y - gradient / L),  y = h + beta * (h - hPrevious)
+            double mapping = 0.0;
+            for (int i = 0; i < h.getNumElements(); ++i) {
+                double yi = y.data[i];
+                double value = Math.max(0.0, yi - gradient.data[i] / lipschitz);
+
+                double step = value - yi;
+                mapping += step * step;
+
+                double difference = value - h.data[i];
+                increment += Math.abs(difference);
+
+                h.data[i] = value;
+                y.data[i] = value + beta * difference;
+            }
+
+            if (k == 0)
+                initialMapping = mapping;
+            else if (mapping <= tolerance * tolerance * initialMapping)
+                break;
+        }
+
+        return increment;
+    }
+}
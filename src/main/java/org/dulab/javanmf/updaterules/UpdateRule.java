@@ -18,8 +18,13 @@
 
 package org.dulab.javanmf.updaterules;
 
+import org.dulab.javanmf.data.DataMatrix;
 import org.dulab.javanmf.measures.Measure;
 import org.ejml.data.DMatrixRMaj;
+import org.ejml.data.DMatrixSparseCSC;
+import org.ejml.data.FMatrixRMaj;
+import org.ejml.ops.ConvertDMatrixStruct;
+import org.ejml.ops.ConvertMatrixData;
 
 import javax.annotation.Nonnull;
 
@@ -52,4 +57,167 @@ public abstract class UpdateRule
      * @return increment of |H|
      */
     abstract public double update(@Nonnull DMatrixRMaj x, @Nonnull DMatrixRMaj w, @Nonnull DMatrixRMaj h);
+
+    /**
+     * Updates matrix H to minimize distance between sparse matrix X and WH. By default, matrix X is converted to a
+     * dense matrix
+     * @param x sparse matrix of shape [N<sub>points</sub>, N<sub>vectors</sub>]
+     * @param w matrix of shape [N<sub>points</sub>, N<sub>components</sub>]
+     * @param h matrix of shape [N<sub>components</sub>, N<sub>vectors</sub>]
+     * @return increment of |H|
+     */
+    public double update(@Nonnull DMatrixSparseCSC x, @Nonnull DMatrixRMaj w, @Nonnull DMatrixRMaj h) {
+        return update(ConvertDMatrixStruct.convert(x, new DMatrixRMaj(x.numRows, x.numCols)), w, h);
+    }
+
+    /**
+     * Updates single-precision matrix H to minimize distance between X and WH. By default, the matrices are converted
+     * to double precision, and the result is converted back. {@link EuclideanUpdateRule} overrides this method to
+     * convert only the products W<sup>T</sup>X and W<sup>T</sup>W and matrix H
+     * @param x matrix of shape [N<sub>points</sub>, N<sub>vectors</sub>]
+     * @param w matrix of shape [N<sub>points</sub>, N<sub>components</sub>]
+     * @param h matrix of shape [N<sub>components</sub>, N<sub>vectors</sub>]
+     * @return increment of |H|
+     */
+    public double update(@Nonnull FMatrixRMaj x, @Nonnull FMatrixRMaj w, @Nonnull FMatrixRMaj h) {
+
+        DMatrixRMaj hDouble = new DMatrixRMaj(h.numRows, h.numCols);
+        ConvertMatrixData.convert(h, hDouble);
+
+        DMatrixRMaj xDouble = new DMatrixRMaj(x.numRows, x.numCols);
+        ConvertMatrixData.convert(x, xDouble);
+
+        DMatrixRMaj wDouble = new DMatrixRMaj(w.numRows, w.numCols);
+        ConvertMatrixData.convert(w, wDouble);
+
+        double increment = update(xDouble, wDouble, hDouble);
+        ConvertMatrixData.convert(hDouble, h);
+        return increment;
+    }
+
+    /**
+     * Updates matrix H to minimize distance between data matrix X and WH. By default, data matrices are not supported
+     * @param x data matrix of shape [N<sub>points</sub>, N<sub>vectors</sub>]
+     * @param w matrix of shape [N<sub>points</sub>, N<sub>components</sub>]
+     * @param h matrix of shape [N<sub>components</sub>, N<sub>vectors</sub>]
+     * @return increment of |H|
+     * @throws UnsupportedOperationException If the update rule cannot use products of X
+     */
+    public double update(@Nonnull DataMatrix x, @Nonnull DMatrixRMaj w, @Nonnull DMatrixRMaj h)
+            throws UnsupportedOperationException
+    {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support data matrices");
+    }
+
+    /**
+     * @return true if the update rule implements {@link #updateTransA(DMatrixRMaj, DMatrixRMaj, DMatrixRMaj)},
+     * {@link #updateTransB(DMatrixRMaj, DMatrixRMaj, DMatrixRMaj)}, and
+     * {@link #getDistanceTransB(DMatrixRMaj, DMatrixRMaj, DMatrixRMaj, double)} without transposing its operands.
+     * By default, false
+     */
+    public boolean supportsTransposedOperands() {
+        return false;
+    }
+
+    /**
+     * Updates matrix H to minimize distance between X and WH for given matrix W<sup>T</sup>. By default, transposed
+     * operands are not supported
+     * @param x  matrix of shape [N<sub>points</sub>, N<sub>vectors</sub>]
+     * @param wt matrix of shape [N<sub>components</sub>, N<sub>points</sub>]
+     * @param h  matrix of shape [N<sub>components</sub>, N<sub>vectors</sub>]
+     * @return increment of |H|
+     * @throws UnsupportedOperationException If the update rule cannot use matrix W<sup>T</sup> directly
+     */
+    public double updateTransA(@Nonnull DMatrixRMaj x, @Nonnull DMatrixRMaj wt, @Nonnull DMatrixRMaj h)
+            throws UnsupportedOperationException
+    {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support transposed operands");
+    }
+
+    /**
+     * Updates matrix W<sup>T</sup> to minimize distance between X<sup>T</sup> and H<sup>T</sup>W<sup>T</sup> for
+     * given matrices X and H, i.e. performs {@link #update(DMatrixRMaj, DMatrixRMaj, DMatrixRMaj)} with matrices
+     * X<sup>T</sup>, H<sup>T</sup>, and W<sup>T</sup>. By default, transposed operands are not supported
+     * @param x  matrix of shape [N<sub>points</sub>, N<sub>vectors</sub>]
+     * @param h  matrix of shape [N<sub>components</sub>, N<sub>vectors</sub>]
+     * @param wt matrix of shape [N<sub>components</sub>, N<sub>points</sub>]
+     * @return increment of |W|
+     * @throws UnsupportedOperationException If the update rule cannot use matrices X and H directly
+     */
+    public double updateTransB(@Nonnull DMatrixRMaj x, @Nonnull DMatrixRMaj h, @Nonnull DMatrixRMaj wt)
+            throws UnsupportedOperationException
+    {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support transposed operands");
+    }
+
+    /**
+     * Returns distance between X and WH after the last update. Subclasses may reuse products of X and W computed
+     * during the last call of {@link #update(DMatrixRMaj, DMatrixRMaj, DMatrixRMaj)}, so this method should be called
+     * with the same matrices X and W
+     * @param x      matrix of shape [N<sub>points</sub>, N<sub>vectors</sub>]
+     * @param w      matrix of shape [N<sub>points</sub>, N<sub>components</sub>]
+     * @param h      matrix of shape [N<sub>components</sub>, N<sub>vectors</sub>]
+     * @param normX2 squared Frobenius norm of matrix X
+     * @return distance value
+     */
+    public double getDistance(@Nonnull DMatrixRMaj x, @Nonnull DMatrixRMaj w, @Nonnull DMatrixRMaj h, double normX2) {
+        return measure.get(x, w, h);
+    }
+
+    /**
+     * Returns distance between sparse matrix X and WH after the last update, see
+     * {@link #getDistance(DMatrixRMaj, DMatrixRMaj, DMatrixRMaj, double)}
+     * @param x      sparse matrix of shape [N<sub>points</sub>, N<sub>vectors</sub>]
+     * @param w      matrix of shape [N<sub>points</sub>, N<sub>components</sub>]
+     * @param h      matrix of shape [N<sub>components</sub>, N<sub>vectors</sub>]
+     * @param normX2 squared Frobenius norm of matrix X
+     * @return distance value
+     */
+    public double getDistance(@Nonnull DMatrixSparseCSC x, @Nonnull DMatrixRMaj w, @Nonnull DMatrixRMaj h,
+                              double normX2) {
+        return measure.get(x, w, h);
+    }
+
+    /**
+     * Returns distance between single-precision matrices X and WH after the last update, see
+     * {@link #getDistance(DMatrixRMaj, DMatrixRMaj, DMatrixRMaj, double)}
+     * @param x      matrix of shape [N<sub>points</sub>, N<sub>vectors</sub>]
+     * @param w      matrix of shape [N<sub>points</sub>, N<sub>components</sub>]
+     * @param h      matrix of shape [N<sub>components</sub>, N<sub>vectors</sub>]
+     * @param normX2 squared Frobenius norm of matrix X
+     * @return distance value
+     */
+    public double getDistance(@Nonnull FMatrixRMaj x, @Nonnull FMatrixRMaj w, @Nonnull FMatrixRMaj h, double normX2) {
+        return measure.get(x, w, h);
+    }
+
+    /**
+     * Returns distance between data matrix X and WH after the last update, see
+     * {@link #getDistance(DMatrixRMaj, DMatrixRMaj, DMatrixRMaj, double)}
+     * @param x      data matrix of shape [N<sub>points</sub>, N<sub>vectors</sub>]
+     * @param w      matrix of shape [N<sub>points</sub>, N<sub>components</sub>]
+     * @param h      matrix of shape [N<sub>components</sub>, N<sub>vectors</sub>]
+     * @param normX2 squared Frobenius norm of matrix X
+     * @return distance value
+     */
+    public double getDistance(@Nonnull DataMatrix x, @Nonnull DMatrixRMaj w, @Nonnull DMatrixRMaj h, double normX2) {
+        return measure.get(x, w, h);
+    }
+
+    /**
+     * Returns distance between X and WH after the last call of
+     * {@link #updateTransB(DMatrixRMaj, DMatrixRMaj, DMatrixRMaj)} with the same matrices X and H
+     * @param x      matrix of shape [N<sub>points</sub>, N<sub>vectors</sub>]
+     * @param h      matrix of shape [N<sub>components</sub>, N<sub>vectors</sub>]
+     * @param wt     matrix of shape [N<sub>components</sub>, N<sub>points</sub>]
+     * @param normX2 squared Frobenius norm of matrix X
+     * @return distance value
+     * @throws UnsupportedOperationException If the update rule does not support transposed operands
+     */
+    public double getDistanceTransB(@Nonnull DMatrixRMaj x, @Nonnull DMatrixRMaj h, @Nonnull DMatrixRMaj wt,
+                                    double normX2)
+            throws UnsupportedOperationException
+    {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support transposed operands");
+    }
 }
@@ -3,9 +3,16 @@
  *
  * <ul>
  *     <li>Multiplicative update rule for the euclidean distance with regularization</li>
+ *     <li>Accelerated multiplicative update rule, which repeats the update of H with the same products of W</li>
+ *     <li>Fast-gradient update rule (Nesterov's accelerated projected gradient) for the euclidean distance with
+ *     regularization</li>
+ *     <li>Hierarchical alternating least squares (HALS) update rule for the euclidean distance with regularization</li>
  * </ul>
  *
  * @see org.dulab.javanmf.updaterules.MUpdateRule
+ * @see org.dulab.javanmf.updaterules.AcceleratedMUpdateRule
+ * @see org.dulab.javanmf.updaterules.NesterovUpdateRule
+ * @see org.dulab.javanmf.updaterules.HALSUpdateRule
  * @author Du-Lab Team dulab.binf@gmail.com
  */
 package org.dulab.javanmf.updaterules;
\ No newline at end of file
@@ -3,11 +3,17 @@ package org.dulab.javanmf.algorithms;
 import org.ejml.data.DMatrixRMaj;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.ejml.dense.row.CommonOps_DDRM.*;
 import static org.ejml.dense.row.NormOps_DDRM.normF;
 import static org.ejml.dense.row.RandomMatrices_DDRM.rectangle;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 public class AlternatingLeastSquaresMatrixFactorizationTest {
@@ -52,4 +58,95 @@ public class AlternatingLeastSquaresMatrixFactorizationTest {
         assertEquals(0.0, error, 0.1);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testBlockPrincipalPivoting() {
+
+        DMatrixRMaj matrixX = new DMatrixRMaj(new double[][]{
+                new double[]{14.5, 2.5, 2.5, 14.5},
+                new double[]{6.5, 10.5, 10.5, 6.5},
+                new double[]{10.5, 6.5, 6.5, 10.5},
+                new double[]{2.5, 14.5, 14.5, 2.5}
+        });
+
+        DMatrixRMaj expectedW = new DMatrixRMaj(new double[][]{
+                new double[]{3.5280, 20.5039},
+                new double[]{14.8461, 9.1818},
+                new double[]{9.1871, 14.8428},
+                new double[]{20.5047, 3.5214}
+        });
+
+        DMatrixRMaj expectedH = new DMatrixRMaj(new double[][]{
+                new double[]{0.0004, 0.7071, 0.7071, 0.0005},
+                new double[]{0.7072, 0.0002, 0.0003, 0.7070}
+        });
+
+        AlternatingLeastSquaresMatrixFactorization factorization = new AlternatingLeastSquaresMatrixFactorization(
+                null, null,
+                new BlockPrincipalPivotingNonNegativeLeastSquares(),
+                new BlockPrincipalPivotingNonNegativeLeastSquares(),
+                1e-12, 40000);
+
+        Random random = new Random(0);
+        DMatrixRMaj matrixW = rectangle(expectedW.numRows, expectedW.numCols, 0.0, 1.0, random);
+        DMatrixRMaj matrixH = rectangle(expectedH.numRows, expectedH.numCols, 0.0, 1.0, random);
+
+        factorization.solve(matrixX, matrixW, matrixH, true);
+
+        DMatrixRMaj matrixE = matrixX.copy();
+        multAdd(-1.0, matrixW, matrixH, matrixE);
+        double error = normF(matrixE);
+
+        assertEquals(0.0, error, 0.1);
+    }
+
+    @Test
+    public void testConcurrent() throws Exception {
+
+        final int numProblems = 16;
+        Random random = new Random(0);
+
+        DMatrixRMaj[] matricesX = new DMatrixRMaj[numProblems];
+        DMatrixRMaj[] initialW = new DMatrixRMaj[numProblems];
+        DMatrixRMaj[] initialH = new DMatrixRMaj[numProblems];
+        for (int i = 0; i < numProblems; ++i) {
+            matricesX[i] = rectangle(40, 30 + i, 0.0, 1.0, random);
+            initialW[i] = rectangle(40, 3, 0.1, 0.9, random);
+            initialH[i] = rectangle(3, 30 + i, 0.1, 0.9, random);
+        }
+
+        AlternatingLeastSquaresMatrixFactorization factorization =
+                new AlternatingLeastSquaresMatrixFactorization(1e-6, 100);
+
+        DMatrixRMaj[] expectedW = new DMatrixRMaj[numProblems];
+        DMatrixRMaj[] expectedH = new DMatrixRMaj[numProblems];
+        for (int i = 0; i < numProblems; ++i) {
+            expectedW[i] = initialW[i].copy();
+            expectedH[i] = initialH[i].copy();
+            factorization.solve(matricesX[i], expectedW[i], expectedH[i]);
+        }
+
+        DMatrixRMaj[] matricesW = new DMatrixRMaj[numProblems];
+        DMatrixRMaj[] matricesH = new DMatrixRMaj[numProblems];
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < numProblems; ++i) {
+                final int index = i;
+                matricesW[i] = initialW[i].copy();
+                matricesH[i] = initialH[i].copy();
+                futures.add(executor.submit(
+                        () -> factorization.solve(matricesX[index], matricesW[index], matricesH[index])));
+            }
+            for (Future<?> future : futures)
+                future.get();
+        }
+        finally {
+            executor.shutdown();
+        }
+
+        for (int i = 0; i < numProblems; ++i) {
+            assertArrayEquals(expectedW[i].data, matricesW[i].data, 1e-8);
+            assertArrayEquals(expectedH[i].data, matricesH[i].data, 1e-8);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package org.dulab.javanmf.algorithms;
+
+import org.dulab.javanmf.updaterules.MUpdateRule;
+import org.ejml.data.DMatrixRMaj;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.ejml.dense.row.RandomMatrices_DDRM.rectangle;
+import static org.junit.Assert.*;
+
+public class BatchFactorizationTest {
+
+    private static final double EPS = 1e-12;
+
+    @Test
+    public void testExecute() {
+
+        Random random = new Random(0);
+        List<DMatrixRMaj> matrices = new ArrayList<>();
+        for (int i = 0; i < 64; ++i)
+            matrices.add(rectangle(20 + random.nextInt(30), 50 + random.nextInt(150), 0.0, 1.0, random));
+
+        MatrixFactorization factorization = new MatrixFactorization(
+                new MUpdateRule(0.0, 0.0), new MUpdateRule(0.0, 0.0), 1e-4, 200);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        BatchFactorization.Result result;
+        try {
+            result = new BatchFactorization(factorization, pool).execute(matrices, 5);
+        }
+        finally {
+            pool.shutdown();
+        }
+
+        assertEquals(matrices.size(), result.size());
+        assertTrue(result.getThroughput() > 0.0);
+
+        for (int i = 0; i < matrices.size(); ++i) {
+            DMatrixRMaj x = matrices.get(i);
+            DMatrixRMaj w = new DMatrixRMaj(x.numRows, 5);
+            DMatrixRMaj h = new DMatrixRMaj(5, x.numCols);
+            new SingularValueDecomposition(x, 5).decompose(w, h);
+            factorization.execute(x, w, h);
+
+            assertArrayEquals(w.data, result.getW(i).data, EPS);
+            assertArrayEquals(h.data, result.getH(i).data, EPS);
+        }
+    }
+}
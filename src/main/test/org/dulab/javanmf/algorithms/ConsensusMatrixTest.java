@@ -0,0 +1,193 @@
+package org.dulab.javanmf.algorithms;
+
+import org.dulab.javanmf.updaterules.MUpdateRule;
+import org.ejml.data.DMatrixRMaj;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import static org.junit.Assert.*;
+
+public class ConsensusMatrixTest {
+
+    private static final double EPS = 1e-6;
+
+    @Test
+    public void testAdd() {
+
+        Random random = new Random(0);
+        int[][] clusterings = new int[5][30];
+        for (int[] labels : clusterings)
+            for (int i = 0; i < labels.length; ++i)
+                labels[i] = random.nextInt(4);
+
+        ConsensusMatrix consensus = new ConsensusMatrix(30);
+        for (int[] labels : clusterings)
+            consensus.add(labels, 4);
+
+        assertEquals(5, consensus.getNumClusterings());
+        for (int i = 0; i < 30; ++i)
+            for (int j = 0; j < 30; ++j) {
+                int expected = 0;
+                for (int[] labels : clusterings)
+                    if (labels[i] == labels[j])
+                        ++expected;
+
+                assertEquals(expected, consensus.getCount(i, j));
+                assertEquals(expected / 5.0, consensus.get(i, j), EPS);
+            }
+    }
+
+    @Test
+    public void testConcurrentAdd() throws Exception {
+
+        Random random = new Random(2);
+        int[][] clusterings = new int[64][200];
+        for (int[] labels : clusterings)
+            for (int i = 0; i < labels.length; ++i)
+                labels[i] = random.nextInt(3);
+
+        ConsensusMatrix consensus = new ConsensusMatrix(200);
+        ForkJoinPool pool = new ForkJoinPool(8);
+        try {
+            List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            for (int[] labels : clusterings)
+                tasks.add(pool.submit(() -> consensus.add(labels, 3)));
+            for (ForkJoinTask<?> task : tasks)
+                task.join();
+        }
+        finally {
+            pool.shutdown();
+        }
+
+        assertEquals(64, consensus.getNumClusterings());
+        for (int i = 0; i < 200; ++i)
+            for (int j = i + 1; j < 200; ++j) {
+                int expected = 0;
+                for (int[] labels : clusterings)
+                    if (labels[i] == labels[j])
+                        ++expected;
+
+                assertEquals(expected, consensus.getCount(i, j));
+            }
+    }
+
+    @Test
+    public void testInvalidLabels() {
+
+        ConsensusMatrix consensus = new ConsensusMatrix(3);
+        for (int[] labels : new int[][]{{0, 1, 2}, {0, -1, 1}})
+            try {
+                consensus.add(labels, 2);
+                fail("Expected IllegalArgumentException");
+            }
+            catch (IllegalArgumentException ignored) {}
+
+        assertEquals(0, consensus.getNumClusterings());
+    }
+
+    @Test
+    public void testCopheneticCorrelation() {
+
+        // Distances d01 = 1, d02 = 3, d12 = 5 give cophenetic distances 1, 4, 4
+        assertEquals(Math.sqrt(3.0) / 2.0,
+                ConsensusMatrix.copheneticCorrelation(new float[]{1f, 3f, 5f}, 3), EPS);
+
+        // Points 0, 2, 5, 10 on a line are merged at heights 2, 4, and 23 / 3
+        double[] distances = {2, 5, 10, 3, 8, 5};
+        double[] cophenetic = {2, 4, 23 / 3.0, 4, 23 / 3.0, 23 / 3.0};
+        float[] packed = new float[distances.length];
+        for (int i = 0; i < distances.length; ++i)
+            packed[i] = (float) distances[i];
+
+        assertEquals(correlation(distances, cophenetic), ConsensusMatrix.copheneticCorrelation(packed, 4), EPS);
+    }
+
+    @Test
+    public void testDegenerateCopheneticCorrelation() {
+
+        try {
+            new ConsensusMatrix(10).getCopheneticCorrelation();
+            fail("Expected IllegalStateException");
+        }
+        catch (IllegalStateException ignored) {}
+
+        // No pairs of samples
+        ConsensusMatrix single = new ConsensusMatrix(1);
+        single.add(new int[]{0}, 1);
+        assertEquals(1.0, single.getCopheneticCorrelation(), 0.0);
+
+        // One pair of samples
+        ConsensusMatrix pair = new ConsensusMatrix(2);
+        pair.add(new int[]{0, 1}, 2);
+        assertEquals(1.0, pair.getCopheneticCorrelation(), 0.0);
+
+        // All samples in one cluster give equal distances
+        ConsensusMatrix same = new ConsensusMatrix(20);
+        for (int r = 0; r < 3; ++r)
+            same.add(new int[20], 1);
+        assertEquals(1.0, same.getCopheneticCorrelation(), 0.0);
+
+        // Every sample in its own cluster gives equal non-zero distances
+        int[] labels = new int[20];
+        for (int i = 0; i < labels.length; ++i)
+            labels[i] = i;
+        ConsensusMatrix distinct = new ConsensusMatrix(20);
+        for (int r = 0; r < 7; ++r)
+            distinct.add(labels, 20);
+        assertEquals(1.0, distinct.getCopheneticCorrelation(), 0.0);
+
+        float[] equal = new float[190];
+        Arrays.fill(equal, 1f / 3f);
+        assertEquals(1.0, ConsensusMatrix.copheneticCorrelation(equal, 20), 0.0);
+    }
+
+    private static double correlation(double[] a, double[] b) {
+        double meanA = 0.0, meanB = 0.0;
+        for (int i = 0; i < a.length; ++i) {
+            meanA += a[i] / a.length;
+            meanB += b[i] / b.length;
+        }
+
+        double covariance = 0.0, varianceA = 0.0, varianceB = 0.0;
+        for (int i = 0; i < a.length; ++i) {
+            covariance += (a[i] - meanA) * (b[i] - meanB);
+            varianceA += (a[i] - meanA) * (a[i] - meanA);
+            varianceB += (b[i] - meanB) * (b[i] - meanB);
+        }
+        return covariance / Math.sqrt(varianceA * varianceB);
+    }
+
+    @Test
+    public void testConsensusClustering() {
+
+        // Three groups of columns with different components
+        Random random = new Random(1);
+        DMatrixRMaj x = new DMatrixRMaj(30, 45);
+        for (int j = 0; j < 45; ++j)
+            for (int i = 0; i < 30; ++i)
+                x.set(i, j, (i / 10 == j / 15 ? 1.0 : 0.0) + 0.05 * random.nextDouble());
+
+        MatrixFactorization factorization = new MatrixFactorization(
+                new MUpdateRule(0.0, 0.0), new MUpdateRule(0.0, 0.0), 1e-6, 500);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        ConsensusMatrix consensus;
+        try {
+            consensus = new ConsensusClustering(factorization, pool).execute(x, 3, 10, 0L);
+        }
+        finally {
+            pool.shutdown();
+        }
+
+        assertEquals(10, consensus.getNumClusterings());
+        assertEquals(1.0, consensus.get(0, 14), EPS);
+        assertEquals(0.0, consensus.get(0, 15), EPS);
+        assertEquals(1.0, consensus.getCopheneticCorrelation(), EPS);
+    }
+}
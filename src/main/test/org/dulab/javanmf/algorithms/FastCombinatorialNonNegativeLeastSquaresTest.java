@@ -0,0 +1,91 @@
+package org.dulab.javanmf.algorithms;
+
+import org.ejml.data.DMatrixRMaj;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.ejml.dense.row.CommonOps_DDRM.mult;
+import static org.ejml.dense.row.RandomMatrices_DDRM.rectangle;
+import static org.junit.Assert.*;
+
+public class FastCombinatorialNonNegativeLeastSquaresTest {
+
+    private static final double EPS = 1e-3;
+
+    @Test
+    public void solve() {
+
+        DMatrixRMaj matrixZ = new DMatrixRMaj(new double[][]{
+                new double[]{73, 71, 52},
+                new double[]{87, 74, 46},
+                new double[]{72, 2, 7},
+                new double[]{80, 89, 71}
+        });
+
+        DMatrixRMaj matrixX = new DMatrixRMaj(new double[][]{
+                new double[]{49, 98},
+                new double[]{67, 134},
+                new double[]{68, 136},
+                new double[]{20, 40}
+        });
+
+        DMatrixRMaj expectedD = new DMatrixRMaj(new double[][]{
+                new double[]{0.65, 1.3},
+                new double[]{0.0, 0.0},
+                new double[]{0.0, 0.0}
+        });
+
+        DMatrixRMaj matrixD = new DMatrixRMaj(matrixZ.numCols, matrixX.numCols);
+
+        new FastCombinatorialNonNegativeLeastSquares().solve(matrixX, matrixZ, matrixD);
+
+        assertArrayEquals(expectedD.data, matrixD.data, EPS);
+    }
+
+    @Test
+    public void solveRandom() {
+
+        Random random = new Random(0);
+        DMatrixRMaj matrixZ = rectangle(50, 8, -1.0, 1.0, random);
+        DMatrixRMaj matrixX = rectangle(50, 200, -1.0, 1.0, random);
+
+        DMatrixRMaj expectedD = new DMatrixRMaj(matrixZ.numCols, matrixX.numCols);
+        new NonNegativeLeastSquares().solve(matrixX, matrixZ, expectedD);
+
+        DMatrixRMaj matrixD = new DMatrixRMaj(matrixZ.numCols, matrixX.numCols);
+        new FastCombinatorialNonNegativeLeastSquares().solve(matrixX, matrixZ, matrixD);
+
+        assertArrayEquals(expectedD.data, matrixD.data, EPS);
+    }
+
+    @Test
+    public void solveRepeatedPassiveSets() {
+
+        // Columns of D follow four sparsity patterns, so that many columns share the same passive set
+        Random random = new Random(1);
+        DMatrixRMaj matrixZ = rectangle(50, 8, 0.0, 1.0, random);
+        DMatrixRMaj matrixD0 = new DMatrixRMaj(8, 1000);
+        for (int j = 0; j < matrixD0.numCols; ++j)
+            for (int i = 0; i < matrixD0.numRows; ++i)
+                if ((i + j) % 4 != 0)
+                    matrixD0.set(i, j, random.nextDouble());
+
+        DMatrixRMaj matrixX = new DMatrixRMaj(50, 1000);
+        mult(matrixZ, matrixD0, matrixX);
+
+        DMatrixRMaj expectedD = new DMatrixRMaj(matrixZ.numCols, matrixX.numCols);
+        new NonNegativeLeastSquares().solve(matrixX, matrixZ, expectedD);
+
+        DMatrixRMaj matrixD = new DMatrixRMaj(matrixZ.numCols, matrixX.numCols);
+        new FastCombinatorialNonNegativeLeastSquares().solve(matrixX, matrixZ, matrixD);
+
+        assertArrayEquals(expectedD.data, matrixD.data, EPS);
+        assertArrayEquals(matrixD0.data, matrixD.data, EPS);
+    }
+
+    @Test
+    public void solveConcurrent() throws Exception {
+        NonNegativeLeastSquaresTest.testConcurrent(new FastCombinatorialNonNegativeLeastSquares());
+    }
+}
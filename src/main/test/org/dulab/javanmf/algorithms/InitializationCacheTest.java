@@ -0,0 +1,118 @@
+package org.dulab.javanmf.algorithms;
+
+import org.ejml.data.DMatrixRMaj;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.ejml.dense.row.RandomMatrices_DDRM.rectangle;
+import static org.junit.Assert.*;
+
+public class InitializationCacheTest {
+
+    @Test
+    public void testDecompose() {
+
+        Random random = new Random(0);
+        DMatrixRMaj x = rectangle(60, 40, 0.0, 1.0, random);
+
+        InitializationCache cache = new InitializationCache(1L << 20);
+        SingularValueDecomposition decomposition = cache.get(x, 10);
+
+        assertSame(decomposition, cache.get(x, 5));
+        assertEquals(1, cache.size());
+
+        SingularValueDecomposition expected = new SingularValueDecomposition(x, 10);
+        for (int k = 1; k <= 10; ++k) {
+            DMatrixRMaj expectedW = new DMatrixRMaj(60, k);
+            DMatrixRMaj expectedH = new DMatrixRMaj(k, 40);
+            expected.decompose(expectedW, expectedH);
+
+            DMatrixRMaj w = new DMatrixRMaj(60, k);
+            DMatrixRMaj h = new DMatrixRMaj(k, 40);
+            cache.decompose(x, 10, w, h);
+
+            assertArrayEquals(expectedW.data, w.data, 0.0);
+            assertArrayEquals(expectedH.data, h.data, 0.0);
+        }
+
+        // Larger rank replaces the stored decomposition
+        assertEquals(20, cache.get(x, 20).getNumComponents());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testEviction() {
+
+        Random random = new Random(1);
+        DMatrixRMaj x1 = rectangle(60, 40, 0.0, 1.0, random);
+        DMatrixRMaj x2 = rectangle(60, 40, 0.0, 1.0, random);
+        DMatrixRMaj x3 = rectangle(60, 40, 0.0, 1.0, random);
+
+        // Size of one decomposition with 5 components
+        long size = Double.BYTES * (60 * 5 + 5 * 5 + 40 * 5);
+        InitializationCache cache = new InitializationCache(2 * size);
+
+        SingularValueDecomposition decomposition1 = cache.get(x1, 5);
+        cache.get(x2, 5);
+        assertSame(decomposition1, cache.get(x1, 5));
+
+        // x2 is the least recently used
+        cache.get(x3, 5);
+        assertEquals(2, cache.size());
+        assertEquals(2 * size, cache.getNumBytes());
+        assertSame(decomposition1, cache.get(x1, 5));
+    }
+
+    @Test
+    public void testChangedMatrix() {
+
+        Random random = new Random(2);
+        DMatrixRMaj x = rectangle(60, 40, 0.0, 1.0, random);
+
+        InitializationCache cache = new InitializationCache(1L << 20);
+        SingularValueDecomposition decomposition = cache.get(x, 5);
+
+        // A copy of X is a different matrix
+        DMatrixRMaj copy = x.copy();
+        assertNotSame(decomposition, cache.get(copy, 5));
+        assertEquals(2, cache.size());
+
+        // Changing X replaces its stored decomposition
+        x.set(0, 0, x.get(0, 0) + 1.0);
+        SingularValueDecomposition changed = cache.get(x, 5);
+        assertNotSame(decomposition, changed);
+        assertSame(changed, cache.get(x, 5));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testMatrixLargerThanLimit() {
+
+        // X takes 960 kB, while the decomposition with 10 components takes 57 kB
+        Random random = new Random(3);
+        DMatrixRMaj x = rectangle(400, 300, 0.0, 1.0, random);
+
+        InitializationCache cache = new InitializationCache(256L << 10);
+        SingularValueDecomposition decomposition = cache.get(x, 10);
+
+        // Smaller ranks reuse the stored decomposition instead of decomposing X again
+        for (int k = 2; k <= 10; ++k)
+            assertSame(decomposition, cache.get(x, k));
+
+        assertEquals(1, cache.size());
+        assertEquals(Double.BYTES * (400 * 10 + 10 * 10 + 300 * 10), cache.getNumBytes());
+    }
+
+    @Test
+    public void testDecompositionLargerThanLimit() {
+
+        Random random = new Random(4);
+        DMatrixRMaj x = rectangle(60, 40, 0.0, 1.0, random);
+
+        InitializationCache cache = new InitializationCache(1L << 10);
+        assertEquals(5, cache.get(x, 5).getNumComponents());
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getNumBytes());
+    }
+}
@@ -0,0 +1,149 @@
+package org.dulab.javanmf.algorithms;
+
+import org.dulab.javanmf.measures.EuclideanDistance;
+import org.dulab.javanmf.updaterules.MUpdateRule;
+import org.ejml.data.DMatrixRMaj;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.ejml.dense.row.CommonOps_DDRM.*;
+import static org.ejml.dense.row.RandomMatrices_DDRM.rectangle;
+import static org.junit.Assert.*;
+
+public class MappedMatrixTest {
+
+    private static final double EPS = 1e-8;
+
+    @Test
+    public void testProducts() throws IOException {
+
+        Random random = new Random(0);
+        DMatrixRMaj matrixX = rectangle(300, 400, 0.0, 1.0, random);
+        DMatrixRMaj matrixW = rectangle(300, 3, 0.0, 1.0, random);
+        DMatrixRMaj matrixH = rectangle(3, 400, 0.0, 1.0, random);
+
+        for (MappedMatrix.Precision precision : MappedMatrix.Precision.values()) {
+            Path path = Files.createTempFile("matrix", ".bin");
+            try {
+                MappedMatrix.write(path, matrixX, precision);
+                MappedMatrix mappedX = new MappedMatrix(path, matrixX.numRows, matrixX.numCols, precision);
+
+                double eps = precision == MappedMatrix.Precision.DOUBLE ? EPS : 1e-3;
+
+                DMatrixRMaj expected = new DMatrixRMaj(3, 400);
+                multTransA(matrixW, matrixX, expected);
+                DMatrixRMaj actual = new DMatrixRMaj(1, 1);
+                mappedX.multTransA(matrixW, actual);
+                assertArrayEquals(expected.data, actual.data, eps);
+
+                expected.reshape(3, 300);
+                multTransB(matrixH, matrixX, expected);
+                mappedX.multTransB(matrixH, actual);
+                assertArrayEquals(expected.data, actual.data, eps);
+
+                mappedX.transpose().multTransA(transpose(matrixH, null), actual);
+                assertArrayEquals(expected.data, actual.data, eps);
+
+                assertEquals(new EuclideanDistance().get(matrixX, matrixW, matrixH),
+                        new EuclideanDistance().get(mappedX, matrixW, matrixH), 1e3 * eps);
+            }
+            finally {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Test
+    public void testChunks() throws IOException {
+
+        Random random = new Random(2);
+        DMatrixRMaj matrixX = rectangle(300, 400, 0.0, 1.0, random);
+        DMatrixRMaj matrixW = rectangle(300, 3, 0.0, 1.0, random);
+        DMatrixRMaj matrixH = rectangle(3, 400, 0.0, 1.0, random);
+
+        DMatrixRMaj expectedWtX = new DMatrixRMaj(3, 400);
+        multTransA(matrixW, matrixX, expectedWtX);
+        DMatrixRMaj expectedHXt = new DMatrixRMaj(3, 300);
+        multTransB(matrixH, matrixX, expectedHXt);
+        double expectedNorm2 = 0.0;
+        for (double value : matrixX.data)
+            expectedNorm2 += value * value;
+
+        for (MappedMatrix.Precision precision : MappedMatrix.Precision.values()) {
+            Path path = Files.createTempFile("matrix", ".bin");
+            try {
+                MappedMatrix.write(path, matrixX, precision);
+
+                double eps = precision == MappedMatrix.Precision.DOUBLE ? EPS : 1e-3;
+                long rowBytes = (long) matrixX.numCols
+                        * (precision == MappedMatrix.Precision.DOUBLE ? Double.BYTES : Float.BYTES);
+
+                // Regions of 7 rows end inside the last tile, and regions of 200 rows cut the second tile of 163 rows
+                for (int rowsPerChunk : new int[] {7, 200}) {
+                    MappedMatrix mappedX = new MappedMatrix(path, matrixX.numRows, matrixX.numCols, precision,
+                            ByteOrder.nativeOrder(), rowsPerChunk * rowBytes + rowBytes / 2);
+
+                    DMatrixRMaj actualWtX = new DMatrixRMaj(3, 400);
+                    mappedX.multTransA(matrixW, actualWtX);
+                    assertArrayEquals(expectedWtX.data, actualWtX.data, eps);
+
+                    DMatrixRMaj actualHXt = new DMatrixRMaj(3, 300);
+                    mappedX.multTransB(matrixH, actualHXt);
+                    assertArrayEquals(expectedHXt.data, actualHXt.data, eps);
+
+                    assertEquals(expectedNorm2, mappedX.squaredNorm(), 1e3 * eps);
+                }
+            }
+            finally {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Test
+    public void testFactorization() throws IOException {
+
+        Random random = new Random(1);
+        DMatrixRMaj matrixX = rectangle(40, 30, 0.0, 1.0, random);
+        DMatrixRMaj expectedW = rectangle(40, 3, 0.1, 0.9, random);
+        DMatrixRMaj expectedH = rectangle(3, 30, 0.1, 0.9, random);
+
+        Path path = Files.createTempFile("matrix", ".bin");
+        try {
+            MappedMatrix.write(path, matrixX, MappedMatrix.Precision.DOUBLE);
+            MappedMatrix mappedX = new MappedMatrix(path, matrixX.numRows, matrixX.numCols,
+                    MappedMatrix.Precision.DOUBLE);
+
+            DMatrixRMaj matrixW = expectedW.copy();
+            DMatrixRMaj matrixH = expectedH.copy();
+
+            new MatrixFactorization(new MUpdateRule(0.1, 0.1), new MUpdateRule(0.1, 0.1), 1e-6, 200)
+                    .execute(matrixX, expectedW, expectedH);
+
+            new MatrixFactorization(new MUpdateRule(0.1, 0.1), new MUpdateRule(0.1, 0.1), 1e-6, 200)
+                    .execute(mappedX, matrixW, matrixH);
+
+            assertArrayEquals(expectedW.data, matrixW.data, EPS);
+            assertArrayEquals(expectedH.data, matrixH.data, EPS);
+
+            matrixW = rectangle(40, 3, 0.1, 0.9, random);
+            matrixH = rectangle(3, 30, 0.1, 0.9, random);
+            expectedW = matrixW.copy();
+            expectedH = matrixH.copy();
+
+            new AlternatingLeastSquaresMatrixFactorization(1e-6, 100).solve(matrixX, expectedW, expectedH, false);
+            new AlternatingLeastSquaresMatrixFactorization(1e-6, 100).solve(mappedX, matrixW, matrixH, false);
+
+            assertArrayEquals(expectedW.data, matrixW.data, EPS);
+            assertArrayEquals(expectedH.data, matrixH.data, EPS);
+        }
+        finally {
+            Files.delete(path);
+        }
+    }
+}
@@ -1,15 +1,33 @@
 package org.dulab.javanmf.algorithms;
 
+import org.dulab.javanmf.measures.EuclideanDistance;
+import org.dulab.javanmf.updaterules.AcceleratedMUpdateRule;
+import org.dulab.javanmf.updaterules.HALSUpdateRule;
 import org.dulab.javanmf.updaterules.MUpdateRule;
+import org.dulab.javanmf.updaterules.NesterovUpdateRule;
+import org.dulab.javanmf.updaterules.UpdateRule;
 import org.ejml.data.DMatrixRMaj;
+import org.ejml.data.DMatrixSparseCSC;
+import org.ejml.data.FMatrixRMaj;
+import org.ejml.ops.ConvertDMatrixStruct;
+import org.ejml.ops.ConvertMatrixData;
 import org.junit.Test;
 
+import javax.annotation.Nonnull;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.ejml.dense.row.CommonOps_DDRM.*;
 import static org.ejml.dense.row.RandomMatrices_DDRM.rectangle;
 
 import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
 
 public class MatrixFactorizationTest {
 
@@ -17,6 +35,25 @@ public class MatrixFactorizationTest {
 
     @Test
     public void test() {
+        testUpdateRules(new MUpdateRule(0.0, 0.0), new MUpdateRule(0.0, 0.0), 40000, 3);
+    }
+
+    @Test
+    public void testAcceleratedMU() {
+        testUpdateRules(new AcceleratedMUpdateRule(0.0, 0.0), new AcceleratedMUpdateRule(0.0, 0.0), 10000, 3);
+    }
+
+    @Test
+    public void testHALS() {
+        testUpdateRules(new HALSUpdateRule(0.0, 0.0), new HALSUpdateRule(0.0, 0.0), 4000, 8);
+    }
+
+    @Test
+    public void testNesterov() {
+        testUpdateRules(new NesterovUpdateRule(0.0, 0.0), new NesterovUpdateRule(0.0, 0.0), 4000, 3);
+    }
+
+    private void testUpdateRules(UpdateRule updateRuleW, UpdateRule updateRuleH, int maxIteration, long seed) {
 
         DMatrixRMaj expectedW = new DMatrixRMaj(new double[][]{
                 new double[]{0.0, 0.0},
@@ -33,15 +70,12 @@ public class MatrixFactorizationTest {
                 new double[]{1.0, 0.0, 2.0, 1.0, 0.0, 2.0, 1.0, 0.0}
         });
 
-        MatrixFactorization factorization = new MatrixFactorization(
-                new MUpdateRule(0.0, 0.0),
-                new MUpdateRule(0.0, 0.0),
-                1e-12, 40000);
+        MatrixFactorization factorization = new MatrixFactorization(updateRuleW, updateRuleH, 1e-12, maxIteration);
 
         DMatrixRMaj matrixX = new DMatrixRMaj(expectedW.numRows, expectedH.numCols);
         mult(expectedW, expectedH, matrixX);
 
-        Random random = new Random(3);
+        Random random = new Random(seed);
         DMatrixRMaj matrixW = rectangle(expectedW.numRows, expectedW.numCols, 0.1, 0.9, random);
         DMatrixRMaj matrixH = rectangle(expectedH.numRows, expectedH.numCols, 0.1, 0.9, random);
 
@@ -72,4 +106,210 @@ public class MatrixFactorizationTest {
             assertEquals(expectedH.get(1, j), matrixH.get(1, j), EPS);
     }
 
-}
\ No newline at end of file
+
+    @Test
+    public void testSparse() {
+
+        Random random = new Random(0);
+        DMatrixRMaj matrixX = rectangle(40, 30, -3.0, 1.0, random);
+        for (int i = 0; i < matrixX.getNumElements(); ++i)
+            matrixX.data[i] = Math.max(matrixX.data[i], 0.0);
+
+        DMatrixSparseCSC sparseX = ConvertDMatrixStruct.convert(matrixX, (DMatrixSparseCSC) null, 0.0);
+
+        DMatrixRMaj expectedW = rectangle(40, 3, 0.1, 0.9, random);
+        DMatrixRMaj expectedH = rectangle(3, 30, 0.1, 0.9, random);
+        DMatrixRMaj matrixW = expectedW.copy();
+        DMatrixRMaj matrixH = expectedH.copy();
+
+        new MatrixFactorization(new MUpdateRule(0.1, 0.1), new MUpdateRule(0.1, 0.1), 1e-6, 200)
+                .execute(matrixX, expectedW, expectedH);
+
+        new MatrixFactorization(new MUpdateRule(0.1, 0.1), new MUpdateRule(0.1, 0.1), 1e-6, 200)
+                .execute(sparseX, matrixW, matrixH);
+
+        assertArrayEquals(expectedW.data, matrixW.data, 1e-8);
+        assertArrayEquals(expectedH.data, matrixH.data, 1e-8);
+    }
+
+    @Test
+    public void testFloat() {
+        testFloatUpdateRules(new MUpdateRule(0.0, 0.0), new MUpdateRule(0.0, 0.0));
+    }
+
+    @Test
+    public void testFloatHALS() {
+        testFloatUpdateRules(new HALSUpdateRule(0.0, 0.0), new HALSUpdateRule(0.0, 0.0));
+    }
+
+    @Test
+    public void testFloatNesterov() {
+        testFloatUpdateRules(new NesterovUpdateRule(0.0, 0.0), new NesterovUpdateRule(0.0, 0.0));
+    }
+
+    private void testFloatUpdateRules(UpdateRule updateRuleW, UpdateRule updateRuleH) {
+
+        Random random = new Random(0);
+        DMatrixRMaj matrixX = rectangle(40, 30, 0.0, 1.0, random);
+        DMatrixRMaj matrixW = rectangle(40, 3, 0.1, 0.9, random);
+        DMatrixRMaj matrixH = rectangle(3, 30, 0.1, 0.9, random);
+
+        FMatrixRMaj floatX = new FMatrixRMaj(matrixX.numRows, matrixX.numCols);
+        FMatrixRMaj floatW = new FMatrixRMaj(matrixW.numRows, matrixW.numCols);
+        FMatrixRMaj floatH = new FMatrixRMaj(matrixH.numRows, matrixH.numCols);
+        ConvertMatrixData.convert(matrixX, floatX);
+        ConvertMatrixData.convert(matrixW, floatW);
+        ConvertMatrixData.convert(matrixH, floatH);
+
+        MatrixFactorization factorization = new MatrixFactorization(updateRuleW, updateRuleH, 1e-6, 100);
+        factorization.execute(matrixX, matrixW, matrixH);
+        factorization.execute(floatX, floatW, floatH);
+
+        for (int i = 0; i < matrixW.getNumElements(); ++i)
+            assertEquals(matrixW.data[i], floatW.data[i], EPS);
+
+        for (int i = 0; i < matrixH.getNumElements(); ++i)
+            assertEquals(matrixH.data[i], floatH.data[i], EPS);
+    }
+
+    @Test
+    public void testZeroCopy() {
+
+        Random random = new Random(0);
+        DMatrixRMaj matrixX = rectangle(400, 300, 0.0, 1.0, random);
+        DMatrixRMaj expectedW = rectangle(400, 3, 0.1, 0.9, random);
+        DMatrixRMaj expectedH = rectangle(3, 300, 0.1, 0.9, random);
+        DMatrixRMaj matrixW = expectedW.copy();
+        DMatrixRMaj matrixH = expectedH.copy();
+
+        MatrixFactorization factorization =
+                new MatrixFactorization(new MUpdateRule(0.1, 0.1), new MUpdateRule(0.1, 0.1), 1e-6, 100);
+        MatrixFactorization zeroCopyFactorization =
+                new MatrixFactorization(new MUpdateRule(0.1, 0.1), new MUpdateRule(0.1, 0.1), 1e-6, 100, true);
+
+        long allocated = allocatedBytes(() -> factorization.execute(matrixX, expectedW, expectedH));
+        long zeroCopyAllocated = allocatedBytes(() -> zeroCopyFactorization.execute(matrixX, matrixW, matrixH));
+
+        assertArrayEquals(expectedW.data, matrixW.data, 1e-8);
+        assertArrayEquals(expectedH.data, matrixH.data, 1e-8);
+
+        // The default mode allocates a copy of X and its transpose, the zero-copy mode allocates neither
+        assumeTrue("Allocation counters are not supported", allocated >= 0 && zeroCopyAllocated >= 0);
+        final long sizeX = 8L * matrixX.getNumElements();
+        assertTrue(allocated > 2 * sizeX);
+        assertTrue(zeroCopyAllocated < sizeX);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroCopyUnsupported() {
+
+        UpdateRule updateRule = new UpdateRule(new EuclideanDistance()) {
+            @Override
+            public double update(@Nonnull DMatrixRMaj x, @Nonnull DMatrixRMaj w, @Nonnull DMatrixRMaj h) {
+                return 0.0;
+            }
+        };
+
+        new MatrixFactorization(updateRule, new MUpdateRule(0.0, 0.0), 1e-6, 100, true);
+    }
+
+    @Test
+    public void testWorkspace() {
+
+        Random random = new Random(0);
+        DMatrixRMaj matrixX = rectangle(400, 300, 0.0, 1.0, random);
+        DMatrixRMaj initialW = rectangle(400, 3, 0.1, 0.9, random);
+        DMatrixRMaj initialH = rectangle(3, 300, 0.1, 0.9, random);
+
+        MatrixFactorization factorization =
+                new MatrixFactorization(new MUpdateRule(0.1, 0.1), new MUpdateRule(0.1, 0.1), 1e-6, 100);
+        FactorizationWorkspace workspace = new FactorizationWorkspace(400, 300, 3);
+
+        DMatrixRMaj expectedW = initialW.copy();
+        DMatrixRMaj expectedH = initialH.copy();
+        factorization.execute(matrixX, expectedW, expectedH);
+
+        // Smaller problem fits into the same workspace
+        DMatrixRMaj matrixW = extract(initialW, 0, 200, 0, 3);
+        DMatrixRMaj matrixH = extract(initialH, 0, 3, 0, 100);
+        factorization.execute(extract(matrixX, 0, 200, 0, 100), matrixW, matrixH, workspace, false);
+
+        DMatrixRMaj workspaceW = initialW.copy();
+        DMatrixRMaj workspaceH = initialH.copy();
+        long allocated = allocatedBytes(
+                () -> factorization.execute(matrixX, workspaceW, workspaceH, workspace, false));
+
+        assertArrayEquals(expectedW.data, workspaceW.data, 0.0);
+        assertArrayEquals(expectedH.data, workspaceH.data, 0.0);
+
+        // Only the lambdas of the iteration are allocated, independently of the size of the problem
+        assumeTrue("Allocation counters are not supported", allocated >= 0);
+        assertTrue(allocated < 1024);
+    }
+
+    @Test
+    public void testConcurrent() throws Exception {
+
+        final int numProblems = 16;
+        Random random = new Random(0);
+
+        DMatrixRMaj[] matricesX = new DMatrixRMaj[numProblems];
+        DMatrixRMaj[] initialW = new DMatrixRMaj[numProblems];
+        DMatrixRMaj[] initialH = new DMatrixRMaj[numProblems];
+        for (int i = 0; i < numProblems; ++i) {
+            matricesX[i] = rectangle(40, 30 + i, 0.0, 1.0, random);
+            initialW[i] = rectangle(40, 3, 0.1, 0.9, random);
+            initialH[i] = rectangle(3, 30 + i, 0.1, 0.9, random);
+        }
+
+        MatrixFactorization factorization = new MatrixFactorization(
+                new HALSUpdateRule(0.1, 0.1), new MUpdateRule(0.1, 0.1), 1e-6, 200);
+
+        DMatrixRMaj[] expectedW = new DMatrixRMaj[numProblems];
+        DMatrixRMaj[] expectedH = new DMatrixRMaj[numProblems];
+        for (int i = 0; i < numProblems; ++i) {
+            expectedW[i] = initialW[i].copy();
+            expectedH[i] = initialH[i].copy();
+            factorization.execute(matricesX[i], expectedW[i], expectedH[i]);
+        }
+
+        DMatrixRMaj[] matricesW = new DMatrixRMaj[numProblems];
+        DMatrixRMaj[] matricesH = new DMatrixRMaj[numProblems];
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < numProblems; ++i) {
+                final int index = i;
+                matricesW[i] = initialW[i].copy();
+                matricesH[i] = initialH[i].copy();
+                futures.add(executor.submit(
+                        () -> factorization.execute(matricesX[index], matricesW[index], matricesH[index])));
+            }
+            for (Future<?> future : futures)
+                future.get();
+        }
+        finally {
+            executor.shutdown();
+        }
+
+        for (int i = 0; i < numProblems; ++i) {
+            assertArrayEquals(expectedW[i].data, matricesW[i].data, 0.0);
+            assertArrayEquals(expectedH[i].data, matricesH[i].data, 0.0);
+        }
+    }
+
+    /** Returns the number of bytes allocated by the current thread while running {@code task}, or -1 */
+    static long allocatedBytes(Runnable task) {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            task.run();
+            return -1;
+        }
+
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        long threadId = Thread.currentThread().getId();
+        long start = threadBean.getThreadAllocatedBytes(threadId);
+        task.run();
+        return threadBean.getThreadAllocatedBytes(threadId) - start;
+    }
+}
@@ -1,6 +1,8 @@
 package org.dulab.javanmf.algorithms;
 
 import org.dulab.javanmf.updaterules.MUpdateRule;
+import org.dulab.javanmf.updaterules.NesterovUpdateRule;
+import org.dulab.javanmf.updaterules.UpdateRule;
 import org.ejml.data.DMatrixRMaj;
 import org.junit.Test;
 
@@ -8,7 +10,10 @@ import java.util.Random;
 
 import static org.ejml.dense.row.CommonOps_DDRM.*;
 import static org.ejml.dense.row.RandomMatrices_DDRM.rectangle;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
 
 public class MatrixRegressionTest {
 
@@ -16,6 +21,15 @@ public class MatrixRegressionTest {
 
     @Test
     public void test() {
+        testUpdateRule(new MUpdateRule(0.0, 0.0), 40000);
+    }
+
+    @Test
+    public void testNesterov() {
+        testUpdateRule(new NesterovUpdateRule(0.0, 0.0), 1000);
+    }
+
+    private void testUpdateRule(UpdateRule updateRule, int maxIteration) {
 
         DMatrixRMaj matrixW = new DMatrixRMaj(new double[][]{
                 new double[]{0.0, 0.0},
@@ -32,9 +46,7 @@ public class MatrixRegressionTest {
                 new double[]{1.0, 0.0, 2.0, 1.0, 0.0, 2.0, 1.0, 0.0}
         });
 
-        MatrixRegression regression = new MatrixRegression(
-                new MUpdateRule(0.0, 0.0),
-                1e-12, 40000);
+        MatrixRegression regression = new MatrixRegression(updateRule, 1e-12, maxIteration);
 
         DMatrixRMaj matrixX = new DMatrixRMaj(matrixW.numRows, expectedH.numCols);
         mult(matrixW, expectedH, matrixX);
@@ -51,4 +63,31 @@ public class MatrixRegressionTest {
             assertEquals(expectedH.get(1, j), matrixH.get(1, j), EPS);
     }
 
+    @Test
+    public void testWorkspace() {
+
+        Random random = new Random(0);
+        DMatrixRMaj matrixX = rectangle(400, 300, 0.0, 1.0, random);
+        DMatrixRMaj matrixW = rectangle(400, 3, 0.1, 0.9, random);
+        DMatrixRMaj initialH = rectangle(3, 300, 0.1, 0.9, random);
+
+        MatrixRegression regression = new MatrixRegression(new MUpdateRule(0.1, 0.1), 1e-6, 100);
+        FactorizationWorkspace workspace = new FactorizationWorkspace(1, 300, 1);
+
+        DMatrixRMaj expectedH = initialH.copy();
+        regression.solve(matrixX, matrixW, expectedH, false);
+
+        // Warm up the buffers of the update rule
+        regression.solve(matrixX, matrixW, initialH.copy(), null, workspace, false);
+
+        DMatrixRMaj matrixH = initialH.copy();
+        long allocated = MatrixFactorizationTest.allocatedBytes(
+                () -> regression.solve(matrixX, matrixW, matrixH, null, workspace, false));
+
+        assertArrayEquals(expectedH.data, matrixH.data, 0.0);
+
+        assumeTrue("Allocation counters are not supported", allocated >= 0);
+        assertTrue(allocated < 1024);
+    }
+
 }
\ No newline at end of file
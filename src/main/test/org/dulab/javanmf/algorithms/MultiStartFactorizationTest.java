@@ -0,0 +1,93 @@
+package org.dulab.javanmf.algorithms;
+
+import org.dulab.javanmf.updaterules.MUpdateRule;
+import org.ejml.data.DMatrixRMaj;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.ejml.dense.row.CommonOps_DDRM.mult;
+import static org.ejml.dense.row.RandomMatrices_DDRM.rectangle;
+import static org.junit.Assert.*;
+
+public class MultiStartFactorizationTest {
+
+    @Test
+    public void testExecute() {
+
+        Random random = new Random(0);
+        DMatrixRMaj x = new DMatrixRMaj(60, 50);
+        mult(rectangle(60, 4, 0.0, 1.0, random), rectangle(4, 50, 0.0, 1.0, random), x);
+
+        MatrixFactorization factorization = new MatrixFactorization(
+                new MUpdateRule(0.0, 0.0), new MUpdateRule(0.0, 0.0), 1e-6, 300);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            // Without abandonment, the best start is the best of the independent starts
+            MultiStartFactorization.Result result = new MultiStartFactorization(
+                    factorization, pool, Double.POSITIVE_INFINITY)
+                    .execute(x, 4, 8, MultiStartFactorization.Initialization.RANDOM, 0L);
+
+            double minError = Double.MAX_VALUE;
+            for (int s = 0; s < 8; ++s)
+                minError = Math.min(minError, new MultiStartFactorization(factorization, pool, 1.0)
+                        .execute(x, 4, 1, MultiStartFactorization.Initialization.RANDOM, s).getError());
+
+            assertEquals(0, result.getNumAbandoned());
+            assertEquals(minError, result.getError(), 0.0);
+
+            // With abandonment, the losing starts stop early
+            for (MultiStartFactorization.Initialization initialization
+                    : MultiStartFactorization.Initialization.values()) {
+
+                result = new MultiStartFactorization(factorization, pool, 1.01)
+                        .execute(x, 4, 8, initialization, 0L);
+
+                assertFalse(result.isAbandoned(result.getBestStart()));
+                assertEquals(60, result.getW().numRows);
+                assertEquals(50, result.getH().numCols);
+                assertTrue(result.getError() < 1e-2 * x.getNumElements());
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testAbandonment() {
+
+        Random random = new Random(0);
+        DMatrixRMaj x = new DMatrixRMaj(60, 50);
+        mult(rectangle(60, 4, 0.0, 1.0, random), rectangle(4, 50, 0.0, 1.0, random), x);
+
+        final int maxIteration = 300;
+        MatrixFactorization factorization = new MatrixFactorization(
+                new MUpdateRule(0.0, 0.0), new MUpdateRule(0.0, 0.0), 1e-6, maxIteration);
+
+        // With one thread, the starts run one after another, so every start after the first is compared with the
+        // complete error history of the previous starts, and any start that falls behind is abandoned
+        ForkJoinPool pool = new ForkJoinPool(1);
+        try {
+            MultiStartFactorization.Result result = new MultiStartFactorization(factorization, pool, 1.0)
+                    .execute(x, 4, 8, MultiStartFactorization.Initialization.RANDOM, 0L);
+
+            assertTrue(result.getNumAbandoned() > 0);
+            assertFalse(result.isAbandoned(result.getBestStart()));
+
+            int numAbandoned = 0;
+            for (int s = 0; s < 8; ++s)
+                if (result.isAbandoned(s)) {
+                    ++numAbandoned;
+                    assertTrue(result.getNumIterations(s) < maxIteration);
+                    assertEquals(0, result.getNumIterations(s) % 10);
+                }
+            assertEquals(result.getNumAbandoned(), numAbandoned);
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+}
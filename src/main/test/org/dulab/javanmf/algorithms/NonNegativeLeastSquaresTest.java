@@ -1,8 +1,21 @@
 package org.dulab.javanmf.algorithms;
 
 import org.ejml.data.DMatrixRMaj;
+import org.ejml.data.DMatrixSparseCSC;
+import org.ejml.ops.ConvertDMatrixStruct;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static org.ejml.dense.row.CommonOps_DDRM.multInner;
+import static org.ejml.dense.row.CommonOps_DDRM.multTransA;
+import static org.ejml.dense.row.RandomMatrices_DDRM.rectangle;
 import static org.junit.Assert.*;
 
 public class NonNegativeLeastSquaresTest {
@@ -59,4 +72,187 @@ public class NonNegativeLeastSquaresTest {
 
         assertArrayEquals(expectedD.data, matrixD.data, EPS);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void solveWithWorkspace() {
+
+        NonNegativeLeastSquares nonNegativeLeastSquares = new NonNegativeLeastSquares();
+        NonNegativeLeastSquaresWorkspace workspace = new NonNegativeLeastSquaresWorkspace();
+
+        DMatrixRMaj matrixZ = new DMatrixRMaj(new double[][]{
+                new double[]{73, 71, 52},
+                new double[]{87, 74, 46},
+                new double[]{72, 2, 7},
+                new double[]{80, 89, 71}
+        });
+
+        DMatrixRMaj matrixX = new DMatrixRMaj(new double[][]{
+                new double[]{49, 98},
+                new double[]{67, 134},
+                new double[]{68, 136},
+                new double[]{20, 40}
+        });
+
+        DMatrixRMaj matrixD = new DMatrixRMaj(matrixZ.numCols, matrixX.numCols);
+        nonNegativeLeastSquares.solve(matrixX, matrixZ, matrixD, workspace);
+        assertArrayEquals(new double[]{0.65, 1.3, 0.0, 0.0, 0.0, 0.0}, matrixD.data, EPS);
+
+        // Reuse the workspace for a smaller problem
+        DMatrixRMaj matrixZ2 = new DMatrixRMaj(new double[][]{
+                new double[]{0.0372, 0.2869},
+                new double[]{0.6861, 0.7071},
+                new double[]{70.6233, 0.6245},
+                new double[]{0.6344, 0.6170}
+        });
+
+        DMatrixRMaj matrixX2 = new DMatrixRMaj(new double[]{0.8587, 0.1781, 0.0747, 0.8405});
+
+        DMatrixRMaj matrixD2 = new DMatrixRMaj(matrixZ2.numCols, matrixX2.numCols);
+        nonNegativeLeastSquares.solve(matrixX2, matrixZ2, matrixD2, workspace);
+        assertArrayEquals(new double[]{0, 0.6929}, matrixD2.data, EPS);
+    }
+
+    @Test
+    public void solveParallel() {
+
+        Random random = new Random(0);
+        DMatrixRMaj matrixZ = rectangle(50, 8, -1.0, 1.0, random);
+        DMatrixRMaj matrixX = rectangle(50, 200, -1.0, 1.0, random);
+
+        DMatrixRMaj expectedD = new DMatrixRMaj(matrixZ.numCols, matrixX.numCols);
+        new NonNegativeLeastSquares().solve(matrixX, matrixZ, expectedD);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        DMatrixRMaj matrixD = new DMatrixRMaj(matrixZ.numCols, matrixX.numCols);
+        new NonNegativeLeastSquares(pool).solve(matrixX, matrixZ, matrixD);
+        pool.shutdown();
+
+        assertArrayEquals(expectedD.data, matrixD.data, 1e-10);
+    }
+
+    @Test
+    public void solveWarmStart() {
+
+        Random random = new Random(0);
+        DMatrixRMaj matrixZ = rectangle(50, 8, -1.0, 1.0, random);
+        DMatrixRMaj matrixX = rectangle(50, 200, -1.0, 1.0, random);
+        DMatrixRMaj matrixX2 = rectangle(50, 200, -1.0, 1.0, random);
+
+        NonNegativeLeastSquares nonNegativeLeastSquares = new NonNegativeLeastSquares(null, true);
+
+        // Start from positive values of D
+        DMatrixRMaj matrixD = rectangle(matrixZ.numCols, matrixX.numCols, 0.0, 1.0, random);
+        nonNegativeLeastSquares.solve(matrixX, matrixZ, matrixD);
+
+        DMatrixRMaj expectedD = new DMatrixRMaj(matrixZ.numCols, matrixX.numCols);
+        new NonNegativeLeastSquares().solve(matrixX, matrixZ, expectedD);
+        assertArrayEquals(expectedD.data, matrixD.data, 1e-10);
+
+        // Start from the passive sets of the previous call
+        nonNegativeLeastSquares.solve(matrixX2, matrixZ, matrixD);
+
+        new NonNegativeLeastSquares().solve(matrixX2, matrixZ, expectedD);
+        assertArrayEquals(expectedD.data, matrixD.data, 1e-10);
+    }
+
+    @Test
+    public void solveGram() {
+
+        Random random = new Random(0);
+        DMatrixRMaj matrixZ = rectangle(50, 8, -1.0, 1.0, random);
+        DMatrixRMaj matrixX = rectangle(50, 200, -1.0, 1.0, random);
+
+        DMatrixRMaj expectedD = new DMatrixRMaj(matrixZ.numCols, matrixX.numCols);
+        new NonNegativeLeastSquares().solve(matrixX, matrixZ, expectedD);
+
+        DMatrixRMaj matrixZtZ = new DMatrixRMaj(matrixZ.numCols, matrixZ.numCols);
+        multInner(matrixZ, matrixZtZ);
+
+        DMatrixRMaj matrixZtX = new DMatrixRMaj(matrixZ.numCols, matrixX.numCols);
+        multTransA(matrixZ, matrixX, matrixZtX);
+
+        NonNegativeLeastSquaresSolver[] solvers = new NonNegativeLeastSquaresSolver[]{
+                new NonNegativeLeastSquares(),
+                new FastCombinatorialNonNegativeLeastSquares(),
+                new BlockPrincipalPivotingNonNegativeLeastSquares()
+        };
+
+        for (NonNegativeLeastSquaresSolver solver : solvers) {
+            DMatrixRMaj matrixD = new DMatrixRMaj(matrixZ.numCols, matrixX.numCols);
+            solver.solveGram(matrixZtZ, matrixZtX, matrixD);
+            assertArrayEquals(expectedD.data, matrixD.data, 1e-8);
+        }
+    }
+
+    @Test
+    public void solveSparse() {
+
+        Random random = new Random(0);
+        DMatrixRMaj matrixZ = rectangle(50, 8, 0.0, 1.0, random);
+        DMatrixRMaj matrixX = rectangle(50, 200, -3.0, 1.0, random);
+        for (int i = 0; i < matrixX.getNumElements(); ++i)
+            matrixX.data[i] = Math.max(matrixX.data[i], 0.0);
+
+        DMatrixSparseCSC sparseX = ConvertDMatrixStruct.convert(matrixX, (DMatrixSparseCSC) null, 0.0);
+
+        DMatrixRMaj expectedD = new DMatrixRMaj(matrixZ.numCols, matrixX.numCols);
+        new NonNegativeLeastSquares().solve(matrixX, matrixZ, expectedD);
+
+        NonNegativeLeastSquaresSolver[] solvers = new NonNegativeLeastSquaresSolver[]{
+                new NonNegativeLeastSquares(),
+                new FastCombinatorialNonNegativeLeastSquares(),
+                new BlockPrincipalPivotingNonNegativeLeastSquares()
+        };
+
+        for (NonNegativeLeastSquaresSolver solver : solvers) {
+            DMatrixRMaj matrixD = new DMatrixRMaj(matrixZ.numCols, matrixX.numCols);
+            solver.solve(sparseX, matrixZ, matrixD);
+            assertArrayEquals(expectedD.data, matrixD.data, 1e-8);
+        }
+    }
+
+    @Test
+    public void solveConcurrent() throws Exception {
+        testConcurrent(new NonNegativeLeastSquares());
+    }
+
+    /**
+     * Solves problems of different sizes with one instance of the solver in several threads and compares the results
+     * with solving the same problems sequentially
+     */
+    static void testConcurrent(NonNegativeLeastSquaresSolver solver) throws Exception {
+
+        final int numProblems = 16;
+        Random random = new Random(0);
+
+        DMatrixRMaj[] matricesX = new DMatrixRMaj[numProblems];
+        DMatrixRMaj[] matricesZ = new DMatrixRMaj[numProblems];
+        DMatrixRMaj[] expectedD = new DMatrixRMaj[numProblems];
+        for (int i = 0; i < numProblems; ++i) {
+            matricesZ[i] = rectangle(50, 4 + i % 5, -1.0, 1.0, random);
+            matricesX[i] = rectangle(50, 100 + 10 * i, -1.0, 1.0, random);
+            expectedD[i] = new DMatrixRMaj(matricesZ[i].numCols, matricesX[i].numCols);
+            solver.solve(matricesX[i], matricesZ[i], expectedD[i]);
+        }
+
+        DMatrixRMaj[] matricesD = new DMatrixRMaj[numProblems];
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < numProblems; ++i) {
+                final int index = i;
+                matricesD[i] = new DMatrixRMaj(matricesZ[i].numCols, matricesX[i].numCols);
+                futures.add(executor.submit(
+                        () -> solver.solve(matricesX[index], matricesZ[index], matricesD[index])));
+            }
+            for (Future<?> future : futures)
+                future.get();
+        }
+        finally {
+            executor.shutdown();
+        }
+
+        for (int i = 0; i < numProblems; ++i)
+            assertArrayEquals(expectedD[i].data, matricesD[i].data, 1e-10);
+    }
+}
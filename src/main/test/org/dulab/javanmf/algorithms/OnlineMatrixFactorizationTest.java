@@ -0,0 +1,72 @@
+package org.dulab.javanmf.algorithms;
+
+import org.dulab.javanmf.updaterules.MUpdateRule;
+import org.ejml.data.DMatrixRMaj;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import static org.ejml.dense.row.CommonOps_DDRM.*;
+import static org.ejml.dense.row.NormOps_DDRM.normF;
+import static org.ejml.dense.row.RandomMatrices_DDRM.rectangle;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OnlineMatrixFactorizationTest {
+
+    @Test
+    public void test() {
+
+        Random random = new Random(0);
+        DMatrixRMaj matrixX = createMatrix(random);
+        DMatrixRMaj matrixW = rectangle(matrixX.numRows, 3, 0.1, 0.9, random);
+
+        int numBatches = new OnlineMatrixFactorization(null, null, 0.8)
+                .execute(createBatches(matrixX, 20), matrixW);
+        assertEquals(200, numBatches);
+
+        assertTrue(relativeError(matrixX, matrixW) < 1e-2);
+    }
+
+    @Test
+    public void testMultiplicativeUpdate() {
+
+        Random random = new Random(1);
+        DMatrixRMaj matrixX = createMatrix(random);
+        DMatrixRMaj matrixW = rectangle(matrixX.numRows, 3, 0.1, 0.9, random);
+
+        MatrixRegression regression = new MatrixRegression(new MUpdateRule(0.0, 0.0), 1e-9, 2000);
+        new OnlineMatrixFactorization(regression, 0.8).execute(createBatches(matrixX, 20), matrixW);
+
+        assertTrue(relativeError(matrixX, matrixW) < 1e-2);
+    }
+
+    private static DMatrixRMaj createMatrix(Random random) {
+        DMatrixRMaj matrixW = rectangle(30, 3, 0.0, 1.0, random);
+        DMatrixRMaj matrixH = rectangle(3, 200, 0.0, 1.0, random);
+        DMatrixRMaj matrixX = new DMatrixRMaj(matrixW.numRows, matrixH.numCols);
+        mult(matrixW, matrixH, matrixX);
+        return matrixX;
+    }
+
+    /** Returns an iterator over batches of 20 columns of X, repeated {@code numEpochs} times */
+    private static Iterator<DMatrixRMaj> createBatches(DMatrixRMaj matrixX, int numEpochs) {
+        List<DMatrixRMaj> batches = new ArrayList<>();
+        for (int epoch = 0; epoch < numEpochs; ++epoch)
+            for (int j = 0; j < matrixX.numCols; j += 20)
+                batches.add(extract(matrixX, 0, matrixX.numRows, j, j + 20));
+        return batches.iterator();
+    }
+
+    private static double relativeError(DMatrixRMaj matrixX, DMatrixRMaj matrixW) {
+        DMatrixRMaj matrixH = new DMatrixRMaj(matrixW.numCols, matrixX.numCols);
+        new NonNegativeLeastSquares().solve(matrixX, matrixW, matrixH);
+
+        DMatrixRMaj matrixE = matrixX.copy();
+        multAdd(-1.0, matrixW, matrixH, matrixE);
+        return normF(matrixE) / normF(matrixX);
+    }
+}
@@ -0,0 +1,68 @@
+package org.dulab.javanmf.algorithms;
+
+import org.dulab.javanmf.updaterules.MUpdateRule;
+import org.ejml.data.DMatrixRMaj;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.ejml.dense.row.CommonOps_DDRM.mult;
+import static org.ejml.dense.row.RandomMatrices_DDRM.rectangle;
+import static org.junit.Assert.*;
+
+public class RankSweepTest {
+
+    @Test
+    public void testExecute() {
+
+        Random random = new Random(0);
+        DMatrixRMaj x = new DMatrixRMaj(80, 60);
+        mult(rectangle(80, 4, 0.0, 1.0, random), rectangle(4, 60, 0.0, 1.0, random), x);
+
+        MatrixFactorization factorization = new MatrixFactorization(
+                new MUpdateRule(0.0, 0.0), new MUpdateRule(0.0, 0.0), 1e-6, 1000);
+        AlternatingLeastSquaresMatrixFactorization als = new AlternatingLeastSquaresMatrixFactorization(1e-6, 100);
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            RankSweep.Factorization mu = (matrixX, matrixW, matrixH) -> {
+                factorization.execute(matrixX, matrixW, matrixH);
+                return factorization.getNumIterations();
+            };
+            RankSweep.Factorization alternatingLeastSquares = (matrixX, matrixW, matrixH) -> {
+                als.solve(matrixX, matrixW, matrixH);
+                return als.getNumIterations();
+            };
+
+            for (RankSweep.Factorization f : new RankSweep.Factorization[]{mu, alternatingLeastSquares}) {
+
+                List<RankSweep.Result> results = new RankSweep(f, pool, true).execute(x, 2, 7);
+                assertEquals(6, results.size());
+
+                for (int i = 0; i < results.size(); ++i) {
+                    RankSweep.Result result = results.get(i);
+                    assertEquals(2 + i, result.getNumComponents());
+                    assertEquals(2 + i, result.getW().numCols);
+                    assertEquals(2 + i, result.getH().numRows);
+                    assertTrue(result.getNumIterations() > 0);
+                }
+
+                // Two chains: 2..4 and 5..7
+                assertFalse(results.get(0).isWarmStarted());
+                assertTrue(results.get(1).isWarmStarted());
+                assertFalse(results.get(3).isWarmStarted());
+
+                assertTrue(results.get(2).getError() < results.get(0).getError());
+            }
+
+            // The error of ALS drops at the true number of components
+            List<RankSweep.Result> results = new RankSweep(alternatingLeastSquares, pool, true).execute(x, 2, 7);
+            assertTrue(results.get(2).getError() < 1e-2 * results.get(1).getError());
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -3,8 +3,12 @@ package org.dulab.javanmf.algorithms;
 import org.ejml.data.DMatrixRMaj;
 import org.junit.Test;
 
+import java.util.Random;
+
 import static org.junit.Assert.*;
 import static org.ejml.dense.row.CommonOps_DDRM.*;
+import static org.ejml.dense.row.RandomMatrices_DDRM.rectangle;
+import static org.ejml.dense.row.RandomMatrices_DDRM.rectangleGaussian;
 
 public class SingularValueDecompositionTest {
 
@@ -27,4 +31,59 @@ public class SingularValueDecompositionTest {
 
         assertArrayEquals(expectedA.data, a.data, 0.3);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void decomposeRandomized() {
+
+        Random random = new Random(0);
+        DMatrixRMaj x = new DMatrixRMaj(200, 150);
+        mult(rectangle(200, 5, 0.0, 1.0, random), rectangle(5, 150, 0.0, 1.0, random), x);
+
+        DMatrixRMaj expectedW = new DMatrixRMaj(200, 5);
+        DMatrixRMaj expectedH = new DMatrixRMaj(5, 150);
+        new SingularValueDecomposition(x).decompose(expectedW, expectedH);
+
+        DMatrixRMaj w = new DMatrixRMaj(200, 5);
+        DMatrixRMaj h = new DMatrixRMaj(5, 150);
+        new SingularValueDecomposition(x, 5).decompose(w, h);
+
+        DMatrixRMaj expected = new DMatrixRMaj(200, 150);
+        mult(expectedW, expectedH, expected);
+        DMatrixRMaj actual = new DMatrixRMaj(200, 150);
+        mult(w, h, actual);
+
+        assertArrayEquals(expected.data, actual.data, 1e-8);
+    }
+
+    @Test
+    public void decomposeRandomizedNoisy() {
+
+        // Five components with decreasing magnitudes plus noise, so that X has full rank
+        Random random = new Random(1);
+        DMatrixRMaj w0 = rectangle(200, 5, 0.0, 1.0, random);
+        for (int k = 0; k < 5; ++k)
+            for (int i = 0; i < w0.numRows; ++i)
+                w0.set(i, k, w0.get(i, k) * Math.pow(0.3, k));
+
+        DMatrixRMaj x = rectangleGaussian(200, 150, 0.0, 1e-3, random);
+        multAdd(w0, rectangle(5, 150, 0.0, 1.0, random), x);
+
+        SingularValueDecomposition exact = new SingularValueDecomposition(x);
+        SingularValueDecomposition randomized = new SingularValueDecomposition(x, 3);
+        assertEquals(3, randomized.getNumComponents());
+
+        for (int k = 0; k < 3; ++k)
+            assertEquals(exact.getSingularValue(k), randomized.getSingularValue(k), 1e-6 * exact.getSingularValue(k));
+
+        DMatrixRMaj expectedW = new DMatrixRMaj(200, 3);
+        DMatrixRMaj expectedH = new DMatrixRMaj(3, 150);
+        exact.decompose(expectedW, expectedH);
+
+        DMatrixRMaj w = new DMatrixRMaj(200, 3);
+        DMatrixRMaj h = new DMatrixRMaj(3, 150);
+        randomized.decompose(w, h);
+
+        assertArrayEquals(expectedW.data, w.data, 1e-4);
+        assertArrayEquals(expectedH.data, h.data, 1e-4);
+    }
+}
@@ -0,0 +1,63 @@
+package org.dulab.javanmf.algorithms;
+
+import org.ejml.data.DMatrixRMaj;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.ejml.dense.row.CommonOps_DDRM.*;
+import static org.ejml.dense.row.RandomMatrices_DDRM.rectangle;
+import static org.junit.Assert.*;
+
+public class UpdatableCholeskyDecompositionTest {
+
+    private static final double EPS = 1e-8;
+
+    @Test
+    public void addAndRemove() {
+
+        Random random = new Random(0);
+        DMatrixRMaj matrixZ = rectangle(20, 8, -1.0, 1.0, random);
+        DMatrixRMaj matrixX = rectangle(20, 1, -1.0, 1.0, random);
+
+        DMatrixRMaj matrixZtZ = new DMatrixRMaj(8, 8);
+        multInner(matrixZ, matrixZtZ);
+
+        DMatrixRMaj matrixZtX = new DMatrixRMaj(8, 1);
+        multTransA(matrixZ, matrixX, matrixZtX);
+
+        UpdatableCholeskyDecomposition cholesky = new UpdatableCholeskyDecomposition();
+        cholesky.reset(8);
+        for (int i : new int[]{3, 0, 5, 1, 7, 2})
+            assertTrue(cholesky.add(matrixZtZ, i));
+
+        cholesky.remove(5);
+        cholesky.remove(3);
+        assertTrue(cholesky.add(matrixZtZ, 6));
+
+        double[] vectorS = new double[8];
+        cholesky.solve(matrixZtX, 0, vectorS);
+
+        assertArrayEquals(solveDirectly(matrixZtZ, matrixZtX, new int[]{0, 1, 2, 6, 7}), vectorS, EPS);
+    }
+
+    private static double[] solveDirectly(DMatrixRMaj matrixZtZ, DMatrixRMaj matrixZtX, int[] passiveIndices) {
+
+        int size = passiveIndices.length;
+        DMatrixRMaj matrixZtZP = new DMatrixRMaj(size, size);
+        DMatrixRMaj vectorZtXP = new DMatrixRMaj(size, 1);
+        for (int i = 0; i < size; ++i) {
+            vectorZtXP.set(i, 0, matrixZtX.get(passiveIndices[i], 0));
+            for (int j = 0; j < size; ++j)
+                matrixZtZP.set(i, j, matrixZtZ.get(passiveIndices[i], passiveIndices[j]));
+        }
+
+        DMatrixRMaj vectorSP = new DMatrixRMaj(size, 1);
+        assertTrue(solve(matrixZtZP, vectorZtXP, vectorSP));
+
+        double[] vectorS = new double[matrixZtZ.numRows];
+        for (int i = 0; i < size; ++i)
+            vectorS[passiveIndices[i]] = vectorSP.get(i, 0);
+        return vectorS;
+    }
+}
@@ -0,0 +1,83 @@
+package org.dulab.javanmf.measures;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.data.DMatrixSparseCSC;
+import org.ejml.ops.ConvertDMatrixStruct;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.ejml.dense.row.CommonOps_DDRM.*;
+import static org.ejml.dense.row.NormOps_DDRM.normF;
+import static org.ejml.dense.row.RandomMatrices_DDRM.rectangle;
+import static org.junit.Assert.*;
+
+public class EuclideanDistanceTest {
+
+    private static final double EPS = 1e-8;
+
+    @Test
+    public void get() {
+
+        Random random = new Random(0);
+        DMatrixRMaj x = rectangle(30, 20, 0.0, 1.0, random);
+        DMatrixRMaj w = rectangle(30, 4, 0.0, 1.0, random);
+        DMatrixRMaj h = rectangle(4, 20, 0.0, 1.0, random);
+
+        DMatrixRMaj wh = new DMatrixRMaj(30, 20);
+        mult(w, h, wh);
+        subtractEquals(wh, x);
+        double expected = normF(wh) * normF(wh);
+
+        assertEquals(expected, new EuclideanDistance().get(x, w, h), EPS);
+
+        DMatrixRMaj wtx = new DMatrixRMaj(4, 20);
+        multTransA(w, x, wtx);
+
+        DMatrixRMaj wtw = new DMatrixRMaj(4, 4);
+        multInner(w, wtw);
+
+        double normX2 = EuclideanDistance.squaredNorm(x);
+        assertEquals(expected, EuclideanDistance.get(normX2, wtx, wtw, h), EPS);
+    }
+
+    @Test
+    public void getSparse() {
+
+        Random random = new Random(0);
+        DMatrixRMaj x = rectangle(30, 20, -3.0, 1.0, random);
+        for (int i = 0; i < x.getNumElements(); ++i)
+            x.data[i] = Math.max(x.data[i], 0.0);
+
+        DMatrixRMaj w = rectangle(30, 4, 0.0, 1.0, random);
+        DMatrixRMaj h = rectangle(4, 20, 0.0, 1.0, random);
+
+        DMatrixSparseCSC sparseX = ConvertDMatrixStruct.convert(x, (DMatrixSparseCSC) null, 0.0);
+
+        EuclideanDistance distance = new EuclideanDistance();
+        assertEquals(distance.get(x, w, h), distance.get(sparseX, w, h), EPS);
+        assertEquals(EuclideanDistance.squaredNorm(x), EuclideanDistance.squaredNorm(sparseX), EPS);
+    }
+
+    @Test
+    public void getSparseW() {
+
+        Random random = new Random(1);
+        DMatrixRMaj x = rectangle(30, 20, 0.0, 1.0, random);
+        DMatrixRMaj w = rectangle(30, 4, -2.0, 1.0, random);
+        DMatrixRMaj h = rectangle(4, 20, 0.0, 1.0, random);
+
+        // Rows of W with no, one, or several non-zero elements
+        for (int i = 0; i < w.getNumElements(); ++i)
+            w.data[i] = Math.max(w.data[i], 0.0);
+        for (int k = 0; k < 4; ++k)
+            w.unsafe_set(0, k, 0.0);
+
+        DMatrixRMaj wh = new DMatrixRMaj(30, 20);
+        mult(w, h, wh);
+        subtractEquals(wh, x);
+        double expected = normF(wh) * normF(wh);
+
+        assertEquals(expected, new EuclideanDistance().get(x, w, h), EPS);
+    }
+}